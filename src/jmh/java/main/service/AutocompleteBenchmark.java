@@ -0,0 +1,73 @@
+package main.service;
+
+import main.api.Suggestion;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Top-10 lookups against an index the size of the Marvel comics catalog
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+public class AutocompleteBenchmark {
+
+    @Param({"50000"})
+    private int entries;
+
+    private PrefixIndex index;
+    private String[] prefixes;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        PrefixIndex.Builder builder = new PrefixIndex.Builder();
+        for (int i = 0; i < entries; i++) {
+            builder.add(String.valueOf(1009000 + i), title(random));
+        }
+        index = builder.build();
+        prefixes = new String[1024];
+        for (int i = 0; i < prefixes.length; i++) {
+            String title = title(random);
+            prefixes[i] = title.substring(0, 1 + random.nextInt(Math.min(6, title.length())));
+        }
+    }
+
+    @Benchmark
+    public List<Suggestion> lookup() {
+        next = (next + 1) & (prefixes.length - 1);
+        return index.lookup(prefixes[next], 10);
+    }
+
+    private static String title(Random random) {
+        StringBuilder builder = new StringBuilder();
+        int words = 1 + random.nextInt(4);
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                builder.append(' ');
+            }
+            builder.append((char) ('A' + random.nextInt(26)));
+            int length = 2 + random.nextInt(7);
+            for (int j = 0; j < length; j++) {
+                builder.append((char) ('a' + random.nextInt(26)));
+            }
+        }
+        return builder.append(" (").append(1960 + random.nextInt(62)).append(')').toString();
+    }
+
+}
@@ -0,0 +1,79 @@
+package main.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import main.entities.Character;
+import main.entities.Comic;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+// Whole limit=100 pages through the envelope decoder used for every upstream response
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 2, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+public class DecodeBenchmark {
+
+    private MarvelUtils marvelUtils;
+    private EntityMapper entityMapper;
+    private byte[] characters;
+    private byte[] comics;
+    private byte[] charactersGzip;
+    private byte[] comicsGzip;
+    // What the list screens ask for with ?fields=
+    private final FieldSet characterFields = FieldSet.characters("name,thumbnail");
+    private final FieldSet comicFields = FieldSet.comics("title,thumbnail");
+
+    @Setup
+    public void setUp() {
+        entityMapper = new EntityMapper();
+        marvelUtils = new MarvelUtils(entityMapper, null, null, null, null, null, null, null, new SimpleMeterRegistry());
+        characters = Fixtures.charactersPage(100);
+        comics = Fixtures.comicsPage(100);
+        charactersGzip = Fixtures.gzip(characters);
+        comicsGzip = Fixtures.gzip(comics);
+    }
+
+    @Benchmark
+    public UpstreamResult<Character> characters() throws IOException {
+        return marvelUtils.readResults(new ByteArrayInputStream(characters), entityMapper::readCharacter);
+    }
+
+    @Benchmark
+    public UpstreamResult<Comic> comics() throws IOException {
+        return marvelUtils.readResults(new ByteArrayInputStream(comics), entityMapper::readComic);
+    }
+
+    @Benchmark
+    public UpstreamResult<Character> charactersSparse() throws IOException {
+        return marvelUtils.readResults(new ByteArrayInputStream(characters), parser -> entityMapper.readCharacter(parser, characterFields));
+    }
+
+    @Benchmark
+    public UpstreamResult<Comic> comicsSparse() throws IOException {
+        return marvelUtils.readResults(new ByteArrayInputStream(comics), parser -> entityMapper.readComic(parser, comicFields));
+    }
+
+    @Benchmark
+    public UpstreamResult<Character> charactersGzip() throws IOException {
+        return marvelUtils.readResults(new GZIPInputStream(new ByteArrayInputStream(charactersGzip), 8192), entityMapper::readCharacter);
+    }
+
+    @Benchmark
+    public UpstreamResult<Comic> comicsGzip() throws IOException {
+        return marvelUtils.readResults(new GZIPInputStream(new ByteArrayInputStream(comicsGzip), 8192), entityMapper::readComic);
+    }
+
+}
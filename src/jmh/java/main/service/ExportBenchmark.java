@@ -0,0 +1,84 @@
+package main.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import main.entities.Character;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// NDJSON side of an export: documents from an in-memory cursor into a discarding stream. Allocation per
+// document should not grow with the export size
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+public class ExportBenchmark {
+
+    @Param({"1000", "100000"})
+    private int documents;
+
+    private ObjectMapper objectMapper;
+    private List<Character> page;
+    private final FieldSet fields = FieldSet.characters("name,thumbnail");
+
+    @Setup
+    public void setUp() throws IOException {
+        Jackson2ObjectMapperBuilder builder = Jackson2ObjectMapperBuilder.json();
+        new JacksonConfig().fieldSetFilter().customize(builder);
+        objectMapper = builder.build();
+        EntityMapper entityMapper = new EntityMapper();
+        MarvelUtils marvelUtils = new MarvelUtils(entityMapper, null, null, null, null, null, null, null, new SimpleMeterRegistry());
+        page = marvelUtils.readResults(new ByteArrayInputStream(Fixtures.charactersPage(100)), entityMapper::readCharacter).getResults();
+    }
+
+    @Benchmark
+    public long full() throws IOException {
+        return new NdjsonExport<>(cursor(), objectMapper, null).writeTo(OutputStream.nullOutputStream());
+    }
+
+    @Benchmark
+    public long sparse() throws IOException {
+        return new NdjsonExport<>(cursor(), objectMapper, fields).writeTo(OutputStream.nullOutputStream());
+    }
+
+    // Cycles through one decoded page, standing in for a Mongo cursor
+    private CloseableIterator<Character> cursor() {
+        return new CloseableIterator<>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < documents;
+            }
+
+            @Override
+            public Character next() {
+                return page.get(next++ % page.size());
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+}
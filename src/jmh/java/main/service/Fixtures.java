@@ -0,0 +1,188 @@
+package main.service;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+// Synthetic Marvel API payloads with the shape and field mix of real limit=100 pages
+final class Fixtures {
+
+    private static final String BASE = "http://gateway.marvel.com/v1/public";
+    private static final String[] FORMATS = {"Comic", "Trade Paperback", "Hardcover", "Digest", "Digital Comic"};
+    private static final String[] SERIES = {"Avengers (1963 - 1996)", "Amazing Spider-Man (1999 - 2013)",
+            "X-Men (1991 - 2001)", "Fantastic Four (1961 - 1998)", "Iron Man (2020 - Present)"};
+
+    private Fixtures() {
+    }
+
+    static byte[] charactersPage(int count) {
+        return page(count, (generator, random, i) -> {
+            int id = 1009000 + i;
+            generator.writeNumberField("id", id);
+            generator.writeStringField("name", "Character " + id);
+            generator.writeStringField("description", text(random, 40));
+            generator.writeStringField("modified", "2014-04-29T14:18:17-0400");
+            thumbnail(generator, random);
+            generator.writeStringField("resourceURI", BASE + "/characters/" + id);
+            list(generator, random, "comics", "/comics/", 20);
+            list(generator, random, "series", "/series/", 20);
+            list(generator, random, "stories", "/stories/", 20);
+            list(generator, random, "events", "/events/", 10);
+            urls(generator, id);
+        });
+    }
+
+    static byte[] comicsPage(int count) {
+        return page(count, (generator, random, i) -> {
+            int id = 40000 + i;
+            generator.writeNumberField("id", id);
+            generator.writeNumberField("digitalId", random.nextInt(50000));
+            generator.writeStringField("title", "Comic " + id + " #" + random.nextInt(700));
+            generator.writeNumberField("issueNumber", random.nextInt(700));
+            generator.writeStringField("variantDescription", "");
+            generator.writeStringField("description", text(random, 60));
+            generator.writeStringField("modified", "2019-11-07T10:05:33-0500");
+            generator.writeStringField("isbn", "");
+            generator.writeStringField("upc", "75960608839" + i);
+            generator.writeStringField("diamondCode", "");
+            generator.writeStringField("ean", "");
+            generator.writeStringField("issn", "");
+            generator.writeStringField("format", FORMATS[random.nextInt(FORMATS.length)]);
+            generator.writeNumberField("pageCount", 20 + random.nextInt(200));
+            generator.writeArrayFieldStart("textObjects");
+            generator.writeStartObject();
+            generator.writeStringField("type", "issue_solicit_text");
+            generator.writeStringField("language", "en-us");
+            generator.writeStringField("text", text(random, 60));
+            generator.writeEndObject();
+            generator.writeEndArray();
+            generator.writeStringField("resourceURI", BASE + "/comics/" + id);
+            urls(generator, id);
+            generator.writeObjectFieldStart("series");
+            generator.writeStringField("resourceURI", BASE + "/series/" + random.nextInt(30000));
+            generator.writeStringField("name", SERIES[random.nextInt(SERIES.length)]);
+            generator.writeEndObject();
+            generator.writeArrayFieldStart("dates");
+            for (String type : new String[]{"onsaleDate", "focDate"}) {
+                generator.writeStartObject();
+                generator.writeStringField("type", type);
+                generator.writeStringField("date", "2019-12-04T00:00:00-0500");
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            generator.writeArrayFieldStart("prices");
+            generator.writeStartObject();
+            generator.writeStringField("type", "printPrice");
+            generator.writeNumberField("price", 3.99);
+            generator.writeEndObject();
+            generator.writeEndArray();
+            thumbnail(generator, random);
+            generator.writeArrayFieldStart("images");
+            generator.writeEndArray();
+            list(generator, random, "creators", "/creators/", 8);
+            list(generator, random, "characters", "/characters/", 8);
+            list(generator, random, "stories", "/stories/", 4);
+            list(generator, random, "events", "/events/", 2);
+        });
+    }
+
+    static byte[] gzip(byte[] payload) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(payload.length / 4);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(payload);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] page(int count, ResultWriter writer) {
+        Random random = new Random(42);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(count * 4096);
+        try (JsonGenerator generator = new JsonFactory().createGenerator(out, JsonEncoding.UTF8)) {
+            generator.writeStartObject();
+            generator.writeNumberField("code", 200);
+            generator.writeStringField("status", "Ok");
+            generator.writeStringField("copyright", "© 2021 MARVEL");
+            generator.writeStringField("attributionText", "Data provided by Marvel. © 2021 MARVEL");
+            generator.writeStringField("etag", "6b4ab0d1d3e1f1f4c6a9e0b2a7f0c1d2e3f4a5b6");
+            generator.writeObjectFieldStart("data");
+            generator.writeNumberField("offset", 0);
+            generator.writeNumberField("limit", count);
+            generator.writeNumberField("total", count * 16);
+            generator.writeNumberField("count", count);
+            generator.writeArrayFieldStart("results");
+            for (int i = 0; i < count; i++) {
+                generator.writeStartObject();
+                writer.write(generator, random, i);
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private static void thumbnail(JsonGenerator generator, Random random) throws IOException {
+        generator.writeObjectFieldStart("thumbnail");
+        generator.writeStringField("path", "http://i.annihil.us/u/prod/marvel/i/mg/" + Integer.toHexString(random.nextInt(256))
+                + "/" + Integer.toHexString(random.nextInt(256)) + "/" + Long.toHexString(random.nextLong()));
+        generator.writeStringField("extension", "jpg");
+        generator.writeEndObject();
+    }
+
+    private static void list(JsonGenerator generator, Random random, String field, String path, int items) throws IOException {
+        generator.writeObjectFieldStart(field);
+        generator.writeNumberField("available", items * 3);
+        generator.writeStringField("collectionURI", BASE + path.substring(0, path.length() - 1));
+        generator.writeArrayFieldStart("items");
+        for (int i = 0; i < items; i++) {
+            generator.writeStartObject();
+            generator.writeStringField("resourceURI", BASE + path + random.nextInt(100000));
+            generator.writeStringField("name", text(random, 4));
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+        generator.writeNumberField("returned", items);
+        generator.writeEndObject();
+    }
+
+    private static void urls(JsonGenerator generator, int id) throws IOException {
+        generator.writeArrayFieldStart("urls");
+        for (String type : new String[]{"detail", "wiki", "comiclink"}) {
+            generator.writeStartObject();
+            generator.writeStringField("type", type);
+            generator.writeStringField("url", "http://marvel.com/" + type + "/" + id + "?utm_campaign=apiRef&utm_source=0123456789abcdef");
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+    }
+
+    private static String text(Random random, int words) {
+        StringBuilder builder = new StringBuilder(words * 7);
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                builder.append(' ');
+            }
+            int length = 2 + random.nextInt(8);
+            for (int j = 0; j < length; j++) {
+                builder.append((char) ('a' + random.nextInt(26)));
+            }
+        }
+        return builder.toString();
+    }
+
+    private interface ResultWriter {
+        void write(JsonGenerator generator, Random random, int index) throws IOException;
+    }
+
+}
@@ -0,0 +1,94 @@
+package main.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import main.api.CharacterRequest;
+import main.api.ComicRequest;
+import main.entities.Character;
+import main.entities.Comic;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+// Single entities: upstream JSON object to entity, and request body to entity on the write path
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 2, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+public class MappingBenchmark {
+
+    private final JsonFactory jsonFactory = new JsonFactory();
+    private EntityMapper entityMapper;
+    private byte[] character;
+    private byte[] comic;
+    private CharacterRequest characterRequest;
+    private ComicRequest comicRequest;
+
+    @Setup
+    public void setUp() throws IOException {
+        entityMapper = new EntityMapper();
+        ObjectMapper objectMapper = new ObjectMapper();
+        character = objectMapper.writeValueAsBytes(objectMapper.readTree(Fixtures.charactersPage(1)).at("/data/results/0"));
+        comic = objectMapper.writeValueAsBytes(objectMapper.readTree(Fixtures.comicsPage(1)).at("/data/results/0"));
+        characterRequest = objectMapper.readValue("{\"id\":\"1011334\",\"name\":\"3-D Man\",\"description\":\"\","
+                + "\"modified\":\"2014-04-29T14:18:17-0400\",\"resourceURI\":\"http://gateway.marvel.com/v1/public/characters/1011334\"}",
+                CharacterRequest.class);
+        comicRequest = objectMapper.readValue("{\"id\":\"82967\",\"title\":\"Marvel Previews (2017)\",\"description\":\"\","
+                + "\"modified\":\"2019-11-07T10:05:33-0500\",\"format\":\"Comic\",\"pageCount\":\"112\","
+                + "\"resourceURI\":\"http://gateway.marvel.com/v1/public/comics/82967\",\"series\":\"Marvel Previews (2017 - Present)\"}",
+                ComicRequest.class);
+    }
+
+    @Benchmark
+    public Character readCharacter() throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(character)) {
+            parser.nextToken();
+            return entityMapper.readCharacter(parser);
+        }
+    }
+
+    @Benchmark
+    public Comic readComic() throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(comic)) {
+            parser.nextToken();
+            return entityMapper.readComic(parser);
+        }
+    }
+
+    @Benchmark
+    public LocalDateTime parseDate() {
+        return EntityMapper.parseDate("2014-04-29T14:18:17-0400");
+    }
+
+    @Benchmark
+    public LocalDateTime parseUnknownDate() {
+        return EntityMapper.parseDate("-0001-11-30T00:00:00-0500");
+    }
+
+    @Benchmark
+    public Character toCharacter() {
+        Character character = new Character();
+        entityMapper.toCharacter(character, characterRequest);
+        return character;
+    }
+
+    @Benchmark
+    public Comic toComic() {
+        Comic comic = new Comic();
+        entityMapper.toComic(comic, comicRequest);
+        return comic;
+    }
+
+}
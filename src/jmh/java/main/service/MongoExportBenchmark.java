@@ -0,0 +1,106 @@
+package main.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.MongoCollection;
+import main.entities.Character;
+import main.repository.CharactersRepositoryImpl;
+import main.repository.MongoQueries;
+import org.bson.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// A whole export against a real mongod (-p url=... to point elsewhere), seeded once with `documents` characters.
+// The heap is capped well below what the listing would take as a List, so finishing at all shows memory stays flat
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgs = "-Xmx128m")
+public class MongoExportBenchmark {
+
+    private static final int SEED_BATCH = 10_000;
+
+    @Param("mongodb://localhost:27017")
+    private String url;
+
+    @Param("1000000")
+    private int documents;
+
+    private MongoClient client;
+    private CharactersRepositoryImpl repository;
+    private ObjectMapper objectMapper;
+
+    @Setup
+    public void setUp() {
+        client = MongoClients.create(url);
+        MongoTemplate mongoTemplate = new MongoTemplate(client, "marvel_benchmark");
+        MongoCollection<Document> characters = mongoTemplate.getCollection(mongoTemplate.getCollectionName(Character.class));
+        if (characters.countDocuments() != documents) {
+            characters.drop();
+            seed(characters);
+            new MongoPersistentEntityIndexResolver(mongoTemplate.getConverter().getMappingContext())
+                    .resolveIndexFor(Character.class)
+                    .forEach(mongoTemplate.indexOps(Character.class)::ensureIndex);
+        }
+        repository = new CharactersRepositoryImpl(mongoTemplate);
+        Jackson2ObjectMapperBuilder builder = Jackson2ObjectMapperBuilder.json();
+        new JacksonConfig().fieldSetFilter().customize(builder);
+        objectMapper = builder.build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        client.close();
+    }
+
+    @Benchmark
+    public long export() throws IOException {
+        return new NdjsonExport<>(repository.streamLocal(null, null, "name", 1000, null), objectMapper, null)
+                .writeTo(OutputStream.nullOutputStream());
+    }
+
+    private void seed(MongoCollection<Document> characters) {
+        List<Document> batch = new ArrayList<>(SEED_BATCH);
+        for (int i = 0; i < documents; i++) {
+            String name = "Character " + i;
+            batch.add(new Document("_id", String.valueOf(1009000 + i))
+                    .append("name", name)
+                    .append("nameKey", MongoQueries.searchKey(name))
+                    .append("description", "A character of the synthetic benchmark catalog, number " + i)
+                    .append("modified", new Date(1398795497000L + i * 1000L))
+                    .append("resourceURI", "http://gateway.marvel.com/v1/public/characters/" + (1009000 + i))
+                    .append("thumbnail", "http://i.annihil.us/u/prod/marvel/i/mg/" + (i % 100) + "/image.jpg"));
+            if (batch.size() == SEED_BATCH) {
+                characters.insertMany(batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            characters.insertMany(batch);
+        }
+    }
+
+}
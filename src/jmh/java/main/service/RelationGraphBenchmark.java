@@ -0,0 +1,93 @@
+package main.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Relationship queries on a graph with about a million edges and Marvel-like skew: a few characters appear everywhere
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+public class RelationGraphBenchmark {
+
+    private static final int FIRST_CHARACTER = 1009000;
+
+    @Param({"100000"})
+    private int comics;
+
+    @Param({"1600"})
+    private int characters;
+
+    private RelationGraph graph;
+    private int[] queries;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        RelationGraph.Builder builder = new RelationGraph.Builder();
+        for (int comic = 0; comic < comics; comic++) {
+            // Marvel lists at most 20 characters per comic
+            int count = 1 + random.nextInt(20);
+            for (int i = 0; i < count; i++) {
+                builder.add(40000 + comic, FIRST_CHARACTER + skewed(random));
+            }
+        }
+        graph = builder.build();
+        queries = new int[1024];
+        for (int i = 0; i < queries.length; i++) {
+            queries[i] = FIRST_CHARACTER + skewed(random);
+        }
+    }
+
+    @Benchmark
+    public int[] comicsOf() {
+        return graph.comicsOf(nextQuery());
+    }
+
+    @Benchmark
+    public int[] coAppearances() {
+        return graph.coAppearances(nextQuery(), nextQuery());
+    }
+
+    @Benchmark
+    public int[][] topNeighbours() {
+        return graph.topNeighbours(nextQuery(), 10);
+    }
+
+    @Benchmark
+    public RelationGraph build() {
+        RelationGraph.Builder builder = new RelationGraph.Builder();
+        for (int comic = 0; comic < graph.comicCount(); comic++) {
+            for (int character : graph.charactersOf(40000 + comic)) {
+                builder.add(40000 + comic, character);
+            }
+        }
+        return builder.build();
+    }
+
+    private int nextQuery() {
+        next = (next + 1) & (queries.length - 1);
+        return queries[next];
+    }
+
+    private int skewed(Random random) {
+        double r = random.nextDouble();
+        return (int) (characters * r * r * r);
+    }
+
+}
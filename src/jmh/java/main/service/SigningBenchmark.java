@@ -0,0 +1,102 @@
+package main.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Query building and request signing; legacyUrl keeps the previous string-concatenation path as a baseline
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 2, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+public class SigningBenchmark {
+
+    private static final String API_LINK = "http://gateway.marvel.com/v1/public";
+    private static final String PUBLIC_KEY = "0123456789abcdef0123456789abcdef";
+    private static final String PRIVATE_KEY = "fedcba9876543210fedcba9876543210fedcba98";
+
+    private UpstreamSigner signer;
+
+    @Setup
+    public void setUp() {
+        signer = new UpstreamSigner(API_LINK, PUBLIC_KEY, PRIVATE_KEY, Duration.ofMinutes(1));
+    }
+
+    @Benchmark
+    public String hash() {
+        return signer.hash(String.valueOf(System.currentTimeMillis()));
+    }
+
+    @Benchmark
+    public String canonicalQuery() {
+        return query().canonical();
+    }
+
+    @Benchmark
+    public void signedUrl(Blackhole blackhole) {
+        UpstreamQuery query = query();
+        blackhole.consume(query.canonical());
+        blackhole.consume(signer.url(query));
+    }
+
+    @Benchmark
+    public void legacyUrl(Blackhole blackhole) throws NoSuchAlgorithmException {
+        String timestamp = String.valueOf(System.currentTimeMillis());
+        MessageDigest digest = MessageDigest.getInstance("MD5");
+        digest.update((timestamp + PRIVATE_KEY + PUBLIC_KEY).getBytes(StandardCharsets.UTF_8));
+        StringBuilder hash = new StringBuilder(new BigInteger(1, digest.digest()).toString(16));
+        while (hash.length() < 32) {
+            hash.insert(0, "0");
+        }
+        Map<String, String> param = new HashMap<>();
+        param.put("&name=", null);
+        param.put("&nameStartsWith=", "Spider");
+        param.put("&orderBy=", "name");
+        param.put("&limit=", "20");
+        param.put("&offset=", "40");
+        StringBuilder url = new StringBuilder(API_LINK + "/characters" + "?ts=" + timestamp + "&apikey=" + PUBLIC_KEY + "&hash=" + hash);
+        for (String key : param.keySet()) {
+            if (param.get(key) != null) {
+                url.append(key).append(param.get(key));
+            }
+        }
+        String request = url.toString();
+        int query = request.indexOf('?');
+        List<String> params = new ArrayList<>();
+        for (String part : request.substring(query + 1).split("&")) {
+            if (!part.isEmpty() && !part.startsWith("ts=") && !part.startsWith("hash=")) {
+                params.add(part);
+            }
+        }
+        Collections.sort(params);
+        blackhole.consume(request.substring(0, query) + "?" + String.join("&", params));
+        blackhole.consume(request);
+    }
+
+    private UpstreamQuery query() {
+        return UpstreamQuery.characters()
+                .param(UpstreamQuery.Param.NAME_STARTS_WITH, "Spider")
+                .page("name", 20, 40);
+    }
+
+}
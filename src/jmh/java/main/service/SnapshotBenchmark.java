@@ -0,0 +1,71 @@
+package main.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// 100k entities: 500 cached character pages and 500 comic pages of 100, written to and mapped from a temp file
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+public class SnapshotBenchmark {
+
+    private Path directory;
+    private Path file;
+    private UpstreamSnapshot snapshot;
+
+    @Setup
+    public void setUp() throws IOException {
+        EntityMapper entityMapper = new EntityMapper();
+        MarvelUtils marvelUtils = new MarvelUtils(entityMapper, null, null, null, null, null, null, null, new SimpleMeterRegistry());
+        UpstreamResult<?> characters = marvelUtils.readResults(new ByteArrayInputStream(Fixtures.charactersPage(100)), entityMapper::readCharacter);
+        UpstreamResult<?> comics = marvelUtils.readResults(new ByteArrayInputStream(Fixtures.comicsPage(100)), entityMapper::readComic);
+        Map<String, UpstreamResult<?>> entries = new LinkedHashMap<>();
+        for (int i = 0; i < 500; i++) {
+            entries.put("characters?limit=100&offset=" + i * 100, characters);
+            entries.put("comics?limit=100&offset=" + i * 100, comics);
+        }
+        snapshot = new UpstreamSnapshot(System.currentTimeMillis(), entries);
+        directory = Files.createTempDirectory("snapshot-benchmark");
+        file = directory.resolve("upstream-cache.bin");
+        UpstreamSnapshot.write(file, snapshot);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(directory);
+    }
+
+    // What a node does at boot before it reports ready, minus the cache inserts
+    @Benchmark
+    public UpstreamSnapshot load() throws IOException {
+        return UpstreamSnapshot.read(file);
+    }
+
+    @Benchmark
+    public long write() throws IOException {
+        return UpstreamSnapshot.write(file, snapshot);
+    }
+
+}
@@ -1,5 +1,6 @@
 package main;
 
+import main.service.UpstreamClient;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 
@@ -10,7 +11,9 @@ import java.security.NoSuchAlgorithmException;
 public class MarvelServiceApplication {
 
     public static void main(String[] args) throws UnsupportedEncodingException, NoSuchAlgorithmException {
-        SpringApplication.run(MarvelServiceApplication.class, args);
+        SpringApplication application = new SpringApplication(MarvelServiceApplication.class);
+        application.addListeners(UpstreamClient.poolSettings());
+        application.run(args);
     }
 
 }
@@ -0,0 +1,24 @@
+package main.api;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Schema(description = "Элемент пакетного ответа")
+@Getter
+@AllArgsConstructor
+public class BatchItem<T> {
+
+    @Schema(description = "The requested id", example = "1011190")
+    private final String id;
+
+    @Schema(description = "Whether the resource was found", example = "true")
+    private final boolean found;
+
+    @Schema(description = "Whether the resource is an expired copy served because the Marvel API could not be reached", example = "false")
+    private final boolean stale;
+
+    @Schema(description = "The resource, empty when it was not found")
+    private final T data;
+
+}
@@ -0,0 +1,24 @@
+package main.api;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Schema(description = "Результат записи одного элемента пакета")
+@Getter
+@AllArgsConstructor
+public class BulkItemResult {
+
+    @Schema(description = "Position of the item in the request", example = "0")
+    private final int index;
+
+    @Schema(description = "The id the item was stored under", example = "1011190")
+    private final String id;
+
+    @Schema(description = "Outcome of the write", example = "created, updated, failed")
+    private final String status;
+
+    @Schema(description = "Why the item was not stored")
+    private final String error;
+
+}
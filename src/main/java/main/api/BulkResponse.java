@@ -0,0 +1,29 @@
+package main.api;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+@Schema(description = "Результат пакетной записи")
+@Getter
+@AllArgsConstructor
+public class BulkResponse {
+
+    @Schema(description = "Number of inserted documents", example = "950")
+    private final int created;
+
+    @Schema(description = "Number of replaced documents", example = "48")
+    private final int updated;
+
+    @Schema(description = "Number of items that were not stored", example = "2")
+    private final int failed;
+
+    @Schema(description = "Write throughput of the whole request", example = "12500.0")
+    private final double documentsPerSecond;
+
+    @Schema(description = "Per-item results in request order")
+    private final List<BulkItemResult> items;
+
+}
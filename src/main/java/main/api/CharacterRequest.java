@@ -22,7 +22,10 @@ public class CharacterRequest {
     @Schema(description = "The canonical URL identifier for this resource", example = "http://gateway.marvel.com/v1/public/characters/1011190")
     private String resourceURI;
 
-    @Schema(description = "The representative image for this character", example = "http://i.annihil.us/u/prod/marvel/i/mg/b/40/image_not_available.jpg")
+    @Schema(description = "The representative image for this character; leave it out to keep the stored one, send an empty string to remove it", example = "http://i.annihil.us/u/prod/marvel/i/mg/b/40/image_not_available.jpg")
     private String thumbnail;
 
+    @Schema(description = "The version the update is based on; the update is rejected with 409 if the resource has changed since", example = "3")
+    private Long version;
+
 }
@@ -23,7 +23,7 @@ public class ComicRequest {
     private String format;
 
     @Schema(description = "The number of story pages in the comic", example = "0")
-    private String pageCount;
+    private Integer pageCount;
 
     @Schema(description = "The canonical URL identifier for this resource", example = "http://gateway.marvel.com/v1/public/comics/1886")
     private String resourceURI;
@@ -31,7 +31,10 @@ public class ComicRequest {
     @Schema(description = "A summary representation of the series to which this comic belongs", example = "Official Handbook of the Marvel Universe (2004)")
     private String series;
 
-    @Schema(description = "The representative image for this comic", example = "http://i.annihil.us/u/prod/marvel/i/mg/b/40/4bc64020a4ccc.jpg")
+    @Schema(description = "The representative image for this comic; leave it out to keep the stored one, send an empty string to remove it", example = "http://i.annihil.us/u/prod/marvel/i/mg/b/40/4bc64020a4ccc.jpg")
     private String thumbnail;
 
+    @Schema(description = "The version the update is based on; the update is rejected with 409 if the resource has changed since", example = "3")
+    private Long version;
+
 }
@@ -0,0 +1,21 @@
+package main.api;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Schema(description = "Персонаж, чаще всего появляющийся в комиксах вместе с заданным")
+@Getter
+@AllArgsConstructor
+public class Neighbour {
+
+    @Schema(description = "The unique ID of the character resource", example = "1009368")
+    private final String id;
+
+    @Schema(description = "The name of the character, when it is stored locally", example = "Iron Man")
+    private final String name;
+
+    @Schema(description = "The number of comics both characters appear in", example = "412")
+    private final int sharedComics;
+
+}
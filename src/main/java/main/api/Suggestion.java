@@ -0,0 +1,18 @@
+package main.api;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Schema(description = "Подсказка автодополнения")
+@Getter
+@AllArgsConstructor
+public class Suggestion {
+
+    @Schema(description = "The unique ID of the resource", example = "1009610")
+    private final String id;
+
+    @Schema(description = "The name of the character or the title of the comic", example = "Spider-Man")
+    private final String name;
+
+}
@@ -2,21 +2,35 @@ package main.controller;
 
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.headers.Header;
+import io.swagger.v3.oas.annotations.media.ArraySchema;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import main.api.BatchItem;
+import main.api.BulkResponse;
 import main.api.CharacterRequest;
+import main.api.Neighbour;
+import main.api.Suggestion;
 import main.entities.Character;
 import main.entities.Comic;
 import main.service.CharacterService;
+import main.service.FieldSet;
+import main.service.NdjsonExport;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @Tag(name = "Персонажи", description = "Взаимодействие с базой персонажей")
 
@@ -24,6 +38,9 @@ import java.util.List;
 @RequestMapping("/characters")
 public class CharactersController {
 
+    private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    private static final String STALE_WARNING = "110 - \"Response is Stale\"";
+
     private final CharacterService characterService;
 
     @Autowired
@@ -31,63 +48,178 @@ public class CharactersController {
         this.characterService = characterService;
     }
 
-    @Operation(summary = "Получить персонажей", description = "Позволяет получить персонажей с сервера Marvel")
+    @Operation(summary = "Получить персонажей", description = "Позволяет получить персонажей с сервера Marvel или из базы данных приложения")
     @ApiResponses(value = {
-            @ApiResponse(responseCode = "200"),
+            @ApiResponse(responseCode = "200", headers = @Header(name = NEXT_CURSOR_HEADER, description = "Курсор следующей страницы, если она может существовать")),
             @ApiResponse(responseCode = "400", content = @Content),
-            @ApiResponse(responseCode = "404", content = @Content)})
+            @ApiResponse(responseCode = "404", content = @Content),
+            @ApiResponse(responseCode = "503", content = @Content)})
     @GetMapping("")
-    private ResponseEntity<List<Character>> getCharacters(
+    private CompletableFuture<ResponseEntity<List<Character>>> getCharacters(
             @RequestParam(value = "name", required = false) @Parameter(description = "Имя персонажа") String name,
             @RequestParam(value = "nameStartsWith", required = false) @Parameter(description = "Начальные буквы имени персонажа") String nameStartsWith,
-            @RequestParam(value = "orderBy", required = false) @Parameter(description = "Сортировка результату по полю", example = "name, modified, -name, -modified") String orderBy,
+            @RequestParam(value = "orderBy", required = false) @Parameter(description = "Сортировка результату по полю; в режиме local с фильтром по имени - только по name", example = "name, modified, -name, -modified") String orderBy,
             @RequestParam(value = "limit", defaultValue = "20") @Parameter(description = "Лимит вывода персонажей") int limit,
-            @RequestParam(value = "offset", defaultValue = "0") @Parameter(description = "Смещение результата для постраничного вывода") int offset) {
-        List<Character> list = characterService.getCharacters(name, nameStartsWith, orderBy, limit, offset);
-        if (list == null) {
+            @RequestParam(value = "offset", defaultValue = "0") @Parameter(description = "Смещение результата для постраничного вывода") int offset,
+            @RequestParam(value = "source", required = false) @Parameter(description = "Источник данных: upstream - сервер Marvel, local - база данных приложения", example = "local") String source,
+            @RequestParam(value = "cursor", required = false) @Parameter(description = "Курсор следующей страницы из заголовка X-Next-Cursor; заменяет offset и включает режим local") String cursor,
+            @RequestParam(value = "fields", required = false) @Parameter(description = "Поля ответа через запятую; id возвращается всегда", example = "name,thumbnail") String fields) {
+        return characterService.getCharacters(source, name, nameStartsWith, orderBy, limit, offset, cursor, fields).thenApply(page -> {
+            if (page == null) {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
+            }
+            if (page.getItems().isEmpty()) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
+            }
+            ResponseEntity.BodyBuilder response = ok(page.isStale());
+            if (page.getNextCursor() != null) {
+                response.header(NEXT_CURSOR_HEADER, page.getNextCursor());
+            }
+            return response.body(page.getItems());
+        });
+    }
+
+    @Operation(summary = "Получить персонажей по списку id", description = "Позволяет получить сразу несколько персонажей одним запросом. Для ненайденных id возвращается found = false")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200"),
+            @ApiResponse(responseCode = "400", content = @Content)})
+    @GetMapping(value = "", params = "ids")
+    private CompletableFuture<ResponseEntity<List<BatchItem<Character>>>> getCharactersByIds(
+            @RequestParam(value = "ids") @Parameter(description = "Список id через запятую", example = "1011334,1017100") List<String> ids,
+            @RequestParam(value = "fields", required = false) @Parameter(description = "Поля ответа через запятую; id возвращается всегда", example = "name,thumbnail") String fields) {
+        if (fields != null && FieldSet.characters(fields) == null) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null));
+        }
+        return characterService.getCharactersByIds(ids).thenApply(list -> {
+            if (list == null) {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
+            }
+            return ResponseEntity.ok(list);
+        });
+    }
+
+    @Operation(summary = "Автодополнение имени персонажа", description = "Возвращает персонажей из базы данных приложения, имя которых начинается с заданной строки")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200"),
+            @ApiResponse(responseCode = "400", content = @Content)})
+    @GetMapping("/autocomplete")
+    private ResponseEntity<List<Suggestion>> autocompleteCharacters(
+            @RequestParam(value = "prefix") @Parameter(description = "Начальные буквы имени персонажа", example = "spi") String prefix,
+            @RequestParam(value = "limit", defaultValue = "10") @Parameter(description = "Лимит вывода подсказок") int limit) {
+        List<Suggestion> suggestions = characterService.autocompleteCharacters(prefix, limit);
+        if (suggestions == null) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
         }
-        if (list.isEmpty()) {
-            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
+        return ResponseEntity.ok(suggestions);
+    }
+
+    @Operation(summary = "Выгрузить персонажей", description = "Потоково выгружает персонажей из базы данных приложения в формате NDJSON, по одному документу на строку")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", content = @Content(mediaType = "application/x-ndjson", schema = @Schema(implementation = Character.class))),
+            @ApiResponse(responseCode = "400", content = @Content)})
+    @GetMapping("/export")
+    private void exportCharacters(
+            @RequestParam(value = "name", required = false) @Parameter(description = "Имя персонажа") String name,
+            @RequestParam(value = "nameStartsWith", required = false) @Parameter(description = "Начальные буквы имени персонажа") String nameStartsWith,
+            @RequestParam(value = "orderBy", required = false) @Parameter(description = "Сортировка результату по полю; с фильтром по имени - только по name", example = "name, modified, -name, -modified") String orderBy,
+            @RequestParam(value = "fields", required = false) @Parameter(description = "Поля ответа через запятую; id возвращается всегда", example = "name,thumbnail") String fields,
+            HttpServletResponse response) throws IOException {
+        NdjsonExport<Character> export = characterService.exportCharacters(name, nameStartsWith, orderBy, fields);
+        if (export == null) {
+            response.setStatus(HttpStatus.BAD_REQUEST.value());
+            return;
         }
-        return ResponseEntity.ok(list);
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        export.writeTo(response.getOutputStream());
     }
 
     @Operation(summary = "Получить персонажа по id", description = "Позволяет получить персонажа с сервера Marvel")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", content = @Content(mediaType = "application/json", schema = @Schema(implementation = Character.class))),
-            @ApiResponse(responseCode = "404", content = @Content)})
+            @ApiResponse(responseCode = "404", content = @Content),
+            @ApiResponse(responseCode = "503", content = @Content)})
     @GetMapping("/{characterId}")
-    private ResponseEntity<Character> getCharacter(@PathVariable(name = "characterId") @Parameter(description = "id персонажа") String characterId) {
-        Character character = characterService.getCharacter(characterId);
-        if (character == null) {
-            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
+    private CompletableFuture<ResponseEntity<Character>> getCharacter(@PathVariable(name = "characterId") @Parameter(description = "id персонажа") String characterId,
+            @RequestParam(value = "fields", required = false) @Parameter(description = "Поля ответа через запятую; id возвращается всегда", example = "name,thumbnail") String fields) {
+        if (fields != null && FieldSet.characters(fields) == null) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null));
         }
-        return ResponseEntity.ok(character);
+        return characterService.getCharacter(characterId).thenApply(fetched -> {
+            if (fetched == null) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
+            }
+            return ok(fetched.isStale()).body(fetched.getValue());
+        });
     }
 
-    @Operation(summary = "Получить комиксы по id персонажа", description = "Позволяет получить комиксы конкретного персонажа с сервера Marvel")
+    @Operation(summary = "Получить комиксы по id персонажа", description = "Позволяет получить комиксы конкретного персонажа с сервера Marvel или из базы данных приложения")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200"),
             @ApiResponse(responseCode = "400", content = @Content),
-            @ApiResponse(responseCode = "404", content = @Content)})
+            @ApiResponse(responseCode = "404", content = @Content),
+            @ApiResponse(responseCode = "503", content = @Content)})
     @GetMapping("/{characterId}/comics")
-    private ResponseEntity<List<Comic>> getCharacterComics(
+    private CompletableFuture<ResponseEntity<List<Comic>>> getCharacterComics(
             @PathVariable(name = "characterId") @Parameter(description = "id персонажа") String characterId,
             @RequestParam(value = "format", required = false) @Parameter(description = "Формат выпуска", example = "comic, magazine, hardcover") String format,
             @RequestParam(value = "title", required = false) @Parameter(description = "Заголовок комикса") String title,
             @RequestParam(value = "titleStartsWith", required = false) @Parameter(description = "Начальные буквы заголовка комикса") String titleStartsWith,
             @RequestParam(value = "orderBy", required = false) @Parameter(description = "Сортировка результату по полю. Добавить \"-\" для сортировки по убыванию", example = "title, modified") String orderBy,
             @RequestParam(value = "limit", defaultValue = "20") @Parameter(description = "Лимит вывода персонажей") int limit,
-            @RequestParam(value = "offset", defaultValue = "0") @Parameter(description = "Смещение результата для постраничного вывода") int offset) {
-        List<Comic> list = characterService.getCharacterComics(characterId, format, title, titleStartsWith, orderBy, limit, offset);
-        if (list == null) {
+            @RequestParam(value = "offset", defaultValue = "0") @Parameter(description = "Смещение результата для постраничного вывода") int offset,
+            @RequestParam(value = "source", required = false) @Parameter(description = "Источник данных: upstream - сервер Marvel, local - база данных приложения и граф связей в памяти", example = "local") String source,
+            @RequestParam(value = "fields", required = false) @Parameter(description = "Поля ответа через запятую; id возвращается всегда", example = "title,thumbnail") String fields) {
+        return characterService.getCharacterComics(source, characterId, format, title, titleStartsWith, orderBy, limit, offset, fields).thenApply(page -> {
+            if (page == null) {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
+            }
+            if (page.getItems().isEmpty()) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
+            }
+            return ok(page.isStale()).body(page.getItems());
+        });
+    }
+
+    @Operation(summary = "Общие комиксы двух персонажей", description = "Возвращает комиксы из базы данных приложения, в которых появляются оба персонажа")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200"),
+            @ApiResponse(responseCode = "400", content = @Content),
+            @ApiResponse(responseCode = "404", content = @Content)})
+    @GetMapping("/{characterId}/co-appearances")
+    private ResponseEntity<List<Comic>> getCoAppearances(
+            @PathVariable(name = "characterId") @Parameter(description = "id персонажа") String characterId,
+            @RequestParam(value = "with") @Parameter(description = "id второго персонажа", example = "1009368") String otherId,
+            @RequestParam(value = "orderBy", required = false) @Parameter(description = "Сортировка результату по полю. Добавить \"-\" для сортировки по убыванию", example = "title, modified") String orderBy,
+            @RequestParam(value = "limit", defaultValue = "20") @Parameter(description = "Лимит вывода комиксов") int limit,
+            @RequestParam(value = "offset", defaultValue = "0") @Parameter(description = "Смещение результата для постраничного вывода") int offset,
+            @RequestParam(value = "fields", required = false) @Parameter(description = "Поля ответа через запятую; id возвращается всегда", example = "title,thumbnail") String fields) {
+        List<Comic> comics = characterService.getCoAppearances(characterId, otherId, orderBy, limit, offset, fields);
+        if (comics == null) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
+        }
+        if (comics.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
+        }
+        return ResponseEntity.ok(comics);
+    }
+
+    @Operation(summary = "Чаще всего встречающиеся вместе персонажи", description = "Возвращает персонажей с наибольшим числом общих комиксов по графу связей в памяти")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200"),
+            @ApiResponse(responseCode = "400", content = @Content),
+            @ApiResponse(responseCode = "404", content = @Content)})
+    @GetMapping("/{characterId}/neighbours")
+    private ResponseEntity<List<Neighbour>> getNeighbours(
+            @PathVariable(name = "characterId") @Parameter(description = "id персонажа") String characterId,
+            @RequestParam(value = "limit", defaultValue = "10") @Parameter(description = "Лимит вывода персонажей") int limit) {
+        List<Neighbour> neighbours = characterService.getNeighbours(characterId, limit);
+        if (neighbours == null) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
         }
-        if (list.isEmpty()) {
+        if (neighbours.isEmpty()) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
         }
-        return ResponseEntity.ok(list);
+        return ResponseEntity.ok(neighbours);
     }
 
     @Operation(summary = "Сохранить персонажа", description = "Сохраняет персонажа в базу данных приложения")
@@ -103,10 +235,22 @@ public class CharactersController {
         return ResponseEntity.ok(character);
     }
 
+    @Operation(summary = "Сохранить персонажей пакетом", description = "Сохраняет массив персонажей или поток NDJSON в базу данных приложения пакетными операциями")
+    @io.swagger.v3.oas.annotations.parameters.RequestBody(content = {
+            @Content(mediaType = "application/json", array = @ArraySchema(schema = @Schema(implementation = CharacterRequest.class))),
+            @Content(mediaType = "application/x-ndjson", schema = @Schema(implementation = CharacterRequest.class))})
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", content = @Content(mediaType = "application/json", schema = @Schema(implementation = BulkResponse.class)))})
+    @PostMapping(value = "/bulk", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    private ResponseEntity<BulkResponse> bulkCharacters(HttpServletRequest request) throws IOException {
+        return ResponseEntity.ok(characterService.bulkSaveCharacters(request.getInputStream()));
+    }
+
     @Operation(summary = "Изменить персонажа", description = "Изменяет данные персонажа в базе данных приложения")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", content = @Content(mediaType = "application/json", schema = @Schema(implementation = Character.class))),
-            @ApiResponse(responseCode = "400", content = @Content)})
+            @ApiResponse(responseCode = "400", content = @Content),
+            @ApiResponse(responseCode = "409", content = @Content)})
     @PutMapping("/{characterId}")
     private ResponseEntity<Character> editCharacter(@PathVariable(name = "characterId") @Parameter(description = "id персонажа") String characterId, @RequestBody CharacterRequest request) {
         Character character = characterService.updateCharacter(characterId, request);
@@ -118,13 +262,24 @@ public class CharactersController {
 
     @Operation(summary = "Удалить персонажа", description = "Удаляет персонажа из базы данных приложения")
     @ApiResponses(value = {@ApiResponse(responseCode = "200", content = @Content(mediaType = "application/json", schema = @Schema(example = "true"))),
-            @ApiResponse(responseCode = "400", content = @Content(mediaType = "application/json", schema = @Schema(example = "false")))})
+            @ApiResponse(responseCode = "400", content = @Content(mediaType = "application/json", schema = @Schema(example = "false"))),
+            @ApiResponse(responseCode = "409", content = @Content)})
     @DeleteMapping("/{characterId}")
-    private ResponseEntity<Boolean> deleteCharacter(@PathVariable(name = "characterId") @Parameter(description = "id персонажа") String characterId) {
-        if (!characterService.deleteCharacter(characterId)) {
+    private ResponseEntity<Boolean> deleteCharacter(@PathVariable(name = "characterId") @Parameter(description = "id персонажа") String characterId,
+            @RequestParam(value = "version", required = false) @Parameter(description = "Ожидаемая версия персонажа") Long version) {
+        if (!characterService.deleteCharacter(characterId, version)) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(false);
         }
         return ResponseEntity.ok(true);
     }
 
+    // Expired copies served while Marvel is slow, down or out of quota carry the HTTP staleness warning
+    private static ResponseEntity.BodyBuilder ok(boolean stale) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (stale) {
+            response.header(HttpHeaders.WARNING, STALE_WARNING);
+        }
+        return response;
+    }
+
 }
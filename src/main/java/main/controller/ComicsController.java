@@ -2,27 +2,43 @@ package main.controller;
 
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.headers.Header;
+import io.swagger.v3.oas.annotations.media.ArraySchema;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import main.api.BatchItem;
+import main.api.BulkResponse;
 import main.api.ComicRequest;
+import main.api.Suggestion;
 import main.entities.Character;
 import main.entities.Comic;
 import main.service.ComicsService;
+import main.service.FieldSet;
+import main.service.NdjsonExport;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @Tag(name = "Комиксы", description = "Взаимодействие с базой комиксов")
 @RestController
 @RequestMapping("/comics")
 public class ComicsController {
 
+    private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    private static final String STALE_WARNING = "110 - \"Response is Stale\"";
+
     private final ComicsService comicsService;
 
     @Autowired
@@ -30,63 +46,137 @@ public class ComicsController {
         this.comicsService = comicsService;
     }
 
-    @Operation(summary = "Получить комиксы", description = "Позволяет получить комиксы с сервера Marvel")
+    @Operation(summary = "Получить комиксы", description = "Позволяет получить комиксы с сервера Marvel или из базы данных приложения")
     @ApiResponses(value = {
-            @ApiResponse(responseCode = "200"),
+            @ApiResponse(responseCode = "200", headers = @Header(name = NEXT_CURSOR_HEADER, description = "Курсор следующей страницы, если она может существовать")),
             @ApiResponse(responseCode = "400", content = @Content),
-            @ApiResponse(responseCode = "404", content = @Content)})
+            @ApiResponse(responseCode = "404", content = @Content),
+            @ApiResponse(responseCode = "503", content = @Content)})
     @GetMapping("")
-    private ResponseEntity<List<Comic>> getComics(
+    private CompletableFuture<ResponseEntity<List<Comic>>> getComics(
             @RequestParam(value = "format", required = false) @Parameter(description = "Формат выпуска", example = "comic, magazine, hardcover") String format,
             @RequestParam(value = "title", required = false) @Parameter(description = "Заголовок комикса") String title,
             @RequestParam(value = "titleStartsWith", required = false) @Parameter(description = "Начальные буквы заголовка комикса") String titleStartsWith,
-            @RequestParam(value = "orderBy", required = false) @Parameter(description = "Сортировка результату по полю. Добавить \"-\" для сортировки по убыванию", example = "title, modified") String orderBy,
+            @RequestParam(value = "orderBy", required = false) @Parameter(description = "Сортировка результату по полю. Добавить \"-\" для сортировки по убыванию; в режиме local с фильтром по заголовку - только по title", example = "title, modified") String orderBy,
             @RequestParam(value = "limit", defaultValue = "20") @Parameter(description = "Лимит вывода персонажей") int limit,
-            @RequestParam(value = "offset", defaultValue = "0") @Parameter(description = "Смещение результата для постраничного вывода") int offset) {
-        List<Comic> list = comicsService.getComics(format, title, titleStartsWith, orderBy, limit, offset);
-        if (list == null) {
+            @RequestParam(value = "offset", defaultValue = "0") @Parameter(description = "Смещение результата для постраничного вывода") int offset,
+            @RequestParam(value = "source", required = false) @Parameter(description = "Источник данных: upstream - сервер Marvel, local - база данных приложения", example = "local") String source,
+            @RequestParam(value = "cursor", required = false) @Parameter(description = "Курсор следующей страницы из заголовка X-Next-Cursor; заменяет offset и включает режим local") String cursor,
+            @RequestParam(value = "fields", required = false) @Parameter(description = "Поля ответа через запятую; id возвращается всегда", example = "title,thumbnail") String fields) {
+        return comicsService.getComics(source, format, title, titleStartsWith, orderBy, limit, offset, cursor, fields).thenApply(page -> {
+            if (page == null) {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
+            }
+            if (page.getItems().isEmpty()) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
+            }
+            ResponseEntity.BodyBuilder response = ok(page.isStale());
+            if (page.getNextCursor() != null) {
+                response.header(NEXT_CURSOR_HEADER, page.getNextCursor());
+            }
+            return response.body(page.getItems());
+        });
+    }
+
+    @Operation(summary = "Получить комиксы по списку id", description = "Позволяет получить сразу несколько комиксов одним запросом. Для ненайденных id возвращается found = false")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200"),
+            @ApiResponse(responseCode = "400", content = @Content)})
+    @GetMapping(value = "", params = "ids")
+    private CompletableFuture<ResponseEntity<List<BatchItem<Comic>>>> getComicsByIds(
+            @RequestParam(value = "ids") @Parameter(description = "Список id через запятую", example = "1011334,1017100") List<String> ids,
+            @RequestParam(value = "fields", required = false) @Parameter(description = "Поля ответа через запятую; id возвращается всегда", example = "title,thumbnail") String fields) {
+        if (fields != null && FieldSet.comics(fields) == null) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null));
+        }
+        return comicsService.getComicsByIds(ids).thenApply(list -> {
+            if (list == null) {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
+            }
+            return ResponseEntity.ok(list);
+        });
+    }
+
+    @Operation(summary = "Автодополнение заголовка комикса", description = "Возвращает комиксы из базы данных приложения, заголовок которых начинается с заданной строки")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200"),
+            @ApiResponse(responseCode = "400", content = @Content)})
+    @GetMapping("/autocomplete")
+    private ResponseEntity<List<Suggestion>> autocompleteComics(
+            @RequestParam(value = "prefix") @Parameter(description = "Начальные буквы заголовка комикса", example = "aven") String prefix,
+            @RequestParam(value = "limit", defaultValue = "10") @Parameter(description = "Лимит вывода подсказок") int limit) {
+        List<Suggestion> suggestions = comicsService.autocompleteComics(prefix, limit);
+        if (suggestions == null) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
         }
-        if (list.isEmpty()) {
-            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
+        return ResponseEntity.ok(suggestions);
+    }
+
+    @Operation(summary = "Выгрузить комиксы", description = "Потоково выгружает комиксы из базы данных приложения в формате NDJSON, по одному документу на строку")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", content = @Content(mediaType = "application/x-ndjson", schema = @Schema(implementation = Comic.class))),
+            @ApiResponse(responseCode = "400", content = @Content)})
+    @GetMapping("/export")
+    private void exportComics(
+            @RequestParam(value = "format", required = false) @Parameter(description = "Формат выпуска", example = "comic, magazine, hardcover") String format,
+            @RequestParam(value = "title", required = false) @Parameter(description = "Заголовок комикса") String title,
+            @RequestParam(value = "titleStartsWith", required = false) @Parameter(description = "Начальные буквы заголовка комикса") String titleStartsWith,
+            @RequestParam(value = "orderBy", required = false) @Parameter(description = "Сортировка результату по полю. Добавить \"-\" для сортировки по убыванию; с фильтром по заголовку - только по title", example = "title, modified") String orderBy,
+            @RequestParam(value = "fields", required = false) @Parameter(description = "Поля ответа через запятую; id возвращается всегда", example = "title,thumbnail") String fields,
+            HttpServletResponse response) throws IOException {
+        NdjsonExport<Comic> export = comicsService.exportComics(format, title, titleStartsWith, orderBy, fields);
+        if (export == null) {
+            response.setStatus(HttpStatus.BAD_REQUEST.value());
+            return;
         }
-        return ResponseEntity.ok(list);
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        export.writeTo(response.getOutputStream());
     }
 
     @Operation(summary = "Получить комикс по id", description = "Позволяет получить комикс с сервера Marvel")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", content = @Content(mediaType = "application/json", schema = @Schema(implementation = Comic.class))),
-            @ApiResponse(responseCode = "404", content = @Content)})
+            @ApiResponse(responseCode = "404", content = @Content),
+            @ApiResponse(responseCode = "503", content = @Content)})
     @GetMapping("/{comicId}")
-    private ResponseEntity<Comic> getComicsId(@PathVariable(name = "comicId") @Parameter(description = "id комикса") String comicId) {
-        Comic comic = comicsService.getComic(comicId);
-        if (comic == null) {
-            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
+    private CompletableFuture<ResponseEntity<Comic>> getComicsId(@PathVariable(name = "comicId") @Parameter(description = "id комикса") String comicId,
+            @RequestParam(value = "fields", required = false) @Parameter(description = "Поля ответа через запятую; id возвращается всегда", example = "title,thumbnail") String fields) {
+        if (fields != null && FieldSet.comics(fields) == null) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null));
         }
-        return ResponseEntity.ok(comic);
+        return comicsService.getComic(comicId).thenApply(fetched -> {
+            if (fetched == null) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
+            }
+            return ok(fetched.isStale()).body(fetched.getValue());
+        });
     }
 
-    @Operation(summary = "Получить персонажей по id комикса", description = "Позволяет получить персонажей конкретного комикса с сервера Marvel")
+    @Operation(summary = "Получить персонажей по id комикса", description = "Позволяет получить персонажей конкретного комикса с сервера Marvel или из базы данных приложения")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200"),
             @ApiResponse(responseCode = "400", content = @Content),
-            @ApiResponse(responseCode = "404", content = @Content)})
+            @ApiResponse(responseCode = "404", content = @Content),
+            @ApiResponse(responseCode = "503", content = @Content)})
     @GetMapping("/{comicId}/characters")
-    private ResponseEntity<List<Character>> getComicsIdCharacters(
+    private CompletableFuture<ResponseEntity<List<Character>>> getComicsIdCharacters(
             @PathVariable(name = "comicId") @Parameter(description = "id комикса") String comicId,
             @RequestParam(value = "name", required = false) @Parameter(description = "Имя персонажа") String name,
             @RequestParam(value = "nameStartsWith", required = false) @Parameter(description = "Начальные буквы имени персонажа") String nameStartsWith,
             @RequestParam(value = "orderBy", required = false) @Parameter(description = "Сортировка результату по полю", example = "name, modified, -name, -modified") String orderBy,
             @RequestParam(value = "limit", defaultValue = "20") @Parameter(description = "Лимит вывода персонажей") int limit,
-            @RequestParam(value = "offset", defaultValue = "0") @Parameter(description = "Смещение результата для постраничного вывода") int offset) {
-        List<Character> list = comicsService.getComicCharacters(comicId, name, nameStartsWith, orderBy, limit, offset);
-        if (list == null) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
-        }
-        if (list.isEmpty()) {
-            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
-        }
-        return ResponseEntity.ok(list);
+            @RequestParam(value = "offset", defaultValue = "0") @Parameter(description = "Смещение результата для постраничного вывода") int offset,
+            @RequestParam(value = "source", required = false) @Parameter(description = "Источник данных: upstream - сервер Marvel, local - база данных приложения и граф связей в памяти", example = "local") String source,
+            @RequestParam(value = "fields", required = false) @Parameter(description = "Поля ответа через запятую; id возвращается всегда", example = "name,thumbnail") String fields) {
+        return comicsService.getComicCharacters(source, comicId, name, nameStartsWith, orderBy, limit, offset, fields).thenApply(page -> {
+            if (page == null) {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
+            }
+            if (page.getItems().isEmpty()) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
+            }
+            return ok(page.isStale()).body(page.getItems());
+        });
     }
 
     @Operation(summary = "Сохранить комикс", description = "Сохраняет комикс в базу данных приложения")
@@ -102,10 +192,22 @@ public class ComicsController {
         return ResponseEntity.ok(comic);
     }
 
+    @Operation(summary = "Сохранить комиксов пакетом", description = "Сохраняет массив комиксов или поток NDJSON в базу данных приложения пакетными операциями")
+    @io.swagger.v3.oas.annotations.parameters.RequestBody(content = {
+            @Content(mediaType = "application/json", array = @ArraySchema(schema = @Schema(implementation = ComicRequest.class))),
+            @Content(mediaType = "application/x-ndjson", schema = @Schema(implementation = ComicRequest.class))})
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", content = @Content(mediaType = "application/json", schema = @Schema(implementation = BulkResponse.class)))})
+    @PostMapping(value = "/bulk", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    private ResponseEntity<BulkResponse> bulkComics(HttpServletRequest request) throws IOException {
+        return ResponseEntity.ok(comicsService.bulkSaveComics(request.getInputStream()));
+    }
+
     @Operation(summary = "Изменить комикс", description = "Изменяет данные комикса в базе данных приложения")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", content = @Content(mediaType = "application/json", schema = @Schema(implementation = Comic.class))),
-            @ApiResponse(responseCode = "400", content = @Content)})
+            @ApiResponse(responseCode = "400", content = @Content),
+            @ApiResponse(responseCode = "409", content = @Content)})
     @PutMapping("/{comicId}")
     private ResponseEntity<Comic> editComic(@PathVariable(name = "comicId") @Parameter(description = "id комикса") String comicId, @RequestBody ComicRequest request) {
         Comic comic = comicsService.updateComic(comicId, request);
@@ -117,13 +219,24 @@ public class ComicsController {
 
     @Operation(summary = "Удалить комикс", description = "Удаляет комикс из базы данных приложения")
     @ApiResponses(value = {@ApiResponse(responseCode = "200", content = @Content(mediaType = "application/json", schema = @Schema(example = "true"))),
-            @ApiResponse(responseCode = "400", content = @Content(mediaType = "application/json", schema = @Schema(example = "false")))})
+            @ApiResponse(responseCode = "400", content = @Content(mediaType = "application/json", schema = @Schema(example = "false"))),
+            @ApiResponse(responseCode = "409", content = @Content)})
     @DeleteMapping("/{comicId}")
-    private ResponseEntity<Boolean> deleteComic(@PathVariable(name = "comicId") @Parameter(description = "id комикса") String comicId) {
-        if (!comicsService.deleteCharacter(comicId)) {
+    private ResponseEntity<Boolean> deleteComic(@PathVariable(name = "comicId") @Parameter(description = "id комикса") String comicId,
+            @RequestParam(value = "version", required = false) @Parameter(description = "Ожидаемая версия комикса") Long version) {
+        if (!comicsService.deleteComic(comicId, version)) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(false);
         }
         return ResponseEntity.ok(true);
     }
 
+    // Expired copies served while Marvel is slow, down or out of quota carry the HTTP staleness warning
+    private static ResponseEntity.BodyBuilder ok(boolean stale) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (stale) {
+            response.header(HttpHeaders.WARNING, STALE_WARNING);
+        }
+        return response;
+    }
+
 }
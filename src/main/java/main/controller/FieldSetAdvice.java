@@ -0,0 +1,70 @@
+package main.controller;
+
+import main.api.BatchItem;
+import main.entities.Character;
+import main.entities.Comic;
+import main.service.FieldSet;
+import org.springframework.core.MethodParameter;
+import org.springframework.core.ResolvableType;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.MappingJacksonValue;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.AbstractMappingJacksonResponseBodyAdvice;
+
+import java.lang.reflect.Type;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+// Serializes only the properties picked with ?fields=; the controllers have already rejected unknown names
+@RestControllerAdvice(assignableTypes = {CharactersController.class, ComicsController.class})
+public class FieldSetAdvice extends AbstractMappingJacksonResponseBodyAdvice {
+
+    // Parser per handler return type, resolved once; empty for handlers that don't return entities
+    private final Map<Type, Optional<Function<String, FieldSet>>> parsers = new ConcurrentHashMap<>();
+
+    @Override
+    protected void beforeBodyWriteInternal(MappingJacksonValue bodyContainer, MediaType contentType, MethodParameter returnType,
+                                           ServerHttpRequest request, ServerHttpResponse response) {
+        if (!(request instanceof ServletServerHttpRequest)) {
+            return;
+        }
+        String fields = ((ServletServerHttpRequest) request).getServletRequest().getParameter("fields");
+        if (fields == null) {
+            return;
+        }
+        Optional<Function<String, FieldSet>> parser = parsers.computeIfAbsent(returnType.getGenericParameterType(),
+                type -> parser(ResolvableType.forMethodParameter(returnType)));
+        FieldSet selected = parser.map(parse -> parse.apply(fields)).orElse(null);
+        if (selected != null) {
+            bodyContainer.setFilters(selected.filters());
+        }
+    }
+
+    // Unwraps the future, the response entity, the list and the batch item down to the entity the handler returns
+    static Optional<Function<String, FieldSet>> parser(ResolvableType type) {
+        while (true) {
+            Class<?> raw = type.resolve(Object.class);
+            if (raw == Character.class) {
+                return Optional.of(FieldSet::characters);
+            }
+            if (raw == Comic.class) {
+                return Optional.of(FieldSet::comics);
+            }
+            if (CompletableFuture.class.isAssignableFrom(raw) || HttpEntity.class.isAssignableFrom(raw)
+                    || Collection.class.isAssignableFrom(raw) || raw == BatchItem.class) {
+                type = type.getGeneric();
+            } else {
+                return Optional.empty();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,121 @@
+package main.controller;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import main.service.ImageStore;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+
+@Tag(name = "Изображения", description = "Загруженные изображения персонажей и комиксов")
+@RestController
+@RequestMapping("/images")
+public class ImagesController {
+
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+
+    private final ImageStore imageStore;
+    private final Duration maxAge;
+
+    @Autowired
+    public ImagesController(ImageStore imageStore, @Value("${images.max-age:365d}") Duration maxAge) {
+        this.imageStore = imageStore;
+        this.maxAge = maxAge;
+    }
+
+    @Operation(summary = "Получить изображение", description = "Отдаёт изображение по хэшу содержимого, поддерживает заголовок Range")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200"),
+            @ApiResponse(responseCode = "206"),
+            @ApiResponse(responseCode = "304"),
+            @ApiResponse(responseCode = "404"),
+            @ApiResponse(responseCode = "416")})
+    @GetMapping("/{name:.+}")
+    private void getImage(@PathVariable(name = "name") @Parameter(description = "Имя файла изображения") String name,
+                          @RequestHeader(value = HttpHeaders.RANGE, required = false) String range,
+                          @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+                          HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Path file = imageStore.resolve(name);
+        if (file == null) {
+            response.setStatus(HttpStatus.NOT_FOUND.value());
+            return;
+        }
+        // Content-addressed files never change, so the name is a strong validator
+        String etag = "\"" + name + "\"";
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "public, max-age=" + maxAge.getSeconds() + ", immutable");
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        if (ResponseCacheFilter.matches(ifNoneMatch, etag)) {
+            response.setStatus(HttpStatus.NOT_MODIFIED.value());
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long length = channel.size();
+            long start = 0;
+            long end = length - 1;
+            if (range != null) {
+                List<HttpRange> ranges;
+                try {
+                    ranges = HttpRange.parseRanges(range);
+                } catch (IllegalArgumentException e) {
+                    ranges = List.of();
+                }
+                if (ranges.size() != 1 || length == 0) {
+                    response.setStatus(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+                    response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                    return;
+                }
+                start = ranges.get(0).getRangeStart(length);
+                end = ranges.get(0).getRangeEnd(length);
+                if (start >= length) {
+                    response.setStatus(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+                    response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                    return;
+                }
+                response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+            }
+            long count = end - start + 1;
+            response.setContentType(MediaTypeFactory.getMediaType(name).orElse(MediaType.APPLICATION_OCTET_STREAM).toString());
+            response.setContentLengthLong(count);
+            if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+                // Tomcat's NIO connector hands the file to the kernel with sendfile once the handler returns
+                request.setAttribute("org.apache.tomcat.sendfile.filename", file.toString());
+                request.setAttribute("org.apache.tomcat.sendfile.start", start);
+                request.setAttribute("org.apache.tomcat.sendfile.end", end + 1);
+                return;
+            }
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            while (count > 0) {
+                long sent = channel.transferTo(position, count, out);
+                position += sent;
+                count -= sent;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,55 @@
+package main.controller;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import main.service.IngestionRun;
+import main.service.IngestionService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@Tag(name = "Загрузка каталога", description = "Зеркалирование каталогов Marvel в базу данных приложения")
+@RestController
+@RequestMapping("/ingestion")
+public class IngestionController {
+
+    private final IngestionService ingestionService;
+
+    @Autowired
+    public IngestionController(IngestionService ingestionService) {
+        this.ingestionService = ingestionService;
+    }
+
+    @Operation(summary = "Запустить загрузку", description = "Загружает каталог персонажей или комиксов с сервера Marvel. Без full продолжает прерванную загрузку или забирает изменения с момента последней полной")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "202"),
+            @ApiResponse(responseCode = "404", content = @Content),
+            @ApiResponse(responseCode = "409", content = @Content)})
+    @PostMapping("/{resource}")
+    private ResponseEntity<IngestionRun> startIngestion(
+            @PathVariable(name = "resource") @Parameter(description = "Каталог", example = "characters, comics") String resource,
+            @RequestParam(value = "full", defaultValue = "false") @Parameter(description = "Загрузить каталог целиком") boolean full) {
+        if (!ingestionService.isKnown(resource)) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
+        }
+        IngestionRun run = ingestionService.start(resource, full);
+        if (run == null) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(null);
+        }
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(run);
+    }
+
+    @Operation(summary = "Состояние загрузок", description = "Прогресс загрузок: страницы и документы в секунду")
+    @GetMapping("")
+    private ResponseEntity<List<IngestionRun>> getIngestionRuns() {
+        return ResponseEntity.ok(ingestionService.getRuns());
+    }
+
+}
@@ -0,0 +1,208 @@
+package main.controller;
+
+import main.service.CachedResponse;
+import main.service.IngestionService;
+import main.service.ResponseCache;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+import org.springframework.web.util.UriUtils;
+import org.springframework.web.util.WebUtils;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Replays the serialized bytes of successful character and comic GETs, compressed when the client accepts it,
+ * and answers matching If-None-Match with 304 before any controller or service runs. Misses are rendered as
+ * usual and captured on the way out, after the async dispatch when the controller returned a future.
+ */
+@Component
+public class ResponseCacheFilter extends OncePerRequestFilter {
+
+    private static final String KEY_ATTRIBUTE = ResponseCacheFilter.class.getName() + ".key";
+    private static final String GENERATION_ATTRIBUTE = ResponseCacheFilter.class.getName() + ".generation";
+    // Replayed as rendered; everything else about a cached response is rebuilt on each hit
+    private static final String[] KEPT_HEADERS = {HttpHeaders.CONTENT_TYPE, "X-Next-Cursor"};
+    private static final String EXPORT = "export";
+
+    private final ResponseCache responseCache;
+    private final String cacheControl;
+    private final int maxEntrySize;
+
+    @Autowired
+    public ResponseCacheFilter(ResponseCache responseCache,
+                               @Value("${responses.cache.max-age:0s}") Duration maxAge,
+                               @Value("${responses.cache.max-entry-size:1MB}") DataSize maxEntrySize) {
+        this.responseCache = responseCache;
+        this.cacheControl = "max-age=" + maxAge.getSeconds() + ", must-revalidate";
+        this.maxEntrySize = (int) maxEntrySize.toBytes();
+    }
+
+    // Exports stream straight to the client; wrapping them would buffer the whole dump in memory
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        if (!responseCache.isEnabled() || !HttpMethod.GET.matches(request.getMethod())) {
+            return true;
+        }
+        String[] segments = segments(request);
+        return collection(segments) == null || segments.length == 2 && segments[1].equals(EXPORT);
+    }
+
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        return false;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        String key = (String) request.getAttribute(KEY_ATTRIBUTE);
+        if (key == null) {
+            key = key(request);
+            CachedResponse cached = responseCache.get(key);
+            if (cached != null) {
+                write(request, response, cached);
+                return;
+            }
+            String[] segments = segments(request);
+            request.setAttribute(KEY_ATTRIBUTE, key);
+            request.setAttribute(GENERATION_ATTRIBUTE, responseCache.generation(collection(segments), segments.length > 2));
+        }
+        ContentCachingResponseWrapper wrapper = WebUtils.getNativeResponse(response, ContentCachingResponseWrapper.class);
+        if (wrapper == null) {
+            wrapper = new ContentCachingResponseWrapper(response);
+        }
+        filterChain.doFilter(request, wrapper);
+        if (isAsyncStarted(request)) {
+            return;
+        }
+        CachedResponse rendered = capture(request, wrapper, (Long) request.getAttribute(GENERATION_ATTRIBUTE));
+        if (rendered == null) {
+            wrapper.copyBodyToResponse();
+            return;
+        }
+        responseCache.put(key, rendered);
+        wrapper.resetBuffer();
+        write(request, (HttpServletResponse) wrapper.getResponse(), rendered);
+    }
+
+    // Only plain 200 JSON is kept: errors, stale copies served during an outage and oversized bodies pass through
+    private CachedResponse capture(HttpServletRequest request, ContentCachingResponseWrapper wrapper, long generation) {
+        String contentType = wrapper.getContentType();
+        if (wrapper.getStatus() != HttpServletResponse.SC_OK || wrapper.getHeader(HttpHeaders.WARNING) != null
+                || wrapper.getHeader(HttpHeaders.CONTENT_ENCODING) != null || contentType == null
+                || !MediaType.APPLICATION_JSON.isCompatibleWith(MediaType.parseMediaType(contentType))
+                || wrapper.getContentSize() > maxEntrySize) {
+            return null;
+        }
+        byte[] body = wrapper.getContentAsByteArray();
+        Map<String, String> headers = new LinkedHashMap<>();
+        for (String name : KEPT_HEADERS) {
+            String value = wrapper.getHeader(name);
+            if (value != null) {
+                headers.put(name, value);
+            }
+        }
+        String[] segments = segments(request);
+        // /{collection} and /{collection}/autocomplete read a whole collection, /{collection}/{id} one document,
+        // anything deeper is a relationship list that both collections feed into
+        boolean relation = segments.length > 2;
+        String id = segments.length == 2 && !segments[1].equals("autocomplete") ? segments[1] : null;
+        return new CachedResponse(body, responseCache.gzip(body), "\"" + DigestUtils.md5DigestAsHex(body) + "\"",
+                headers, collection(segments), id, relation, generation);
+    }
+
+    private void write(HttpServletRequest request, HttpServletResponse response, CachedResponse cached) throws IOException {
+        boolean gzip = cached.getGzipBody() != null && acceptsGzip(request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+        String etag = gzip ? cached.getGzipEtag() : cached.getEtag();
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl);
+        response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (matches(request.getHeader(HttpHeaders.IF_NONE_MATCH), etag)) {
+            responseCache.notModified();
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        response.setStatus(HttpServletResponse.SC_OK);
+        cached.getHeaders().forEach(response::setHeader);
+        byte[] body = gzip ? cached.getGzipBody() : cached.getBody();
+        if (gzip) {
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+    }
+
+    // Path plus query parameters sorted by name, so reordered or re-encoded URLs share one entry
+    private static String key(HttpServletRequest request) {
+        StringBuilder key = new StringBuilder(request.getRequestURI().substring(request.getContextPath().length()));
+        char separator = '?';
+        for (Map.Entry<String, String[]> parameter : new TreeMap<>(request.getParameterMap()).entrySet()) {
+            for (String value : parameter.getValue()) {
+                key.append(separator).append(UriUtils.encode(parameter.getKey(), StandardCharsets.UTF_8))
+                        .append('=').append(UriUtils.encode(value, StandardCharsets.UTF_8));
+                separator = '&';
+            }
+        }
+        return key.toString();
+    }
+
+    private static String[] segments(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        return path.startsWith("/") ? path.substring(1).split("/") : path.split("/");
+    }
+
+    private static String collection(String[] segments) {
+        if (segments.length == 0) {
+            return null;
+        }
+        if (segments[0].equals(IngestionService.CHARACTERS) || segments[0].equals(IngestionService.COMICS)) {
+            return segments[0];
+        }
+        return null;
+    }
+
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.trim().split(";");
+            if (parts[0].trim().equalsIgnoreCase("gzip")) {
+                return parts.length == 1 || !parts[1].trim().matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
+    }
+
+    // Also used by ImagesController, whose content-addressed names are strong validators too
+    static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*") || tag.equals(etag) || tag.equals("W/" + etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,114 @@
+package main.controller;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import main.service.AutocompleteIndex;
+import main.service.RelationshipStore;
+import main.service.ResponseCache;
+import main.service.SingleFlight;
+import main.service.SnapshotService;
+import main.service.UpstreamCache;
+import main.service.UpstreamCircuitBreaker;
+import main.service.UpstreamClient;
+import main.service.UpstreamHedging;
+import main.service.UpstreamScheduler;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@Tag(name = "Статистика", description = "Состояние обращений к серверу Marvel")
+@RestController
+@RequestMapping("/stats")
+public class StatsController {
+
+    private final UpstreamClient upstreamClient;
+    private final UpstreamCache upstreamCache;
+    private final SingleFlight singleFlight;
+    private final AutocompleteIndex autocompleteIndex;
+    private final RelationshipStore relationshipStore;
+    private final UpstreamScheduler upstreamScheduler;
+    private final UpstreamCircuitBreaker circuitBreaker;
+    private final UpstreamHedging upstreamHedging;
+    private final ResponseCache responseCache;
+    private final SnapshotService snapshotService;
+
+    @Autowired
+    public StatsController(UpstreamClient upstreamClient, UpstreamCache upstreamCache, SingleFlight singleFlight,
+                           AutocompleteIndex autocompleteIndex, RelationshipStore relationshipStore,
+                           UpstreamScheduler upstreamScheduler, UpstreamCircuitBreaker circuitBreaker, UpstreamHedging upstreamHedging,
+                           ResponseCache responseCache, SnapshotService snapshotService) {
+        this.upstreamClient = upstreamClient;
+        this.upstreamCache = upstreamCache;
+        this.singleFlight = singleFlight;
+        this.autocompleteIndex = autocompleteIndex;
+        this.relationshipStore = relationshipStore;
+        this.upstreamScheduler = upstreamScheduler;
+        this.circuitBreaker = circuitBreaker;
+        this.upstreamHedging = upstreamHedging;
+        this.responseCache = responseCache;
+        this.snapshotService = snapshotService;
+    }
+
+    @Operation(summary = "Статистика клиента Marvel", description = "Количество запросов, ошибок и задержки по маршрутам")
+    @GetMapping("/upstream")
+    private ResponseEntity<Map<String, Object>> getUpstreamStats() {
+        return ResponseEntity.ok(upstreamClient.getStats());
+    }
+
+    @Operation(summary = "Квота запросов к Marvel", description = "Остаток дневной квоты, глубина очереди и отброшенные запросы по приоритетам")
+    @GetMapping("/quota")
+    private ResponseEntity<Map<String, Object>> getQuotaStats() {
+        return ResponseEntity.ok(upstreamScheduler.getStats());
+    }
+
+    @Operation(summary = "Устойчивость обращений к Marvel", description = "Состояние предохранителя и число повторных (хеджированных) запросов")
+    @GetMapping("/resilience")
+    private ResponseEntity<Map<String, Object>> getResilienceStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("circuitBreaker", circuitBreaker.getStats());
+        stats.put("hedging", upstreamHedging.getStats());
+        return ResponseEntity.ok(stats);
+    }
+
+    @Operation(summary = "Статистика кэша Marvel", description = "Попадания, промахи и повторные проверки по ETag")
+    @GetMapping("/cache")
+    private ResponseEntity<Map<String, Object>> getCacheStats() {
+        return ResponseEntity.ok(upstreamCache.getStats());
+    }
+
+    @Operation(summary = "Снимок кэша Marvel", description = "Загрузка снимка кэша при старте и последняя запись его на диск")
+    @GetMapping("/snapshot")
+    private ResponseEntity<Map<String, Object>> getSnapshotStats() {
+        return ResponseEntity.ok(snapshotService.getStats());
+    }
+
+    @Operation(summary = "Статистика кэша ответов", description = "Готовые тела ответов: попадания, ответы 304 и сброс после изменений данных")
+    @GetMapping("/responses")
+    private ResponseEntity<Map<String, Object>> getResponseCacheStats() {
+        return ResponseEntity.ok(responseCache.getStats());
+    }
+
+    @Operation(summary = "Статистика объединения запросов", description = "Сколько одинаковых запросов к Marvel было объединено в один")
+    @GetMapping("/single-flight")
+    private ResponseEntity<Map<String, Object>> getSingleFlightStats() {
+        return ResponseEntity.ok(singleFlight.getStats());
+    }
+
+    @Operation(summary = "Статистика автодополнения", description = "Количество записей в индексах автодополнения")
+    @GetMapping("/autocomplete")
+    private ResponseEntity<Map<String, Object>> getAutocompleteStats() {
+        return ResponseEntity.ok(autocompleteIndex.getStats());
+    }
+
+    @Operation(summary = "Статистика графа связей", description = "Размер графа персонажей и комиксов в памяти и время его последней сборки")
+    @GetMapping("/relations")
+    private ResponseEntity<Map<String, Object>> getRelationStats() {
+        return ResponseEntity.ok(relationshipStore.getStats());
+    }
+
+}
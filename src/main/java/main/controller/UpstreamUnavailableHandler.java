@@ -0,0 +1,20 @@
+package main.controller;
+
+import main.service.UpstreamUnavailableException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+@RestControllerAdvice
+public class UpstreamUnavailableHandler {
+
+    @ExceptionHandler(UpstreamUnavailableException.class)
+    public ResponseEntity<Object> handleUnavailable(UpstreamUnavailableException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .body(null);
+    }
+
+}
@@ -1,15 +1,23 @@
 package main.entities;
 
+import com.fasterxml.jackson.annotation.JsonFilter;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import io.swagger.v3.oas.annotations.media.Schema;
 import lombok.Data;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.time.LocalDateTime;
 
 @Schema(description = "Персонаж")
 @Data
+@JsonFilter("fields")
 @Document(collection = "characters")
+@CompoundIndexes({
+        @CompoundIndex(name = "nameKey_id", def = "{'nameKey': 1, '_id': 1}"),
+        @CompoundIndex(name = "modified_id", def = "{'modified': 1, '_id': 1}")})
 public class Character {
 
     @Id
@@ -19,10 +27,13 @@ public class Character {
     @Schema(description = "The name of the character", example = "Captain Cross")
     private String name;
 
+    @JsonIgnore
+    private String nameKey;
+
     @Schema(description = "A short bio or description of the character", example = "Captain Cross is an officer in the Chicago Police Department")
     private String description;
 
-    @Schema(description = "The date the resource was most recently modified", example = "1969-12-31T19:00:00-0500")
+    @Schema(description = "The date the resource was most recently modified; empty when Marvel has no date for it", example = "2014-04-29T14:18:17")
     private LocalDateTime modified;
 
     @Schema(description = "The canonical URL identifier for this resource", example = "http://gateway.marvel.com/v1/public/characters/1011190")
@@ -31,4 +42,10 @@ public class Character {
     @Schema(description = "The representative image for this character", example = "http://i.annihil.us/u/prod/marvel/i/mg/b/40/image_not_available.jpg")
     private String thumbnail;
 
+    @Schema(description = "When the resource was last mirrored from the Marvel API; empty for locally saved resources", example = "2021-09-01T12:00:00")
+    private LocalDateTime fetchedAt;
+
+    @Schema(description = "Revision of the resource, incremented on every write; send it back with an update or delete to detect concurrent changes", example = "3")
+    private Long version;
+
 }
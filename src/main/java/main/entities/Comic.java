@@ -1,15 +1,25 @@
 package main.entities;
 
+import com.fasterxml.jackson.annotation.JsonFilter;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import io.swagger.v3.oas.annotations.media.Schema;
 import lombok.Data;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.time.LocalDateTime;
 
 @Schema(description = "Комикс")
 @Data
+@JsonFilter("fields")
 @Document(collection = "comics")
+@CompoundIndexes({
+        @CompoundIndex(name = "titleKey_id", def = "{'titleKey': 1, '_id': 1}"),
+        @CompoundIndex(name = "format_titleKey_id", def = "{'format': 1, 'titleKey': 1, '_id': 1}"),
+        @CompoundIndex(name = "format_modified_id", def = "{'format': 1, 'modified': 1, '_id': 1}"),
+        @CompoundIndex(name = "modified_id", def = "{'modified': 1, '_id': 1}")})
 public class Comic {
 
     @Id
@@ -19,17 +29,20 @@ public class Comic {
     @Schema(description = "The canonical title of the comic", example = "Official Handbook of the Marvel Universe (2004) #12 (SPIDER-MAN)")
     private String title;
 
+    @JsonIgnore
+    private String titleKey;
+
     @Schema(description = "The preferred description of the comic", example = "The spectacular sequel to last year's OFFICIAL HANDBOOK")
     private String description;
 
-    @Schema(description = "The date the resource was most recently modified", example = "-0001-11-30T00:00:00-0500")
+    @Schema(description = "The date the resource was most recently modified; empty when Marvel has no date for it", example = "2014-04-29T14:18:17")
     private LocalDateTime modified;
 
     @Schema(description = "The publication format of the comic e.g. comic, hardcover, trade paperback", example = "Comic")
     private String format;
 
     @Schema(description = "The number of story pages in the comic", example = "0")
-    private String pageCount;
+    private Integer pageCount;
 
     @Schema(description = "The canonical URL identifier for this resource", example = "http://gateway.marvel.com/v1/public/comics/1886")
     private String resourceURI;
@@ -37,7 +50,17 @@ public class Comic {
     @Schema(description = "A summary representation of the series to which this comic belongs", example = "Official Handbook of the Marvel Universe (2004)")
     private String series;
 
+    // Marvel ids of the characters listed on the comic; feeds the in-memory relationship graph
+    @JsonIgnore
+    private int[] characterIds;
+
     @Schema(description = "The representative image for this comic", example = "http://i.annihil.us/u/prod/marvel/i/mg/b/40/4bc64020a4ccc.jpg")
     private String thumbnail;
 
+    @Schema(description = "When the resource was last mirrored from the Marvel API; empty for locally saved resources", example = "2021-09-01T12:00:00")
+    private LocalDateTime fetchedAt;
+
+    @Schema(description = "Revision of the resource, incremented on every write; send it back with an update or delete to detect concurrent changes", example = "3")
+    private Long version;
+
 }
@@ -0,0 +1,33 @@
+package main.entities;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.Set;
+
+@Schema(description = "Контрольная точка загрузки каталога")
+@Data
+@Document(collection = "ingestion_checkpoints")
+public class IngestionCheckpoint {
+
+    @Id
+    @Schema(description = "The ingested catalog", example = "characters")
+    private String id;
+
+    @Schema(description = "Start time of the last run that covered the whole catalog, used as the next modifiedSince", example = "2021-09-01T12:00:00")
+    private LocalDateTime lastCompletedAt;
+
+    @Schema(description = "Start time of the run in progress or interrupted", example = "2021-09-02T12:00:00")
+    private LocalDateTime runStartedAt;
+
+    @Schema(description = "modifiedSince filter of the run in progress or interrupted", example = "2021-09-01T12:00:00")
+    private LocalDateTime runModifiedSince;
+
+    @Schema(description = "Offsets of the pages already stored by the run in progress or interrupted")
+    private Set<Integer> completedOffsets = new HashSet<>();
+
+}
@@ -0,0 +1,20 @@
+package main.entities;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+@Schema(description = "Расход дневной квоты запросов к Marvel")
+@Data
+@Document(collection = "upstream_quota")
+public class UpstreamQuota {
+
+    @Id
+    @Schema(description = "The quota day", example = "2021-09-01")
+    private String id;
+
+    @Schema(description = "Upstream calls made on that day by every instance sharing the database", example = "1250")
+    private long calls;
+
+}
@@ -5,5 +5,5 @@ import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.stereotype.Repository;
 
 @Repository
-public interface CharactersRepository extends MongoRepository<Character, String> {
+public interface CharactersRepository extends MongoRepository<Character, String>, CharactersRepositoryCustom {
 }
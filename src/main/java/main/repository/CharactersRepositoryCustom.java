@@ -0,0 +1,29 @@
+package main.repository;
+
+import main.entities.Character;
+import org.springframework.data.util.CloseableIterator;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+public interface CharactersRepositoryCustom {
+
+    int upsertMirrored(List<Character> characters);
+
+    boolean replaceThumbnail(String id, String expected, String thumbnail);
+
+    // Fields in keep are only overwritten, never removed, when the entity leaves them null
+    Character saveVersioned(Character character, Long expectedVersion, boolean upsert, Set<String> keep);
+
+    boolean deleteVersioned(String id, Long expectedVersion);
+
+    KeysetPage<Character> findLocal(Collection<String> ids, String name, String nameStartsWith, String orderBy, int limit, int offset, String cursor, Collection<String> fields);
+
+    // Whole filtered listing in sort order, fetched from the server batchSize documents at a time; null for an unknown sort
+    CloseableIterator<Character> streamLocal(String name, String nameStartsWith, String orderBy, int batchSize, Collection<String> fields);
+
+    // Fills in the search key of documents stored before it existed; returns how many were updated
+    long backfillSearchKeys(int batchSize);
+
+}
@@ -0,0 +1,172 @@
+package main.repository;
+
+import com.mongodb.bulk.BulkWriteResult;
+import main.entities.Character;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.util.CloseableIterator;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+public class CharactersRepositoryImpl implements CharactersRepositoryCustom {
+
+    private static final Map<String, String> SORT_FIELDS = Map.of("name", "nameKey", "modified", "modified");
+    private static final Map<String, Function<Character, Object>> SORT_VALUES = Map.of("nameKey", Character::getNameKey, "modified", Character::getModified);
+    private static final Map<String, String> SORT_INDEXES = Map.of("nameKey", "nameKey_id", "modified", "modified_id");
+
+    private final MongoTemplate mongoTemplate;
+
+    @Autowired
+    public CharactersRepositoryImpl(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public int upsertMirrored(List<Character> characters) {
+        if (characters.isEmpty()) {
+            return 0;
+        }
+        BulkOperations operations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Character.class);
+        for (Character character : characters) {
+            // Locally saved documents have no fetchedAt; they don't match, the upsert collides on _id and is skipped
+            Query query = new Query(Criteria.where("_id").is(character.getId()).and("fetchedAt").ne(null));
+            operations.upsert(query, MongoUpdates.fromEntity(mongoTemplate.getConverter(), character));
+        }
+        try {
+            BulkWriteResult result = operations.execute();
+            return result.getMatchedCount() + result.getUpserts().size();
+        } catch (BulkOperationException e) {
+            return e.getResult().getMatchedCount() + e.getResult().getUpserts().size();
+        }
+    }
+
+    @Override
+    public boolean replaceThumbnail(String id, String expected, String thumbnail) {
+        Query query = new Query(Criteria.where("_id").is(id).and("thumbnail").is(expected));
+        return mongoTemplate.updateFirst(query, Update.update("thumbnail", thumbnail), Character.class).getModifiedCount() > 0;
+    }
+
+    @Override
+    public Character saveVersioned(Character character, Long expectedVersion, boolean upsert, Set<String> keep) {
+        Criteria criteria = Criteria.where("_id").is(character.getId());
+        if (expectedVersion != null) {
+            criteria = criteria.and(MongoUpdates.VERSION).is(expectedVersion);
+        }
+        Character saved = mongoTemplate.findAndModify(new Query(criteria), MongoUpdates.fromEntity(mongoTemplate.getConverter(), character, keep),
+                FindAndModifyOptions.options().upsert(upsert && expectedVersion == null).returnNew(true), Character.class);
+        if (saved == null && expectedVersion != null) {
+            checkConflict(character.getId(), expectedVersion);
+        }
+        return saved;
+    }
+
+    @Override
+    public boolean deleteVersioned(String id, Long expectedVersion) {
+        Criteria criteria = Criteria.where("_id").is(id);
+        if (expectedVersion != null) {
+            criteria = criteria.and(MongoUpdates.VERSION).is(expectedVersion);
+        }
+        boolean deleted = mongoTemplate.remove(new Query(criteria), Character.class).getDeletedCount() > 0;
+        if (!deleted && expectedVersion != null) {
+            checkConflict(id, expectedVersion);
+        }
+        return deleted;
+    }
+
+    @Override
+    public KeysetPage<Character> findLocal(Collection<String> ids, String name, String nameStartsWith, String orderBy, int limit, int offset, String cursor, Collection<String> fields) {
+        Sort sort = MongoQueries.sort(orderBy, SORT_FIELDS, "name");
+        if (sort == null || limit < 1 || limit > MongoQueries.MAX_LIMIT || offset < 0) {
+            return null;
+        }
+        Query query = query(ids, name, nameStartsWith, sort, cursor);
+        if (query == null) {
+            return null;
+        }
+        if (cursor == null) {
+            query.skip(offset);
+        }
+        MongoQueries.project(query, fields, sort);
+        List<Character> characters = mongoTemplate.find(query.limit(limit), Character.class);
+        if (characters.size() < limit) {
+            return new KeysetPage<>(characters, null);
+        }
+        Character last = characters.get(characters.size() - 1);
+        String sortField = sort.iterator().next().getProperty();
+        return new KeysetPage<>(characters, MongoQueries.cursor(sort, SORT_VALUES.get(sortField).apply(last), last.getId()));
+    }
+
+    @Override
+    public CloseableIterator<Character> streamLocal(String name, String nameStartsWith, String orderBy, int batchSize, Collection<String> fields) {
+        Sort sort = MongoQueries.sort(orderBy, SORT_FIELDS, "name");
+        if (sort == null) {
+            return null;
+        }
+        Query query = query(null, name, nameStartsWith, sort, null);
+        if (query == null) {
+            return null;
+        }
+        MongoQueries.project(query, fields, sort);
+        return mongoTemplate.stream(query.cursorBatchSize(batchSize), Character.class);
+    }
+
+    @Override
+    public long backfillSearchKeys(int batchSize) {
+        return MongoUpdates.backfillSearchKeys(mongoTemplate, mongoTemplate.getCollectionName(Character.class), "name", "nameKey", batchSize);
+    }
+
+    /**
+     * Listing query hinted to the index whose order is the sort's, so no page is sorted in memory. Null for an
+     * invalid cursor or a name filter with another sort, which no index serves. An id list is left to the planner:
+     * it holds a relation's characters, where an _id lookup with a small sort can beat a filtered index scan.
+     */
+    static Query query(Collection<String> ids, String name, String nameStartsWith, Sort sort, String cursor) {
+        Criteria criteria = filter(ids, name, nameStartsWith);
+        String sortField = sort.iterator().next().getProperty();
+        if (ids == null && !sortField.equals("nameKey") && criteria.getCriteriaObject().containsKey("nameKey")) {
+            return null;
+        }
+        if (cursor != null) {
+            Criteria after = MongoQueries.after(sort, cursor);
+            if (after == null) {
+                return null;
+            }
+            criteria = new Criteria().andOperator(criteria, after);
+        }
+        Query query = new Query(criteria).with(sort);
+        return ids == null ? query.withHint(SORT_INDEXES.get(sortField)) : query;
+    }
+
+    private static Criteria filter(Collection<String> ids, String name, String nameStartsWith) {
+        Criteria criteria = new Criteria();
+        if (ids != null) {
+            criteria = criteria.and("_id").in(ids);
+        }
+        if (name != null) {
+            criteria = criteria.and("nameKey").is(MongoQueries.searchKey(name));
+        } else if (nameStartsWith != null) {
+            criteria = MongoQueries.startsWith(criteria, "nameKey", nameStartsWith);
+        }
+        return criteria;
+    }
+
+    private void checkConflict(String id, Long expectedVersion) {
+        // Only reached on the failure path: tells a stale version apart from a missing document
+        if (mongoTemplate.exists(new Query(Criteria.where("_id").is(id)), Character.class)) {
+            throw new OptimisticLockingFailureException("Character " + id + " is no longer at version " + expectedVersion);
+        }
+    }
+
+}
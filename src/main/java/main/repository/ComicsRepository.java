@@ -5,5 +5,5 @@ import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.stereotype.Repository;
 
 @Repository
-public interface ComicsRepository extends MongoRepository<Comic, String> {
+public interface ComicsRepository extends MongoRepository<Comic, String>, ComicsRepositoryCustom {
 }
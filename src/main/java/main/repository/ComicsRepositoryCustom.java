@@ -0,0 +1,29 @@
+package main.repository;
+
+import main.entities.Comic;
+import org.springframework.data.util.CloseableIterator;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+public interface ComicsRepositoryCustom {
+
+    int upsertMirrored(List<Comic> comics);
+
+    boolean replaceThumbnail(String id, String expected, String thumbnail);
+
+    // Fields in keep are only overwritten, never removed, when the entity leaves them null
+    Comic saveVersioned(Comic comic, Long expectedVersion, boolean upsert, Set<String> keep);
+
+    boolean deleteVersioned(String id, Long expectedVersion);
+
+    KeysetPage<Comic> findLocal(Collection<String> ids, String format, String title, String titleStartsWith, String orderBy, int limit, int offset, String cursor, Collection<String> fields);
+
+    // Whole filtered listing in sort order, fetched from the server batchSize documents at a time; null for an unknown sort
+    CloseableIterator<Comic> streamLocal(String format, String title, String titleStartsWith, String orderBy, int batchSize, Collection<String> fields);
+
+    // Fills in the search key of documents stored before it existed; returns how many were updated
+    long backfillSearchKeys(int batchSize);
+
+}
@@ -0,0 +1,186 @@
+package main.repository;
+
+import com.mongodb.bulk.BulkWriteResult;
+import main.entities.Comic;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.util.CloseableIterator;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+public class ComicsRepositoryImpl implements ComicsRepositoryCustom {
+
+    private static final Map<String, String> SORT_FIELDS = Map.of("title", "titleKey", "modified", "modified");
+    private static final Map<String, Function<Comic, Object>> SORT_VALUES = Map.of("titleKey", Comic::getTitleKey, "modified", Comic::getModified);
+    private static final Map<String, String> SORT_INDEXES = Map.of("titleKey", "titleKey_id", "modified", "modified_id");
+    private static final Map<String, String> FORMAT_SORT_INDEXES = Map.of("titleKey", "format_titleKey_id", "modified", "format_modified_id");
+
+    private final MongoTemplate mongoTemplate;
+
+    @Autowired
+    public ComicsRepositoryImpl(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public int upsertMirrored(List<Comic> comics) {
+        if (comics.isEmpty()) {
+            return 0;
+        }
+        BulkOperations operations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Comic.class);
+        for (Comic comic : comics) {
+            // Locally saved documents have no fetchedAt; they don't match, the upsert collides on _id and is skipped
+            Query query = new Query(Criteria.where("_id").is(comic.getId()).and("fetchedAt").ne(null));
+            operations.upsert(query, MongoUpdates.fromEntity(mongoTemplate.getConverter(), comic));
+        }
+        try {
+            BulkWriteResult result = operations.execute();
+            return result.getMatchedCount() + result.getUpserts().size();
+        } catch (BulkOperationException e) {
+            return e.getResult().getMatchedCount() + e.getResult().getUpserts().size();
+        }
+    }
+
+    @Override
+    public boolean replaceThumbnail(String id, String expected, String thumbnail) {
+        Query query = new Query(Criteria.where("_id").is(id).and("thumbnail").is(expected));
+        return mongoTemplate.updateFirst(query, Update.update("thumbnail", thumbnail), Comic.class).getModifiedCount() > 0;
+    }
+
+    @Override
+    public Comic saveVersioned(Comic comic, Long expectedVersion, boolean upsert, Set<String> keep) {
+        Criteria criteria = Criteria.where("_id").is(comic.getId());
+        if (expectedVersion != null) {
+            criteria = criteria.and(MongoUpdates.VERSION).is(expectedVersion);
+        }
+        Comic saved = mongoTemplate.findAndModify(new Query(criteria), MongoUpdates.fromEntity(mongoTemplate.getConverter(), comic, keep),
+                FindAndModifyOptions.options().upsert(upsert && expectedVersion == null).returnNew(true), Comic.class);
+        if (saved == null && expectedVersion != null) {
+            checkConflict(comic.getId(), expectedVersion);
+        }
+        return saved;
+    }
+
+    @Override
+    public boolean deleteVersioned(String id, Long expectedVersion) {
+        Criteria criteria = Criteria.where("_id").is(id);
+        if (expectedVersion != null) {
+            criteria = criteria.and(MongoUpdates.VERSION).is(expectedVersion);
+        }
+        boolean deleted = mongoTemplate.remove(new Query(criteria), Comic.class).getDeletedCount() > 0;
+        if (!deleted && expectedVersion != null) {
+            checkConflict(id, expectedVersion);
+        }
+        return deleted;
+    }
+
+    @Override
+    public KeysetPage<Comic> findLocal(Collection<String> ids, String format, String title, String titleStartsWith, String orderBy, int limit, int offset, String cursor, Collection<String> fields) {
+        Sort sort = MongoQueries.sort(orderBy, SORT_FIELDS, "title");
+        if (sort == null || limit < 1 || limit > MongoQueries.MAX_LIMIT || offset < 0) {
+            return null;
+        }
+        Query query = query(ids, format, title, titleStartsWith, sort, cursor);
+        if (query == null) {
+            return null;
+        }
+        if (cursor == null) {
+            query.skip(offset);
+        }
+        MongoQueries.project(query, fields, sort);
+        List<Comic> comics = mongoTemplate.find(query.limit(limit), Comic.class);
+        if (comics.size() < limit) {
+            return new KeysetPage<>(comics, null);
+        }
+        Comic last = comics.get(comics.size() - 1);
+        String sortField = sort.iterator().next().getProperty();
+        return new KeysetPage<>(comics, MongoQueries.cursor(sort, SORT_VALUES.get(sortField).apply(last), last.getId()));
+    }
+
+    @Override
+    public CloseableIterator<Comic> streamLocal(String format, String title, String titleStartsWith, String orderBy, int batchSize, Collection<String> fields) {
+        Sort sort = MongoQueries.sort(orderBy, SORT_FIELDS, "title");
+        if (sort == null) {
+            return null;
+        }
+        Query query = query(null, format, title, titleStartsWith, sort, null);
+        if (query == null) {
+            return null;
+        }
+        MongoQueries.project(query, fields, sort);
+        return mongoTemplate.stream(query.cursorBatchSize(batchSize), Comic.class);
+    }
+
+    @Override
+    public long backfillSearchKeys(int batchSize) {
+        return MongoUpdates.backfillSearchKeys(mongoTemplate, mongoTemplate.getCollectionName(Comic.class), "title", "titleKey", batchSize);
+    }
+
+    // Same contract as CharactersRepositoryImpl.query; a format filter moves the hint to the format-prefixed index
+    static Query query(Collection<String> ids, String format, String title, String titleStartsWith, Sort sort, String cursor) {
+        Criteria criteria = filter(ids, format, title, titleStartsWith);
+        String sortField = sort.iterator().next().getProperty();
+        if (ids == null && !sortField.equals("titleKey") && criteria.getCriteriaObject().containsKey("titleKey")) {
+            return null;
+        }
+        if (cursor != null) {
+            Criteria after = MongoQueries.after(sort, cursor);
+            if (after == null) {
+                return null;
+            }
+            criteria = new Criteria().andOperator(criteria, after);
+        }
+        Query query = new Query(criteria).with(sort);
+        if (ids != null) {
+            return query;
+        }
+        return query.withHint((format == null ? SORT_INDEXES : FORMAT_SORT_INDEXES).get(sortField));
+    }
+
+    private static Criteria filter(Collection<String> ids, String format, String title, String titleStartsWith) {
+        Criteria criteria = new Criteria();
+        if (ids != null) {
+            criteria = criteria.and("_id").in(ids);
+        }
+        if (format != null) {
+            // Marvel takes lower-case formats ("trade paperback") but returns them capitalized ("Trade Paperback")
+            criteria = criteria.and("format").in(format, capitalizeWords(format));
+        }
+        if (title != null) {
+            criteria = criteria.and("titleKey").is(MongoQueries.searchKey(title));
+        } else if (titleStartsWith != null) {
+            criteria = MongoQueries.startsWith(criteria, "titleKey", titleStartsWith);
+        }
+        return criteria;
+    }
+
+    private void checkConflict(String id, Long expectedVersion) {
+        // Only reached on the failure path: tells a stale version apart from a missing document
+        if (mongoTemplate.exists(new Query(Criteria.where("_id").is(id)), Comic.class)) {
+            throw new OptimisticLockingFailureException("Comic " + id + " is no longer at version " + expectedVersion);
+        }
+    }
+
+    private static String capitalizeWords(String value) {
+        char[] chars = value.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            if (i == 0 || chars[i - 1] == ' ') {
+                chars[i] = Character.toUpperCase(chars[i]);
+            }
+        }
+        return new String(chars);
+    }
+
+}
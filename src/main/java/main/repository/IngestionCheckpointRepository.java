@@ -0,0 +1,9 @@
+package main.repository;
+
+import main.entities.IngestionCheckpoint;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface IngestionCheckpointRepository extends MongoRepository<IngestionCheckpoint, String> {
+}
@@ -0,0 +1,34 @@
+package main.repository;
+
+import java.util.List;
+
+public class KeysetPage<T> {
+
+    private final List<T> items;
+    private final String nextCursor;
+    private final boolean stale;
+
+    public KeysetPage(List<T> items, String nextCursor) {
+        this(items, nextCursor, false);
+    }
+
+    public KeysetPage(List<T> items, String nextCursor, boolean stale) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+        this.stale = stale;
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    // True when the items are an expired upstream copy served because Marvel could not be asked in time
+    public boolean isStale() {
+        return stale;
+    }
+
+}
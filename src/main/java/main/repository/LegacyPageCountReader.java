@@ -0,0 +1,53 @@
+package main.repository;
+
+import main.entities.Comic;
+import org.bson.Document;
+import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
+import org.springframework.data.mongodb.core.mapping.event.AfterLoadEvent;
+import org.springframework.stereotype.Component;
+
+/**
+ * Comic.pageCount used to be a string, so older documents still hold "12", "null" or free text. The raw document
+ * is fixed up before it is mapped: a plain number becomes an int, anything else an unknown (absent) page count.
+ * Scoped to comics, so a string where another entity expects a number still fails loudly.
+ */
+@Component
+public class LegacyPageCountReader extends AbstractMongoEventListener<Comic> {
+
+    static final String FIELD = "pageCount";
+
+    @Override
+    public void onAfterLoad(AfterLoadEvent<Comic> event) {
+        Document document = event.getDocument();
+        if (document == null) {
+            return;
+        }
+        Object value = document.get(FIELD);
+        if (value instanceof String) {
+            Integer pageCount = parse((String) value);
+            if (pageCount == null) {
+                document.remove(FIELD);
+            } else {
+                document.put(FIELD, pageCount);
+            }
+        }
+    }
+
+    static Integer parse(String source) {
+        String value = source.trim();
+        int start = value.startsWith("-") || value.startsWith("+") ? 1 : 0;
+        if (value.length() == start || value.length() - start > 9) {
+            return null;
+        }
+        int result = 0;
+        for (int i = start; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return null;
+            }
+            result = result * 10 + (c - '0');
+        }
+        return value.charAt(0) == '-' ? -result : result;
+    }
+
+}
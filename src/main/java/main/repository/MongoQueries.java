@@ -0,0 +1,141 @@
+package main.repository;
+
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Field;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Map;
+
+public final class MongoQueries {
+
+    public static final int MAX_LIMIT = 100;
+
+    private MongoQueries() {
+    }
+
+    // Normalized form stored next to names and titles, so case-insensitive filters stay index range scans
+    public static String searchKey(String value) {
+        return value == null ? null : value.trim().toLowerCase(Locale.ROOT);
+    }
+
+    public static Criteria startsWith(Criteria criteria, String field, String prefix) {
+        String key = searchKey(prefix);
+        if (key.isEmpty()) {
+            return criteria;
+        }
+        char last = key.charAt(key.length() - 1);
+        if (last == Character.MAX_VALUE) {
+            return criteria.and(field).gte(key);
+        }
+        return criteria.and(field).gte(key).lt(key.substring(0, key.length() - 1) + (char) (last + 1));
+    }
+
+    /**
+     * Maps a single Marvel orderBy field (optionally prefixed with '-') onto an indexed field, with _id as the
+     * tie-breaker every sort index ends with. Returns null for fields or combinations the indexes can't serve.
+     */
+    public static Sort sort(String orderBy, Map<String, String> fields, String defaultField) {
+        String field = orderBy == null || orderBy.isBlank() ? defaultField : orderBy.trim();
+        Sort.Direction direction = Sort.Direction.ASC;
+        if (field.startsWith("-")) {
+            direction = Sort.Direction.DESC;
+            field = field.substring(1);
+        }
+        String indexed = fields.get(field);
+        if (indexed == null) {
+            return null;
+        }
+        return Sort.by(direction, indexed, "_id");
+    }
+
+    // Narrows the query to the selected fields plus _id and the sort key, which the next-page cursor is built from
+    public static void project(Query query, Collection<String> fields, Sort sort) {
+        if (fields == null) {
+            return;
+        }
+        Field projection = query.fields().include("_id");
+        for (String field : fields) {
+            if (!field.equals("id")) {
+                projection.include(field);
+            }
+        }
+        sort.forEach(order -> projection.include(order.getProperty()));
+    }
+
+    /**
+     * Opaque continuation token: the sort it was issued for plus the last row's sort value and id,
+     * so the next page is an index seek past that row instead of a skip.
+     */
+    public static String cursor(Sort sort, Object value, String id) {
+        Sort.Order order = sort.iterator().next();
+        String encodedValue;
+        if (value == null) {
+            encodedValue = "n";
+        } else if (value instanceof LocalDateTime) {
+            encodedValue = "t" + encode(value.toString());
+        } else {
+            encodedValue = "s" + encode(value.toString());
+        }
+        return encode(order.getProperty()) + "." + order.getDirection().name().charAt(0) + "." + encode(id) + "." + encodedValue;
+    }
+
+    // Rows strictly after the cursor in (field, _id) order; null when the cursor is malformed or was issued for another sort
+    public static Criteria after(Sort sort, String cursor) {
+        Sort.Order order = sort.iterator().next();
+        String[] parts = cursor.split("\\.", -1);
+        if (parts.length != 4 || parts[3].isEmpty()) {
+            return null;
+        }
+        String field;
+        String id;
+        Object value;
+        try {
+            field = decode(parts[0]);
+            id = decode(parts[2]);
+            char type = parts[3].charAt(0);
+            if (type == 'n') {
+                value = null;
+            } else if (type == 't') {
+                value = LocalDateTime.parse(decode(parts[3].substring(1)));
+            } else if (type == 's') {
+                value = decode(parts[3].substring(1));
+            } else {
+                return null;
+            }
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            return null;
+        }
+        if (!field.equals(order.getProperty()) || !parts[1].equals(String.valueOf(order.getDirection().name().charAt(0)))) {
+            return null;
+        }
+        // Mongo sorts missing and null values before everything else, so they sit at the start of an ascending scan
+        if (order.isAscending()) {
+            if (value == null) {
+                return new Criteria().orOperator(Criteria.where(field).is(null).and("_id").gt(id), Criteria.where(field).ne(null));
+            }
+            return Criteria.where(field).gte(value).orOperator(Criteria.where(field).gt(value), Criteria.where("_id").gt(id));
+        }
+        if (value == null) {
+            return Criteria.where(field).is(null).and("_id").lt(id);
+        }
+        return new Criteria().orOperator(
+                Criteria.where(field).lte(value).orOperator(Criteria.where(field).lt(value), Criteria.where("_id").lt(id)),
+                Criteria.where(field).is(null));
+    }
+
+    private static String encode(String value) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decode(String value) {
+        return new String(Base64.getUrlDecoder().decode(value), StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,91 @@
+package main.repository;
+
+import org.bson.Document;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentProperty;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.core.schema.JsonSchemaObject;
+
+import java.util.List;
+import java.util.Set;
+
+public final class MongoUpdates {
+
+    public static final String VERSION = "version";
+    // Filled in from Marvel's relationship lists, never by a client request body
+    private static final Set<String> SERVER_OWNED = Set.of("characterIds");
+    private static final Set<String> SERVER_OWNED_AND_THUMBNAIL = Set.of("characterIds", "thumbnail");
+
+    private MongoUpdates() {
+    }
+
+    /**
+     * Fields a client write must not remove: the relations always, the thumbnail only when the request left it out
+     * (an empty one clears it). fetchedAt is never kept, so a local edit always takes the document off the mirror.
+     */
+    public static Set<String> keptOnClientWrite(String requestThumbnail) {
+        return requestThumbnail == null ? SERVER_OWNED_AND_THUMBNAIL : SERVER_OWNED;
+    }
+
+    /**
+     * Builds an update that overwrites every mapped field of the entity, removes the ones it leaves null
+     * and bumps the version, so a whole-document write can run as a single findAndModify or upsert.
+     */
+    public static Update fromEntity(MongoConverter converter, Object entity) {
+        return fromEntity(converter, entity, Set.of());
+    }
+
+    /**
+     * Same as {@link #fromEntity(MongoConverter, Object)}, except that the given fields are only set, never removed:
+     * a null there means "not supplied" and leaves the stored value alone.
+     */
+    public static Update fromEntity(MongoConverter converter, Object entity, Set<String> keep) {
+        Document document = new Document();
+        converter.write(entity, document);
+        MongoPersistentEntity<?> persistentEntity = converter.getMappingContext().getRequiredPersistentEntity(entity.getClass());
+        Update update = new Update();
+        for (MongoPersistentProperty property : persistentEntity) {
+            String field = property.getFieldName();
+            if (property.isIdProperty() || field.equals(VERSION)) {
+                continue;
+            }
+            if (document.containsKey(field)) {
+                update.set(field, document.get(field));
+            } else if (!keep.contains(field)) {
+                update.unset(field);
+            }
+        }
+        return update.inc(VERSION, 1);
+    }
+
+    /**
+     * Derives keyField from field with {@link MongoQueries#searchKey} wherever it is missing, batchSize documents
+     * at a time. The lookup is a null range on keyField's own index, so it costs next to nothing once every
+     * document has its key; a document that gained one in the meantime is left alone.
+     */
+    public static long backfillSearchKeys(MongoTemplate mongoTemplate, String collection, String field, String keyField, int batchSize) {
+        Query missing = new Query(Criteria.where(keyField).exists(false).and(field).type(JsonSchemaObject.Type.STRING)).limit(batchSize);
+        missing.fields().include(field);
+        long updated = 0;
+        List<Document> documents;
+        do {
+            documents = mongoTemplate.find(missing, Document.class, collection);
+            if (documents.isEmpty()) {
+                break;
+            }
+            BulkOperations operations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, collection);
+            for (Document document : documents) {
+                Query query = new Query(Criteria.where("_id").is(document.get("_id")).and(keyField).exists(false));
+                operations.updateOne(query, Update.update(keyField, MongoQueries.searchKey(document.getString(field))));
+            }
+            updated += operations.execute().getModifiedCount();
+        } while (documents.size() == batchSize);
+        return updated;
+    }
+
+}
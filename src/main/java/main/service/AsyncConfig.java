@@ -0,0 +1,72 @@
+package main.service;
+
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.Map;
+
+@Configuration
+@EnableAsync
+@EnableScheduling
+public class AsyncConfig {
+
+    @Bean
+    public ThreadPoolTaskExecutor mirrorExecutor(@Value("${mirror.threads:2}") int threads,
+                                                 @Value("${mirror.queue-capacity:1000}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("mirror-");
+        // Mirror writes are best effort: drop them rather than stall request threads when Mongo falls behind.
+        // A lookup that overflows runs on the submitting thread instead, since its caller waits for the answer
+        executor.setRejectedExecutionHandler((task, pool) -> {
+            if (task instanceof MirrorService.Read) {
+                task.run();
+            }
+        });
+        return executor;
+    }
+
+    @Bean
+    public ThreadPoolTaskExecutor ingestionExecutor(@Value("${ingestion.concurrency:4}") int concurrency) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(concurrency);
+        executor.setMaxPoolSize(concurrency);
+        executor.setThreadNamePrefix("ingestion-");
+        return executor;
+    }
+
+    @Bean
+    public ThreadPoolTaskExecutor ingestionCoordinator() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(2);
+        executor.setMaxPoolSize(2);
+        executor.setThreadNamePrefix("ingestion-run-");
+        return executor;
+    }
+
+    @Bean
+    public ThreadPoolTaskExecutor imageExecutor(@Value("${images.threads:2}") int threads) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setThreadNamePrefix("image-");
+        return executor;
+    }
+
+    // Pool size, active threads, queue depth and completed tasks of every executor above, keyed by bean name
+    @Bean
+    public MeterBinder executorMetrics(Map<String, ThreadPoolTaskExecutor> executors) {
+        return registry -> executors.forEach((name, executor) ->
+                new ExecutorServiceMetrics(executor.getThreadPoolExecutor(), name, Tags.empty()).bindTo(registry));
+    }
+
+}
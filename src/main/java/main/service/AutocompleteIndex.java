@@ -0,0 +1,100 @@
+package main.service;
+
+import main.api.Suggestion;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+@Service
+public class AutocompleteIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(AutocompleteIndex.class);
+
+    private final MongoTemplate mongoTemplate;
+    private final Map<String, Slot> slots = new LinkedHashMap<>();
+
+    @Value("${autocomplete.enabled:true}")
+    private boolean enabled;
+
+    @Autowired
+    public AutocompleteIndex(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+        slots.put(IngestionService.CHARACTERS, new Slot("name"));
+        slots.put(IngestionService.COMICS, new Slot("title"));
+    }
+
+    public List<Suggestion> suggest(String collection, String prefix, int limit) {
+        Slot slot = slots.get(collection);
+        return slot == null ? Collections.emptyList() : slot.index.lookup(prefix, limit);
+    }
+
+    @EventListener
+    public void onCollectionChanged(CollectionChangedEvent event) {
+        Slot slot = slots.get(event.getCollection());
+        if (slot != null) {
+            slot.changed.set(true);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        slots.forEach((collection, slot) -> stats.put(collection, slot.index.size()));
+        return stats;
+    }
+
+    // Rebuilds off the request path and swaps the new index in with a single volatile write
+    @Scheduled(fixedDelayString = "#{T(org.springframework.boot.convert.DurationStyle).detectAndParse('${autocomplete.refresh:30s}').toMillis()}")
+    public void refresh() {
+        if (!enabled) {
+            return;
+        }
+        slots.forEach((collection, slot) -> {
+            if (slot.changed.getAndSet(false)) {
+                try {
+                    slot.index = build(collection, slot.field);
+                } catch (Exception e) {
+                    slot.changed.set(true);
+                    log.warn("Could not rebuild the {} autocomplete index", collection, e);
+                }
+            }
+        });
+    }
+
+    private PrefixIndex build(String collection, String field) {
+        Query query = new Query();
+        query.fields().include(field);
+        PrefixIndex.Builder builder = new PrefixIndex.Builder();
+        try (CloseableIterator<Document> documents = mongoTemplate.stream(query, Document.class, collection)) {
+            while (documents.hasNext()) {
+                Document document = documents.next();
+                builder.add(String.valueOf(document.get("_id")), document.getString(field));
+            }
+        }
+        return builder.build();
+    }
+
+    private static class Slot {
+        private final String field;
+        private final AtomicBoolean changed = new AtomicBoolean(true);
+        private volatile PrefixIndex index = PrefixIndex.EMPTY;
+
+        private Slot(String field) {
+            this.field = field;
+        }
+    }
+
+}
@@ -0,0 +1,137 @@
+package main.service;
+
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.bulk.BulkWriteUpsert;
+import main.api.BulkItemResult;
+import main.api.BulkResponse;
+import main.repository.MongoUpdates;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+@Service
+public class BulkWriter {
+
+    private final MongoTemplate mongoTemplate;
+
+    @Value("${bulk.chunk-size:1000}")
+    private int chunkSize;
+
+    @Autowired
+    public BulkWriter(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    public <T> Session<T> open(Class<T> type) {
+        return new Session<>(type);
+    }
+
+    public class Session<T> {
+
+        private final Class<T> type;
+        private final long startNanos = System.nanoTime();
+        private final List<T> chunk = new ArrayList<>();
+        private final List<String> chunkIds = new ArrayList<>();
+        private final List<Set<String>> chunkKeeps = new ArrayList<>();
+        private final List<BulkItemResult> items = new ArrayList<>();
+        private int created;
+        private int updated;
+        private int failed;
+
+        private Session(Class<T> type) {
+            this.type = type;
+        }
+
+        // Fields in keep are only overwritten, never removed, when the entity leaves them null
+        public void add(String id, T entity, Set<String> keep) {
+            chunk.add(entity);
+            chunkIds.add(id);
+            chunkKeeps.add(keep);
+            if (chunk.size() >= chunkSize) {
+                flush();
+            }
+        }
+
+        public void fail(String id, String error) {
+            flush();
+            items.add(new BulkItemResult(items.size(), id, "failed", error));
+            failed++;
+        }
+
+        // Results of the chunks written so far, including after a failure that stopped the session early
+        public List<BulkItemResult> getItems() {
+            return Collections.unmodifiableList(items);
+        }
+
+        public BulkResponse finish() {
+            flush();
+            double seconds = Math.max(System.nanoTime() - startNanos, 1) / 1_000_000_000.0;
+            return new BulkResponse(created, updated, failed, (created + updated) / seconds, items);
+        }
+
+        private void flush() {
+            if (chunk.isEmpty()) {
+                return;
+            }
+            BulkOperations operations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, type);
+            for (int i = 0; i < chunk.size(); i++) {
+                operations.upsert(new Query(Criteria.where("_id").is(chunkIds.get(i))),
+                        MongoUpdates.fromEntity(mongoTemplate.getConverter(), chunk.get(i), chunkKeeps.get(i)));
+            }
+            BulkWriteResult result = null;
+            Map<Integer, String> errors = new HashMap<>();
+            try {
+                result = operations.execute();
+            } catch (BulkOperationException e) {
+                result = e.getResult();
+                for (BulkWriteError error : e.getErrors()) {
+                    errors.put(error.getIndex(), error.getMessage());
+                }
+            } catch (DataAccessException e) {
+                for (int i = 0; i < chunk.size(); i++) {
+                    errors.put(i, e.getMessage());
+                }
+            }
+            Set<Integer> upserted = new HashSet<>();
+            if (result != null) {
+                for (BulkWriteUpsert upsert : result.getUpserts()) {
+                    upserted.add(upsert.getIndex());
+                }
+            }
+            for (int i = 0; i < chunk.size(); i++) {
+                String status;
+                if (errors.containsKey(i)) {
+                    status = "failed";
+                    failed++;
+                } else if (upserted.contains(i)) {
+                    status = "created";
+                    created++;
+                } else {
+                    status = "updated";
+                    updated++;
+                }
+                items.add(new BulkItemResult(items.size(), chunkIds.get(i), status, errors.get(i)));
+            }
+            chunk.clear();
+            chunkIds.clear();
+            chunkKeeps.clear();
+        }
+
+    }
+
+}
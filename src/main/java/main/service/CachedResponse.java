@@ -0,0 +1,75 @@
+package main.service;
+
+import java.util.Map;
+
+/**
+ * Serialized body of a successful GET with the headers needed to replay it. Each entry records what it was
+ * built from (one document, a whole collection, or both collections for relationship lists) and the generation
+ * of that source when rendering started.
+ */
+public class CachedResponse {
+
+    private final byte[] body;
+    private final byte[] gzipBody;
+    private final String etag;
+    private final Map<String, String> headers;
+    private final String collection;
+    private final String id;
+    private final boolean relation;
+    private final long generation;
+
+    public CachedResponse(byte[] body, byte[] gzipBody, String etag, Map<String, String> headers,
+                          String collection, String id, boolean relation, long generation) {
+        this.body = body;
+        this.gzipBody = gzipBody;
+        this.etag = etag;
+        this.headers = headers;
+        this.collection = collection;
+        this.id = id;
+        this.relation = relation;
+        this.generation = generation;
+    }
+
+    public byte[] getBody() {
+        return body;
+    }
+
+    // Null when the body is too small for compression to pay off
+    public byte[] getGzipBody() {
+        return gzipBody;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    // A different encoding is a different representation, so it needs its own strong validator
+    public String getGzipEtag() {
+        return etag.substring(0, etag.length() - 1) + "-gzip\"";
+    }
+
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    public int getWeight() {
+        return body.length + (gzipBody == null ? 0 : gzipBody.length);
+    }
+
+    String getCollection() {
+        return collection;
+    }
+
+    String getId() {
+        return id;
+    }
+
+    boolean isRelation() {
+        return relation;
+    }
+
+    long getGeneration() {
+        return generation;
+    }
+
+}
@@ -1,15 +1,41 @@
 package main.service;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import main.api.BatchItem;
+import main.api.BulkItemResult;
+import main.api.BulkResponse;
 import main.api.CharacterRequest;
+import main.api.Neighbour;
+import main.api.Suggestion;
 import main.entities.Character;
 import main.entities.Comic;
 import main.repository.CharactersRepository;
-import org.json.JSONArray;
+import main.repository.ComicsRepository;
+import main.repository.KeysetPage;
+import main.repository.MongoUpdates;
+import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.util.CloseableIterator;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Collectors;
 
 @Service
 public class CharacterService {
@@ -17,66 +43,308 @@ public class CharacterService {
     private final MarvelUtils marvelUtils;
     private final EntityMapper entityMapper;
     private final CharactersRepository charactersRepository;
+    private final MirrorService mirrorService;
+    private final ImageStore imageStore;
+    private final BulkWriter bulkWriter;
+    private final ObjectMapper objectMapper;
+    private final AutocompleteIndex autocompleteIndex;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ComicsRepository comicsRepository;
+    private final RelationshipStore relationshipStore;
+
+    @Value("${batch.parallelism:8}")
+    private int batchParallelism;
+    @Value("${batch.max-ids:100}")
+    private int batchMaxIds;
+    @Value("${query.source:upstream}")
+    private String defaultSource;
+    @Value("${autocomplete.max-limit:50}")
+    private int autocompleteMaxLimit;
+    @Value("${relations.max-neighbours:50}")
+    private int maxNeighbours;
+    @Value("${export.batch-size:1000}")
+    private int exportBatchSize;
 
     @Autowired
-    public CharacterService(MarvelUtils marvelUtils, EntityMapper entityMapper, CharactersRepository charactersRepository) {
+    public CharacterService(MarvelUtils marvelUtils, EntityMapper entityMapper, CharactersRepository charactersRepository, MirrorService mirrorService,
+                            ImageStore imageStore, BulkWriter bulkWriter, ObjectMapper objectMapper,
+                            AutocompleteIndex autocompleteIndex, ApplicationEventPublisher eventPublisher,
+                            ComicsRepository comicsRepository, RelationshipStore relationshipStore) {
         this.marvelUtils = marvelUtils;
         this.entityMapper = entityMapper;
         this.charactersRepository = charactersRepository;
+        this.mirrorService = mirrorService;
+        this.imageStore = imageStore;
+        this.bulkWriter = bulkWriter;
+        this.objectMapper = objectMapper;
+        this.autocompleteIndex = autocompleteIndex;
+        this.eventPublisher = eventPublisher;
+        this.comicsRepository = comicsRepository;
+        this.relationshipStore = relationshipStore;
+    }
+
+    public CompletableFuture<KeysetPage<Character>> getCharacters(String source, String name, String nameStartsWith, String orderBy, int limit, int offset, String cursor, String fieldList) {
+        FieldSet fields = FieldSet.characters(fieldList);
+        if (fieldList != null && fields == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        // A cursor only exists for local listings, so it selects local mode on its own
+        if (isLocal(source) || cursor != null) {
+            return CompletableFuture.completedFuture(charactersRepository.findLocal(null, name, nameStartsWith, orderBy, limit, offset, cursor, names(fields)));
+        }
+        UpstreamQuery query = UpstreamQuery.characters()
+                .param(UpstreamQuery.Param.NAME, name)
+                .param(UpstreamQuery.Param.NAME_STARTS_WITH, nameStartsWith)
+                .page(orderBy, limit, offset);
+        return marvelUtils.getCharactersPage(query, fields, UpstreamPriority.INTERACTIVE)
+                .thenApply(result -> result == null ? null : new KeysetPage<>(result.getResults(), null, result.isStale()));
+    }
+
+    public CompletableFuture<Fetched<Character>> getCharacter(String characterId) {
+        if (!mirrorService.isEnabled()) {
+            return fetchCharacter(characterId, null, UpstreamPriority.INTERACTIVE);
+        }
+        return mirrorService.read(() -> charactersRepository.findById(characterId).orElse(null)).thenCompose(local -> {
+            if (local != null && mirrorService.isFresh(local.getFetchedAt())) {
+                return CompletableFuture.completedFuture(new Fetched<>(local, false));
+            }
+            if (local != null && mirrorService.isRevalidatable(local.getFetchedAt())) {
+                // Answer with the expired mirror copy; the refresh rewrites it for the next reader
+                fetchCharacter(characterId, local, UpstreamPriority.PREFETCH);
+                return CompletableFuture.completedFuture(new Fetched<>(local, true));
+            }
+            return fetchCharacter(characterId, local, UpstreamPriority.INTERACTIVE);
+        });
+    }
+
+    public CompletableFuture<List<BatchItem<Character>>> getCharactersByIds(List<String> ids) {
+        if (ids.size() > batchMaxIds) {
+            return CompletableFuture.completedFuture(null);
+        }
+        Set<String> unique = new LinkedHashSet<>(ids);
+        CompletableFuture<Iterable<Character>> mirrored = mirrorService.isEnabled()
+                ? mirrorService.read(() -> charactersRepository.findAllById(unique))
+                : CompletableFuture.completedFuture(Collections.emptyList());
+        return mirrored.thenCompose(local -> {
+            Map<String, Character> found = new HashMap<>();
+            Map<String, Character> stale = new HashMap<>();
+            for (Character character : local) {
+                if (mirrorService.isFresh(character.getFetchedAt())) {
+                    found.put(character.getId(), character);
+                } else {
+                    stale.put(character.getId(), character);
+                }
+            }
+            List<String> missing = unique.stream().filter(id -> !found.containsKey(id)).collect(Collectors.toList());
+            return FanOut.run(missing, batchParallelism, id -> fetchCharacter(id, stale.get(id), UpstreamPriority.INTERACTIVE))
+                    .thenApply(fetched -> items(ids, found, fetched));
+        });
+    }
+
+    private static List<BatchItem<Character>> items(List<String> ids, Map<String, Character> found, Map<String, Fetched<Character>> fetched) {
+        List<BatchItem<Character>> items = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            Fetched<Character> result = fetched.get(id);
+            Character character = result == null ? found.get(id) : result.getValue();
+            items.add(new BatchItem<>(id, character != null, result != null && result.isStale(), character));
+        }
+        return items;
     }
 
-    public List<Character> getCharacters(String name, String nameStartsWith, String orderBy, int limit, int offset) {
-        Map<String, String> param = marvelUtils.createMap(name, nameStartsWith, orderBy, limit, offset);
-        String request = marvelUtils.buildQueryCharacters();
-        JSONArray results = marvelUtils.getResultWithParam(request, param);
-        return marvelUtils.getCharactersFromResult(results);
+    public CompletableFuture<KeysetPage<Comic>> getCharacterComics(String source, String characterId, String format, String title, String titleStartsWith, String orderBy, int limit, int offset, String fieldList) {
+        FieldSet fields = FieldSet.comics(fieldList);
+        if (fieldList != null && fields == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        if (isLocal(source)) {
+            int[] comicIds = relationshipStore.getGraph().comicsOf(RelationGraph.parseId(characterId));
+            List<Comic> comics = findComics(comicIds, format, title, titleStartsWith, orderBy, limit, offset, fields);
+            return CompletableFuture.completedFuture(comics == null ? null : new KeysetPage<>(comics, null));
+        }
+        UpstreamQuery query = UpstreamQuery.characterComics(characterId)
+                .param(UpstreamQuery.Param.FORMAT, format)
+                .param(UpstreamQuery.Param.TITLE, title)
+                .param(UpstreamQuery.Param.TITLE_STARTS_WITH, titleStartsWith)
+                .page(orderBy, limit, offset);
+        return marvelUtils.getComicsPage(query, fields, UpstreamPriority.INTERACTIVE)
+                .thenApply(result -> result == null ? null : new KeysetPage<>(result.getResults(), null, result.isStale()));
     }
 
-    public Character getCharacter(String characterId) {
-        String request = marvelUtils.buildQueryCharacters(characterId);
-        JSONArray results = marvelUtils.getResult(request);
-        if (results == null) {
+    public List<Comic> getCoAppearances(String characterId, String otherId, String orderBy, int limit, int offset, String fieldList) {
+        FieldSet fields = FieldSet.comics(fieldList);
+        if (fieldList != null && fields == null) {
             return null;
         }
-        return entityMapper.mapperCharacter(results, 0);
+        int[] comicIds = relationshipStore.getGraph().coAppearances(RelationGraph.parseId(characterId), RelationGraph.parseId(otherId));
+        return findComics(comicIds, null, null, null, orderBy, limit, offset, fields);
     }
 
-    public List<Comic> getCharacterComics(String characterId, String format, String title, String titleStartsWith, String orderBy, int limit, int offset) {
-        Map<String, String> param = marvelUtils.createMap(format, title, titleStartsWith, orderBy, limit, offset);
-        String request = marvelUtils.buildQueryCharactersByComics(characterId);
-        JSONArray results = marvelUtils.getResultWithParam(request, param);
-        return marvelUtils.getComicsFromResult(results);
+    public List<Neighbour> getNeighbours(String characterId, int limit) {
+        if (limit < 1 || limit > maxNeighbours) {
+            return null;
+        }
+        int[][] top = relationshipStore.getGraph().topNeighbours(RelationGraph.parseId(characterId), limit);
+        if (top.length == 0) {
+            return Collections.emptyList();
+        }
+        List<String> ids = new ArrayList<>(top.length);
+        for (int[] neighbour : top) {
+            ids.add(String.valueOf(neighbour[0]));
+        }
+        Map<String, String> names = new HashMap<>();
+        for (Character character : charactersRepository.findAllById(ids)) {
+            names.put(character.getId(), character.getName());
+        }
+        List<Neighbour> neighbours = new ArrayList<>(top.length);
+        for (int i = 0; i < top.length; i++) {
+            neighbours.add(new Neighbour(ids.get(i), names.get(ids.get(i)), top[i][1]));
+        }
+        return neighbours;
     }
 
     public Character addCharacter(CharacterRequest request) {
         Character character = new Character();
         entityMapper.toCharacter(character, request);
-        return writeThenGet(character, request);
+        if (character.getId() == null) {
+            character.setId(new ObjectId().toHexString());
+        }
+        return write(character, request, true);
     }
 
     public Character updateCharacter(String characterId, CharacterRequest request) {
-        Character character = charactersRepository.findById(characterId).orElse(null);
-        if (character == null) {
+        Character character = new Character();
+        entityMapper.toCharacter(character, request);
+        character.setId(characterId);
+        return write(character, request, false);
+    }
+
+    public BulkResponse bulkSaveCharacters(InputStream body) throws IOException {
+        BulkWriter.Session<Character> session = bulkWriter.open(Character.class);
+        Map<String, String> thumbnails = new HashMap<>();
+        try {
+            try (MappingIterator<CharacterRequest> requests = objectMapper.readerFor(CharacterRequest.class).readValues(body)) {
+                while (requests.hasNextValue()) {
+                    CharacterRequest request = requests.nextValue();
+                    Character character = new Character();
+                    entityMapper.toCharacter(character, request);
+                    if (character.getId() == null) {
+                        character.setId(new ObjectId().toHexString());
+                    }
+                    String thumbnail = request.getThumbnail();
+                    if (thumbnail != null && !thumbnail.isEmpty()) {
+                        character.setThumbnail(thumbnail);
+                        thumbnails.put(character.getId(), thumbnail);
+                    }
+                    session.add(character.getId(), character, MongoUpdates.keptOnClientWrite(request.getThumbnail()));
+                }
+            } catch (JsonProcessingException e) {
+                session.fail(null, e.getOriginalMessage());
+            }
+            return session.finish();
+        } finally {
+            // Runs on a dropped request body too, so the chunks already written are never left unannounced
+            written(session.getItems(), thumbnails);
+        }
+    }
+
+    // Null for an unknown sort or field; otherwise an open cursor over the local catalog that the caller writes out
+    public NdjsonExport<Character> exportCharacters(String name, String nameStartsWith, String orderBy, String fieldList) {
+        FieldSet fields = FieldSet.characters(fieldList);
+        if (fieldList != null && fields == null) {
             return null;
         }
-        entityMapper.toCharacter(character, request);
-        return writeThenGet(character, request);
+        CloseableIterator<Character> cursor = charactersRepository.streamLocal(name, nameStartsWith, orderBy, exportBatchSize, names(fields));
+        return cursor == null ? null : new NdjsonExport<>(cursor, objectMapper, fields);
+    }
+
+    public boolean deleteCharacter(String characterId, Long version) {
+        boolean deleted = charactersRepository.deleteVersioned(characterId, version);
+        if (deleted) {
+            eventPublisher.publishEvent(new CollectionChangedEvent(IngestionService.CHARACTERS, List.of(characterId)));
+        }
+        return deleted;
+    }
+
+    public List<Suggestion> autocompleteCharacters(String prefix, int limit) {
+        if (prefix == null || prefix.isBlank() || limit < 1 || limit > autocompleteMaxLimit) {
+            return null;
+        }
+        return autocompleteIndex.suggest(IngestionService.CHARACTERS, prefix, limit);
+    }
+
+    private static Set<String> names(FieldSet fields) {
+        return fields == null ? null : fields.getNames();
+    }
+
+    private boolean isLocal(String source) {
+        return "local".equalsIgnoreCase(source == null ? defaultSource : source);
     }
 
-    public boolean deleteCharacter(String characterId) {
-        Character character = charactersRepository.findById(characterId).orElse(null);
-        if (character == null) {
-            return false;
+    // Edges come from the in-memory graph; Mongo only filters, sorts and pages the related documents by _id
+    private List<Comic> findComics(int[] comicIds, String format, String title, String titleStartsWith, String orderBy, int limit, int offset, FieldSet fields) {
+        if (comicIds.length == 0) {
+            return Collections.emptyList();
+        }
+        List<String> ids = Arrays.stream(comicIds).mapToObj(String::valueOf).collect(Collectors.toList());
+        KeysetPage<Comic> page = comicsRepository.findLocal(ids, format, title, titleStartsWith, orderBy, limit, offset, null, names(fields));
+        return page == null ? null : page.getItems();
+    }
+
+    private CompletableFuture<Fetched<Character>> fetchCharacter(String characterId, Character stale, UpstreamPriority priority) {
+        return marvelUtils.getCharactersPage(UpstreamQuery.characters(characterId), priority).handle((result, error) -> {
+            if (error != null) {
+                // Marvel unavailable: the expired mirror copy stands in, otherwise the error reaches the caller
+                if (stale != null) {
+                    return new Fetched<>(stale, true);
+                }
+                throw error instanceof CompletionException ? (CompletionException) error : new CompletionException(error);
+            }
+            if (result == null || result.getResults().isEmpty()) {
+                return stale == null ? null : new Fetched<>(stale, true);
+            }
+            Character character = result.getResults().get(0);
+            if (mirrorService.isEnabled() && (stale == null || character.getFetchedAt().isAfter(stale.getFetchedAt()))) {
+                mirrorService.saveCharacter(character);
+            }
+            return new Fetched<>(character, result.isStale());
+        });
+    }
+
+    private Character write(Character character, CharacterRequest request, boolean upsert) {
+        String thumbnail = request.getThumbnail();
+        character.setThumbnail(thumbnail == null || thumbnail.isEmpty() ? null : thumbnail);
+        // One findAndModify: the write, the version check and the read-back of the stored document
+        Character saved = charactersRepository.saveVersioned(character, request.getVersion(), upsert,
+                MongoUpdates.keptOnClientWrite(thumbnail));
+        if (saved != null) {
+            eventPublisher.publishEvent(new CollectionChangedEvent(IngestionService.CHARACTERS, List.of(saved.getId())));
+        }
+        if (saved != null && thumbnail != null && !thumbnail.isEmpty()) {
+            storeThumbnail(saved.getId(), thumbnail);
+        }
+        return saved;
+    }
+
+    private void written(List<BulkItemResult> items, Map<String, String> thumbnails) {
+        if (items.isEmpty()) {
+            return;
+        }
+        eventPublisher.publishEvent(new CollectionChangedEvent(IngestionService.CHARACTERS,
+                items.stream().map(BulkItemResult::getId).filter(Objects::nonNull).collect(Collectors.toList())));
+        for (BulkItemResult item : items) {
+            String thumbnail = thumbnails.get(item.getId());
+            if (thumbnail != null && !item.getStatus().equals("failed")) {
+                storeThumbnail(item.getId(), thumbnail);
+            }
         }
-        charactersRepository.deleteById(character.getId());
-        return true;
     }
 
-    private Character writeThenGet(Character character, CharacterRequest request) {
-        character.setThumbnail(marvelUtils.uploadImage(request.getThumbnail()));
-        charactersRepository.save(character);
-        String id = character.getId();
-        return charactersRepository.findById(id).orElse(null);
+    private void storeThumbnail(String id, String thumbnail) {
+        imageStore.store(thumbnail).thenAccept(path -> {
+            if (path != null) {
+                charactersRepository.replaceThumbnail(id, thumbnail, path);
+            }
+        });
     }
 
 }
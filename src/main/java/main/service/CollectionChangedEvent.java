@@ -0,0 +1,48 @@
+package main.service;
+
+import java.util.Collection;
+import java.util.Set;
+
+// Published after writes to a local collection so in-memory indexes built from it know to rebuild
+public class CollectionChangedEvent {
+
+    private final String collection;
+    // Documents written, when the writer knows them; null means any document may have changed
+    private final Set<String> ids;
+    // The write only copied what the Marvel API just returned, so nothing served from upstream changed
+    private final boolean mirrored;
+
+    public CollectionChangedEvent(String collection) {
+        this.collection = collection;
+        this.ids = null;
+        this.mirrored = false;
+    }
+
+    public CollectionChangedEvent(String collection, Collection<String> ids) {
+        this(collection, ids, false);
+    }
+
+    public CollectionChangedEvent(String collection, Collection<String> ids, boolean mirrored) {
+        this.collection = collection;
+        this.ids = Set.copyOf(ids);
+        this.mirrored = mirrored;
+    }
+
+    public String getCollection() {
+        return collection;
+    }
+
+    // Null when any document may have changed
+    public Set<String> getIds() {
+        return ids;
+    }
+
+    public boolean isMirrored() {
+        return mirrored;
+    }
+
+    public boolean affects(String id) {
+        return ids == null || ids.contains(id);
+    }
+
+}
@@ -1,15 +1,40 @@
 package main.service;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import main.api.BatchItem;
+import main.api.BulkItemResult;
+import main.api.BulkResponse;
 import main.api.ComicRequest;
+import main.api.Suggestion;
 import main.entities.Character;
 import main.entities.Comic;
+import main.repository.CharactersRepository;
 import main.repository.ComicsRepository;
-import org.json.JSONArray;
+import main.repository.KeysetPage;
+import main.repository.MongoUpdates;
+import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.util.CloseableIterator;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Collectors;
 
 @Service
 public class ComicsService {
@@ -17,66 +42,274 @@ public class ComicsService {
     private final MarvelUtils marvelUtils;
     private final EntityMapper entityMapper;
     private final ComicsRepository comicsRepository;
+    private final MirrorService mirrorService;
+    private final ImageStore imageStore;
+    private final BulkWriter bulkWriter;
+    private final ObjectMapper objectMapper;
+    private final AutocompleteIndex autocompleteIndex;
+    private final ApplicationEventPublisher eventPublisher;
+    private final CharactersRepository charactersRepository;
+    private final RelationshipStore relationshipStore;
+
+    @Value("${batch.parallelism:8}")
+    private int batchParallelism;
+    @Value("${batch.max-ids:100}")
+    private int batchMaxIds;
+    @Value("${query.source:upstream}")
+    private String defaultSource;
+    @Value("${autocomplete.max-limit:50}")
+    private int autocompleteMaxLimit;
+    @Value("${export.batch-size:1000}")
+    private int exportBatchSize;
 
     @Autowired
-    public ComicsService(MarvelUtils marvelUtils, EntityMapper entityMapper, ComicsRepository comicsRepository) {
+    public ComicsService(MarvelUtils marvelUtils, EntityMapper entityMapper, ComicsRepository comicsRepository, MirrorService mirrorService,
+                         ImageStore imageStore, BulkWriter bulkWriter, ObjectMapper objectMapper,
+                         AutocompleteIndex autocompleteIndex, ApplicationEventPublisher eventPublisher,
+                         CharactersRepository charactersRepository, RelationshipStore relationshipStore) {
         this.marvelUtils = marvelUtils;
         this.entityMapper = entityMapper;
         this.comicsRepository = comicsRepository;
+        this.mirrorService = mirrorService;
+        this.imageStore = imageStore;
+        this.bulkWriter = bulkWriter;
+        this.objectMapper = objectMapper;
+        this.autocompleteIndex = autocompleteIndex;
+        this.eventPublisher = eventPublisher;
+        this.charactersRepository = charactersRepository;
+        this.relationshipStore = relationshipStore;
     }
 
-    public List<Comic> getComics(String format, String title, String titleStartsWith, String orderBy, int limit, int offset) {
-        Map<String, String> param = marvelUtils.createMap(format, title, titleStartsWith, orderBy, limit, offset);
-        String request = marvelUtils.buildQueryComics();
-        JSONArray results = marvelUtils.getResultWithParam(request, param);
-        return marvelUtils.getComicsFromResult(results);
+    public CompletableFuture<KeysetPage<Comic>> getComics(String source, String format, String title, String titleStartsWith, String orderBy, int limit, int offset, String cursor, String fieldList) {
+        FieldSet fields = FieldSet.comics(fieldList);
+        if (fieldList != null && fields == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        // A cursor only exists for local listings, so it selects local mode on its own
+        if (isLocal(source) || cursor != null) {
+            return CompletableFuture.completedFuture(comicsRepository.findLocal(null, format, title, titleStartsWith, orderBy, limit, offset, cursor, names(fields)));
+        }
+        UpstreamQuery query = UpstreamQuery.comics()
+                .param(UpstreamQuery.Param.FORMAT, format)
+                .param(UpstreamQuery.Param.TITLE, title)
+                .param(UpstreamQuery.Param.TITLE_STARTS_WITH, titleStartsWith)
+                .page(orderBy, limit, offset);
+        return marvelUtils.getComicsPage(query, fields, UpstreamPriority.INTERACTIVE)
+                .thenApply(result -> result == null ? null : new KeysetPage<>(result.getResults(), null, result.isStale()));
     }
 
-    public Comic getComic(String comicId) {
-        String request = marvelUtils.buildQueryComics(comicId);
-        JSONArray results = marvelUtils.getResult(request);
-        if (results == null) {
-            return null;
+    public CompletableFuture<Fetched<Comic>> getComic(String comicId) {
+        if (!mirrorService.isEnabled()) {
+            return fetchComic(comicId, null, UpstreamPriority.INTERACTIVE);
         }
-        return entityMapper.mapperComic(results, 0);
+        return mirrorService.read(() -> comicsRepository.findById(comicId).orElse(null)).thenCompose(local -> {
+            if (local != null && mirrorService.isFresh(local.getFetchedAt())) {
+                return CompletableFuture.completedFuture(new Fetched<>(local, false));
+            }
+            if (local != null && mirrorService.isRevalidatable(local.getFetchedAt())) {
+                // Answer with the expired mirror copy; the refresh rewrites it for the next reader
+                fetchComic(comicId, local, UpstreamPriority.PREFETCH);
+                return CompletableFuture.completedFuture(new Fetched<>(local, true));
+            }
+            return fetchComic(comicId, local, UpstreamPriority.INTERACTIVE);
+        });
     }
 
-    public List<Character> getComicCharacters(String comicId, String name, String nameStartsWith, String orderBy, int limit, int offset) {
-        Map<String, String> param = marvelUtils.createMap(name, nameStartsWith, orderBy, limit, offset);
-        String request = marvelUtils.buildQueryComicsByCharacters(comicId);
-        JSONArray results = marvelUtils.getResultWithParam(request, param);
-        return marvelUtils.getCharactersFromResult(results);
+    public CompletableFuture<List<BatchItem<Comic>>> getComicsByIds(List<String> ids) {
+        if (ids.size() > batchMaxIds) {
+            return CompletableFuture.completedFuture(null);
+        }
+        Set<String> unique = new LinkedHashSet<>(ids);
+        CompletableFuture<Iterable<Comic>> mirrored = mirrorService.isEnabled()
+                ? mirrorService.read(() -> comicsRepository.findAllById(unique))
+                : CompletableFuture.completedFuture(Collections.emptyList());
+        return mirrored.thenCompose(local -> {
+            Map<String, Comic> found = new HashMap<>();
+            Map<String, Comic> stale = new HashMap<>();
+            for (Comic comic : local) {
+                if (mirrorService.isFresh(comic.getFetchedAt())) {
+                    found.put(comic.getId(), comic);
+                } else {
+                    stale.put(comic.getId(), comic);
+                }
+            }
+            List<String> missing = unique.stream().filter(id -> !found.containsKey(id)).collect(Collectors.toList());
+            return FanOut.run(missing, batchParallelism, id -> fetchComic(id, stale.get(id), UpstreamPriority.INTERACTIVE))
+                    .thenApply(fetched -> items(ids, found, fetched));
+        });
+    }
+
+    private static List<BatchItem<Comic>> items(List<String> ids, Map<String, Comic> found, Map<String, Fetched<Comic>> fetched) {
+        List<BatchItem<Comic>> items = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            Fetched<Comic> result = fetched.get(id);
+            Comic comic = result == null ? found.get(id) : result.getValue();
+            items.add(new BatchItem<>(id, comic != null, result != null && result.isStale(), comic));
+        }
+        return items;
+    }
+
+    public CompletableFuture<KeysetPage<Character>> getComicCharacters(String source, String comicId, String name, String nameStartsWith, String orderBy, int limit, int offset, String fieldList) {
+        FieldSet fields = FieldSet.characters(fieldList);
+        if (fieldList != null && fields == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        if (isLocal(source)) {
+            int[] characterIds = relationshipStore.getGraph().charactersOf(RelationGraph.parseId(comicId));
+            List<Character> characters = findCharacters(characterIds, name, nameStartsWith, orderBy, limit, offset, fields);
+            return CompletableFuture.completedFuture(characters == null ? null : new KeysetPage<>(characters, null));
+        }
+        UpstreamQuery query = UpstreamQuery.comicCharacters(comicId)
+                .param(UpstreamQuery.Param.NAME, name)
+                .param(UpstreamQuery.Param.NAME_STARTS_WITH, nameStartsWith)
+                .page(orderBy, limit, offset);
+        return marvelUtils.getCharactersPage(query, fields, UpstreamPriority.INTERACTIVE)
+                .thenApply(result -> result == null ? null : new KeysetPage<>(result.getResults(), null, result.isStale()));
     }
 
     public Comic addComic(ComicRequest request) {
         Comic comic = new Comic();
         entityMapper.toComic(comic, request);
-        return writeThenGet(comic, request);
+        if (comic.getId() == null) {
+            comic.setId(new ObjectId().toHexString());
+        }
+        return write(comic, request, true);
     }
 
     public Comic updateComic(String comicId, ComicRequest request) {
-        Comic comic = comicsRepository.findById(comicId).orElse(null);
-        if (comic == null) {
+        Comic comic = new Comic();
+        entityMapper.toComic(comic, request);
+        comic.setId(comicId);
+        return write(comic, request, false);
+    }
+
+    public BulkResponse bulkSaveComics(InputStream body) throws IOException {
+        BulkWriter.Session<Comic> session = bulkWriter.open(Comic.class);
+        Map<String, String> thumbnails = new HashMap<>();
+        try {
+            try (MappingIterator<ComicRequest> requests = objectMapper.readerFor(ComicRequest.class).readValues(body)) {
+                while (requests.hasNextValue()) {
+                    ComicRequest request = requests.nextValue();
+                    Comic comic = new Comic();
+                    entityMapper.toComic(comic, request);
+                    if (comic.getId() == null) {
+                        comic.setId(new ObjectId().toHexString());
+                    }
+                    String thumbnail = request.getThumbnail();
+                    if (thumbnail != null && !thumbnail.isEmpty()) {
+                        comic.setThumbnail(thumbnail);
+                        thumbnails.put(comic.getId(), thumbnail);
+                    }
+                    session.add(comic.getId(), comic, MongoUpdates.keptOnClientWrite(request.getThumbnail()));
+                }
+            } catch (JsonProcessingException e) {
+                session.fail(null, e.getOriginalMessage());
+            }
+            return session.finish();
+        } finally {
+            // Runs on a dropped request body too, so the chunks already written are never left unannounced
+            written(session.getItems(), thumbnails);
+        }
+    }
+
+    // Null for an unknown sort or field; otherwise an open cursor over the local catalog that the caller writes out
+    public NdjsonExport<Comic> exportComics(String format, String title, String titleStartsWith, String orderBy, String fieldList) {
+        FieldSet fields = FieldSet.comics(fieldList);
+        if (fieldList != null && fields == null) {
             return null;
         }
-        entityMapper.toComic(comic, request);
-        return writeThenGet(comic, request);
+        CloseableIterator<Comic> cursor = comicsRepository.streamLocal(format, title, titleStartsWith, orderBy, exportBatchSize, names(fields));
+        return cursor == null ? null : new NdjsonExport<>(cursor, objectMapper, fields);
     }
 
-    public boolean deleteCharacter(String comicId) {
-        Comic comic = comicsRepository.findById(comicId).orElse(null);
-        if (comic == null) {
-            return false;
+    public boolean deleteComic(String comicId, Long version) {
+        boolean deleted = comicsRepository.deleteVersioned(comicId, version);
+        if (deleted) {
+            eventPublisher.publishEvent(new CollectionChangedEvent(IngestionService.COMICS, List.of(comicId)));
+        }
+        return deleted;
+    }
+
+    public List<Suggestion> autocompleteComics(String prefix, int limit) {
+        if (prefix == null || prefix.isBlank() || limit < 1 || limit > autocompleteMaxLimit) {
+            return null;
+        }
+        return autocompleteIndex.suggest(IngestionService.COMICS, prefix, limit);
+    }
+
+    private static Set<String> names(FieldSet fields) {
+        return fields == null ? null : fields.getNames();
+    }
+
+    private boolean isLocal(String source) {
+        return "local".equalsIgnoreCase(source == null ? defaultSource : source);
+    }
+
+    // Edges come from the in-memory graph; Mongo only filters, sorts and pages the related documents by _id
+    private List<Character> findCharacters(int[] characterIds, String name, String nameStartsWith, String orderBy, int limit, int offset, FieldSet fields) {
+        if (characterIds.length == 0) {
+            return Collections.emptyList();
+        }
+        List<String> ids = Arrays.stream(characterIds).mapToObj(String::valueOf).collect(Collectors.toList());
+        KeysetPage<Character> page = charactersRepository.findLocal(ids, name, nameStartsWith, orderBy, limit, offset, null, names(fields));
+        return page == null ? null : page.getItems();
+    }
+
+    private CompletableFuture<Fetched<Comic>> fetchComic(String comicId, Comic stale, UpstreamPriority priority) {
+        return marvelUtils.getComicsPage(UpstreamQuery.comics(comicId), priority).handle((result, error) -> {
+            if (error != null) {
+                // Marvel unavailable: the expired mirror copy stands in, otherwise the error reaches the caller
+                if (stale != null) {
+                    return new Fetched<>(stale, true);
+                }
+                throw error instanceof CompletionException ? (CompletionException) error : new CompletionException(error);
+            }
+            if (result == null || result.getResults().isEmpty()) {
+                return stale == null ? null : new Fetched<>(stale, true);
+            }
+            Comic comic = result.getResults().get(0);
+            if (mirrorService.isEnabled() && (stale == null || comic.getFetchedAt().isAfter(stale.getFetchedAt()))) {
+                mirrorService.saveComic(comic);
+            }
+            return new Fetched<>(comic, result.isStale());
+        });
+    }
+
+    private Comic write(Comic comic, ComicRequest request, boolean upsert) {
+        String thumbnail = request.getThumbnail();
+        comic.setThumbnail(thumbnail == null || thumbnail.isEmpty() ? null : thumbnail);
+        // One findAndModify: the write, the version check and the read-back of the stored document
+        Comic saved = comicsRepository.saveVersioned(comic, request.getVersion(), upsert,
+                MongoUpdates.keptOnClientWrite(thumbnail));
+        if (saved != null) {
+            eventPublisher.publishEvent(new CollectionChangedEvent(IngestionService.COMICS, List.of(saved.getId())));
+        }
+        if (saved != null && thumbnail != null && !thumbnail.isEmpty()) {
+            storeThumbnail(saved.getId(), thumbnail);
+        }
+        return saved;
+    }
+
+    private void written(List<BulkItemResult> items, Map<String, String> thumbnails) {
+        if (items.isEmpty()) {
+            return;
+        }
+        eventPublisher.publishEvent(new CollectionChangedEvent(IngestionService.COMICS,
+                items.stream().map(BulkItemResult::getId).filter(Objects::nonNull).collect(Collectors.toList())));
+        for (BulkItemResult item : items) {
+            String thumbnail = thumbnails.get(item.getId());
+            if (thumbnail != null && !item.getStatus().equals("failed")) {
+                storeThumbnail(item.getId(), thumbnail);
+            }
         }
-        comicsRepository.deleteById(comic.getId());
-        return true;
     }
 
-    private Comic writeThenGet(Comic comic, ComicRequest request) {
-        comic.setThumbnail(marvelUtils.uploadImage(request.getThumbnail()));
-        comicsRepository.save(comic);
-        String id = comic.getId();
-        return comicsRepository.findById(id).orElse(null);
+    private void storeThumbnail(String id, String thumbnail) {
+        imageStore.store(thumbnail).thenAccept(path -> {
+            if (path != null) {
+                comicsRepository.replaceThumbnail(id, thumbnail, path);
+            }
+        });
     }
 
 }
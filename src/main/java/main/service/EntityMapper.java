@@ -1,87 +1,297 @@
 package main.service;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import main.api.CharacterRequest;
 import main.api.ComicRequest;
 import main.entities.Character;
 import main.entities.Comic;
-import org.json.JSONArray;
-import org.json.JSONObject;
+import main.repository.MongoQueries;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
-import java.time.format.DateTimeParseException;
+import java.time.Month;
+import java.time.Year;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 public class EntityMapper {
 
-    public Character mapperCharacter(JSONArray results, int i) {
-        JSONObject o = results.getJSONObject(i);
-        JSONObject thumbnail = o.getJSONObject("thumbnail");
+    private static final int MAX_INTERNED = 10_000;
+    private static final int MAX_INTERNED_LENGTH = 128;
+
+    private final Map<String, String> internPool = new ConcurrentHashMap<>();
+
+    public Character readCharacter(JsonParser parser) throws IOException {
+        return readCharacter(parser, null);
+    }
+
+    /**
+     * Decodes only the selected properties; the values of the others are skipped without being materialized.
+     * Partially read entities are for responses only and never reach the mirror.
+     */
+    public Character readCharacter(JsonParser parser, FieldSet fields) throws IOException {
         Character character = new Character();
-        character.setId(String.valueOf(o.get("id")));
-        character.setName(String.valueOf(o.get("name")));
-        character.setDescription(String.valueOf(o.get("description")));
-        try {
-            character.setModified(LocalDateTime.parse(String.valueOf(o.get("modified")),
-                    DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ssZ")));
-        } catch (DateTimeParseException e) {
-            character.setModified(LocalDateTime.now());
-        }
-        character.setResourceURI(String.valueOf(o.get("resourceURI")));
-        character.setThumbnail(thumbnail.get("path") + "." + thumbnail.get("extension"));
+        character.setFetchedAt(LocalDateTime.now());
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if (fields != null && !fields.contains(field)) {
+                parser.skipChildren();
+                continue;
+            }
+            switch (field) {
+                case "id":
+                    character.setId(parser.getValueAsString());
+                    break;
+                case "name":
+                    character.setName(parser.getValueAsString());
+                    character.setNameKey(MongoQueries.searchKey(character.getName()));
+                    break;
+                case "description":
+                    character.setDescription(parser.getValueAsString());
+                    break;
+                case "modified":
+                    character.setModified(parseDate(parser.getValueAsString()));
+                    break;
+                case "resourceURI":
+                    character.setResourceURI(parser.getValueAsString());
+                    break;
+                case "thumbnail":
+                    character.setThumbnail(readThumbnail(parser));
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
         return character;
     }
 
-    public Comic mapperComic(JSONArray results, int i) {
-        JSONObject o = results.getJSONObject(i);
-        JSONObject thumbnail = o.getJSONObject("thumbnail");
-        JSONObject series = o.getJSONObject("series");
+    public Comic readComic(JsonParser parser) throws IOException {
+        return readComic(parser, null);
+    }
+
+    public Comic readComic(JsonParser parser, FieldSet fields) throws IOException {
         Comic comic = new Comic();
-        comic.setId(String.valueOf(o.get("id")));
-        comic.setTitle(String.valueOf(o.get("title")));
-        comic.setDescription(String.valueOf(o.get("description")));
-        try {
-            comic.setModified(LocalDateTime.parse(String.valueOf(o.get("modified")),
-                    DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ssZ")));
-        } catch (DateTimeParseException e) {
-            comic.setModified(LocalDateTime.now());
-        }
-        comic.setFormat(String.valueOf(o.get("format")));
-        comic.setPageCount(String.valueOf(o.get("pageCount")));
-        comic.setResourceURI(String.valueOf(o.get("resourceURI")));
-        comic.setSeries(String.valueOf(series.get("name")));
-        comic.setThumbnail(thumbnail.get("path") + "." + thumbnail.get("extension"));
+        comic.setFetchedAt(LocalDateTime.now());
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if (fields != null && !fields.contains(field)) {
+                parser.skipChildren();
+                continue;
+            }
+            switch (field) {
+                case "id":
+                    comic.setId(parser.getValueAsString());
+                    break;
+                case "title":
+                    comic.setTitle(parser.getValueAsString());
+                    comic.setTitleKey(MongoQueries.searchKey(comic.getTitle()));
+                    break;
+                case "description":
+                    comic.setDescription(parser.getValueAsString());
+                    break;
+                case "modified":
+                    comic.setModified(parseDate(parser.getValueAsString()));
+                    break;
+                case "format":
+                    comic.setFormat(intern(parser.getValueAsString()));
+                    break;
+                case "pageCount":
+                    comic.setPageCount(parser.currentToken() == JsonToken.VALUE_NULL ? null : parser.getValueAsInt());
+                    break;
+                case "resourceURI":
+                    comic.setResourceURI(parser.getValueAsString());
+                    break;
+                case "series":
+                    comic.setSeries(readSeriesName(parser));
+                    break;
+                case "thumbnail":
+                    comic.setThumbnail(readThumbnail(parser));
+                    break;
+                case "characters":
+                    comic.setCharacterIds(readResourceIds(parser));
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
         return comic;
     }
 
     public void toCharacter(Character character, CharacterRequest request) {
         character.setId(request.getId());
         character.setName(request.getName());
+        character.setNameKey(MongoQueries.searchKey(request.getName()));
         character.setDescription(request.getDescription());
-        try {
-            character.setModified(LocalDateTime.parse(request.getModified(),
-                    DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ssZ")));
-        } catch (DateTimeParseException e) {
-            character.setModified(LocalDateTime.now());
-        }
+        character.setModified(request.getModified() == null ? LocalDateTime.now() : parseDate(request.getModified()));
         character.setResourceURI(request.getResourceURI());
+        character.setFetchedAt(null);
     }
 
     public void toComic(Comic comic, ComicRequest request) {
         comic.setId(request.getId());
         comic.setTitle(request.getTitle());
+        comic.setTitleKey(MongoQueries.searchKey(request.getTitle()));
         comic.setDescription(request.getDescription());
-        try {
-            comic.setModified(LocalDateTime.parse(request.getModified(),
-                    DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ssZ")));
-        } catch (DateTimeParseException e) {
-            comic.setModified(LocalDateTime.now());
-        }
-        comic.setFormat(request.getFormat());
+        comic.setModified(request.getModified() == null ? LocalDateTime.now() : parseDate(request.getModified()));
+        comic.setFormat(intern(request.getFormat()));
         comic.setPageCount(request.getPageCount());
         comic.setResourceURI(request.getResourceURI());
-        comic.setSeries(request.getSeries());
+        comic.setSeries(intern(request.getSeries()));
+        comic.setFetchedAt(null);
+    }
+
+    private String readThumbnail(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return null;
+        }
+        String path = null;
+        String extension = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if (field.equals("path")) {
+                path = parser.getValueAsString();
+            } else if (field.equals("extension")) {
+                extension = parser.getValueAsString();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return path + "." + extension;
+    }
+
+    // Collects the numeric ids from a {"items": [{"resourceURI": ".../characters/1009610"}, ...]} summary list
+    private int[] readResourceIds(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return null;
+        }
+        int[] ids = new int[0];
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if (!field.equals("items") || parser.currentToken() != JsonToken.START_ARRAY) {
+                parser.skipChildren();
+                continue;
+            }
+            int count = 0;
+            ids = new int[8];
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                int id = -1;
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String itemField = parser.getCurrentName();
+                    parser.nextToken();
+                    if (itemField.equals("resourceURI")) {
+                        id = lastSegmentId(parser.getValueAsString());
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+                if (id >= 0) {
+                    if (count == ids.length) {
+                        ids = Arrays.copyOf(ids, count * 2);
+                    }
+                    ids[count++] = id;
+                }
+            }
+            ids = Arrays.copyOf(ids, count);
+        }
+        return ids;
+    }
+
+    private static int lastSegmentId(String uri) {
+        if (uri == null) {
+            return -1;
+        }
+        int slash = uri.lastIndexOf('/');
+        int id = 0;
+        if (slash < 0 || slash == uri.length() - 1 || uri.length() - slash > 10) {
+            return -1;
+        }
+        for (int i = slash + 1; i < uri.length(); i++) {
+            char c = uri.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            id = id * 10 + (c - '0');
+        }
+        return id;
+    }
+
+    private String readSeriesName(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return null;
+        }
+        String name = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if (field.equals("name")) {
+                name = intern(parser.getValueAsString());
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return name;
+    }
+
+    /**
+     * Parses Marvel's yyyy-MM-dd'T'HH:mm:ssZ (the offset is optional and ignored, as before) without a formatter
+     * or exceptions. Returns null, meaning an unknown date, for anything else, including the -0001-11-30
+     * placeholder Marvel sends for resources that were never dated.
+     */
+    static LocalDateTime parseDate(String date) {
+        if (date == null || (date.length() != 19 && date.length() != 24) || date.charAt(4) != '-' || date.charAt(7) != '-'
+                || date.charAt(10) != 'T' || date.charAt(13) != ':' || date.charAt(16) != ':') {
+            return null;
+        }
+        int year = digits(date, 0, 4);
+        int month = digits(date, 5, 7);
+        int day = digits(date, 8, 10);
+        int hour = digits(date, 11, 13);
+        int minute = digits(date, 14, 16);
+        int second = digits(date, 17, 19);
+        if (year < 1 || month < 1 || month > 12 || day < 1 || day > Month.of(month).length(Year.isLeap(year))
+                || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+            return null;
+        }
+        return LocalDateTime.of(year, month, day, hour, minute, second);
+    }
+
+    private static int digits(String value, int from, int to) {
+        int result = 0;
+        for (int i = from; i < to; i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            result = result * 10 + (c - '0');
+        }
+        return result;
+    }
+
+    // Formats and series names repeat across thousands of comics; share one instance per distinct value
+    private String intern(String value) {
+        if (value == null || value.length() > MAX_INTERNED_LENGTH) {
+            return value;
+        }
+        String interned = internPool.get(value);
+        if (interned != null) {
+            return interned;
+        }
+        if (internPool.size() >= MAX_INTERNED) {
+            return value;
+        }
+        interned = internPool.putIfAbsent(value, value);
+        return interned == null ? value : interned;
     }
 
 }
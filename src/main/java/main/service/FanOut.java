@@ -0,0 +1,45 @@
+package main.service;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Function;
+
+public final class FanOut {
+
+    private FanOut() {
+    }
+
+    /**
+     * Calls {@code call} for every key with at most {@code parallelism} calls in flight.
+     * Keys whose call fails or yields null are left out of the result.
+     */
+    public static <K, V> CompletableFuture<Map<K, V>> run(Collection<K> keys, int parallelism, Function<K, CompletableFuture<V>> call) {
+        Queue<K> pending = new ConcurrentLinkedQueue<>(keys);
+        Map<K, V> results = new ConcurrentHashMap<>();
+        CompletableFuture<?>[] lanes = new CompletableFuture[Math.max(1, Math.min(parallelism, keys.size()))];
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = lane(pending, results, call);
+        }
+        return CompletableFuture.allOf(lanes).thenApply(done -> results);
+    }
+
+    private static <K, V> CompletableFuture<Void> lane(Queue<K> pending, Map<K, V> results, Function<K, CompletableFuture<V>> call) {
+        K key = pending.poll();
+        if (key == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return call.apply(key)
+                .handle((value, error) -> {
+                    if (error == null && value != null) {
+                        results.put(key, value);
+                    }
+                    return null;
+                })
+                .thenCompose(done -> lane(pending, results, call));
+    }
+
+}
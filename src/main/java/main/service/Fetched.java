@@ -0,0 +1,22 @@
+package main.service;
+
+// A single resource plus whether it is an expired copy served in place of a fresh upstream answer
+public class Fetched<T> {
+
+    private final T value;
+    private final boolean stale;
+
+    public Fetched(T value, boolean stale) {
+        this.value = value;
+        this.stale = stale;
+    }
+
+    public T getValue() {
+        return value;
+    }
+
+    public boolean isStale() {
+        return stale;
+    }
+
+}
@@ -0,0 +1,78 @@
+package main.service;
+
+import com.fasterxml.jackson.databind.ser.FilterProvider;
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Properties picked with ?fields=, validated against the entity's JSON properties. The id is always part of
+ * the selection; the canonical form (sorted, comma-separated) keys cached partial pages.
+ */
+public class FieldSet {
+
+    // Id of the Jackson filter on Character and Comic that drops unselected properties
+    public static final String FILTER = "fields";
+
+    private static final Set<String> CHARACTER_FIELDS = Set.of("id", "name", "description", "modified", "resourceURI",
+            "thumbnail", "fetchedAt", "version");
+    private static final Set<String> COMIC_FIELDS = Set.of("id", "title", "description", "modified", "format", "pageCount",
+            "resourceURI", "series", "thumbnail", "fetchedAt", "version");
+
+    private final Set<String> names;
+    private final String canonical;
+
+    private FieldSet(Set<String> names) {
+        this.names = Collections.unmodifiableSet(names);
+        this.canonical = String.join(",", names);
+    }
+
+    public static FieldSet characters(String fields) {
+        return parse(fields, CHARACTER_FIELDS);
+    }
+
+    public static FieldSet comics(String fields) {
+        return parse(fields, COMIC_FIELDS);
+    }
+
+    // Null for an absent parameter and for one naming a property the entity does not have
+    private static FieldSet parse(String fields, Set<String> allowed) {
+        if (fields == null) {
+            return null;
+        }
+        Set<String> names = new TreeSet<>();
+        names.add("id");
+        for (String field : fields.split(",")) {
+            String name = field.trim();
+            if (name.isEmpty()) {
+                continue;
+            }
+            if (!allowed.contains(name)) {
+                return null;
+            }
+            names.add(name);
+        }
+        return new FieldSet(names);
+    }
+
+    public boolean contains(String name) {
+        return names.contains(name);
+    }
+
+    public Set<String> getNames() {
+        return names;
+    }
+
+    public FilterProvider filters() {
+        return new SimpleFilterProvider().addFilter(FILTER, SimpleBeanPropertyFilter.filterOutAllExcept(names));
+    }
+
+    @Override
+    public String toString() {
+        return canonical;
+    }
+
+}
@@ -0,0 +1,179 @@
+package main.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+@Service
+public class ImageStore {
+
+    private static final Logger log = LoggerFactory.getLogger(ImageStore.class);
+
+    public static final String URL_PREFIX = "/images/";
+    private static final Pattern NAME = Pattern.compile("[0-9a-f]{64}\\.[a-z0-9]{1,5}");
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final Path root;
+    private final Path incoming;
+    private final HttpClient httpClient;
+    private final ThreadPoolTaskExecutor imageExecutor;
+    // One download per URL; waiters share it until it finishes or hits the download timeout, never an earlier one
+    private final ConcurrentHashMap<String, CompletableFuture<String>> downloads = new ConcurrentHashMap<>();
+    private final Duration timeout;
+    private final Timer downloaded;
+    private final Timer failed;
+
+    @Autowired
+    public ImageStore(@Value("${images.dir:images}") String dir,
+                      @Value("${images.timeout:30s}") Duration timeout,
+                      @Qualifier("imageExecutor") ThreadPoolTaskExecutor imageExecutor,
+                      MeterRegistry meterRegistry) throws IOException {
+        this.root = Paths.get(dir).toAbsolutePath();
+        this.incoming = root.resolve("incoming");
+        Files.createDirectories(incoming);
+        this.timeout = timeout;
+        this.imageExecutor = imageExecutor;
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(timeout)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .executor(imageExecutor)
+                .build();
+        this.downloaded = Timer.builder("marvel.images.downloads").tag("outcome", "success").register(meterRegistry);
+        this.failed = Timer.builder("marvel.images.downloads").tag("outcome", "failure").register(meterRegistry);
+        Gauge.builder("marvel.images.downloads.in.flight", downloads, Map::size).register(meterRegistry);
+    }
+
+    public CompletableFuture<String> store(String url) {
+        CompletableFuture<String> flight = new CompletableFuture<>();
+        CompletableFuture<String> existing = downloads.putIfAbsent(url, flight);
+        if (existing != null) {
+            return existing.copy();
+        }
+        download(url).whenComplete((path, error) -> {
+            downloads.remove(url, flight);
+            if (error != null) {
+                flight.completeExceptionally(error);
+            } else {
+                flight.complete(path);
+            }
+        });
+        return flight.copy();
+    }
+
+    public Path resolve(String name) {
+        if (!NAME.matcher(name).matches()) {
+            return null;
+        }
+        Path file = root.resolve(name.substring(0, 2)).resolve(name);
+        return Files.isRegularFile(file) ? file : null;
+    }
+
+    private CompletableFuture<String> download(String url) {
+        Path temp;
+        HttpRequest request;
+        try {
+            request = HttpRequest.newBuilder(URI.create(url)).timeout(timeout).GET().build();
+            temp = Files.createTempFile(incoming, "image-", ".part");
+        } catch (IOException | IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        long start = System.nanoTime();
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofFile(temp))
+                .thenApplyAsync(response -> {
+                    try {
+                        if (response.statusCode() / 100 != 2) {
+                            throw new IOException("Image download failed with status " + response.statusCode() + ": " + url);
+                        }
+                        return publish(temp, extension(url));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }, imageExecutor)
+                .whenComplete((name, error) -> {
+                    (error == null ? downloaded : failed).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                    try {
+                        Files.deleteIfExists(temp);
+                    } catch (IOException e) {
+                        log.warn("Could not delete {}", temp, e);
+                    }
+                });
+    }
+
+    private String publish(Path temp, String extension) throws IOException {
+        String name = hash(temp) + "." + extension;
+        Path target = root.resolve(name.substring(0, 2)).resolve(name);
+        if (!Files.exists(target)) {
+            Files.createDirectories(target.getParent());
+            try {
+                // Same name means same content, so losing a race against an identical image is fine
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (FileAlreadyExistsException e) {
+                Files.deleteIfExists(temp);
+            }
+        }
+        return URL_PREFIX + name;
+    }
+
+    private String hash(Path file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] buffer = new byte[16384];
+        try (InputStream is = Files.newInputStream(file)) {
+            int read;
+            while ((read = is.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        byte[] bytes = digest.digest();
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[i * 2] = HEX[(bytes[i] >> 4) & 0xf];
+            hex[i * 2 + 1] = HEX[bytes[i] & 0xf];
+        }
+        return new String(hex);
+    }
+
+    private String extension(String url) {
+        String path = URI.create(url).getPath();
+        int dot = path == null ? -1 : path.lastIndexOf('.');
+        if (dot < 0 || dot < path.lastIndexOf('/')) {
+            return "img";
+        }
+        String extension = path.substring(dot + 1).toLowerCase(Locale.ROOT);
+        return extension.matches("[a-z0-9]{1,5}") ? extension : "img";
+    }
+
+}
@@ -0,0 +1,68 @@
+package main.service;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Getter
+public class IngestionRun {
+
+    public enum State {
+        RUNNING, COMPLETED, INCOMPLETE
+    }
+
+    private final String resource;
+    private final LocalDateTime modifiedSince;
+    private final LocalDateTime startedAt = LocalDateTime.now();
+    @Getter(AccessLevel.NONE)
+    private final long startNanos = System.nanoTime();
+    @Getter(AccessLevel.NONE)
+    private volatile long finishNanos;
+    private volatile State state = State.RUNNING;
+    private volatile int totalPages;
+    private volatile LocalDateTime finishedAt;
+    private final AtomicInteger pages = new AtomicInteger();
+    private final AtomicInteger failedPages = new AtomicInteger();
+    private final AtomicLong documents = new AtomicLong();
+
+    public IngestionRun(String resource, LocalDateTime modifiedSince) {
+        this.resource = resource;
+        this.modifiedSince = modifiedSince;
+    }
+
+    public double getPagesPerSecond() {
+        return pages.get() / elapsedSeconds();
+    }
+
+    public double getDocumentsPerSecond() {
+        return documents.get() / elapsedSeconds();
+    }
+
+    void setTotalPages(int totalPages) {
+        this.totalPages = totalPages;
+    }
+
+    void pageStored(int count) {
+        pages.incrementAndGet();
+        documents.addAndGet(count);
+    }
+
+    void pageFailed() {
+        failedPages.incrementAndGet();
+    }
+
+    void finish() {
+        state = failedPages.get() == 0 ? State.COMPLETED : State.INCOMPLETE;
+        finishedAt = LocalDateTime.now();
+        finishNanos = System.nanoTime();
+    }
+
+    private double elapsedSeconds() {
+        long end = finishNanos == 0 ? System.nanoTime() : finishNanos;
+        return Math.max(end - startNanos, 1) / 1_000_000_000.0;
+    }
+
+}
@@ -0,0 +1,176 @@
+package main.service;
+
+import main.entities.IngestionCheckpoint;
+import main.repository.CharactersRepository;
+import main.repository.ComicsRepository;
+import main.repository.IngestionCheckpointRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+@Service
+public class IngestionService {
+
+    private static final Logger log = LoggerFactory.getLogger(IngestionService.class);
+
+    public static final String CHARACTERS = "characters";
+    public static final String COMICS = "comics";
+    private static final int PAGE_SIZE = 100;
+
+    private final MarvelUtils marvelUtils;
+    private final IngestionCheckpointRepository checkpointRepository;
+    private final MongoTemplate mongoTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ThreadPoolTaskExecutor ingestionExecutor;
+    private final ThreadPoolTaskExecutor ingestionCoordinator;
+    private final Map<String, Catalog<?>> catalogs = new ConcurrentHashMap<>();
+    private final Map<String, IngestionRun> runs = new ConcurrentHashMap<>();
+
+    @Autowired
+    public IngestionService(MarvelUtils marvelUtils, CharactersRepository charactersRepository, ComicsRepository comicsRepository,
+                            IngestionCheckpointRepository checkpointRepository, MongoTemplate mongoTemplate, ApplicationEventPublisher eventPublisher,
+                            @Qualifier("ingestionExecutor") ThreadPoolTaskExecutor ingestionExecutor,
+                            @Qualifier("ingestionCoordinator") ThreadPoolTaskExecutor ingestionCoordinator) {
+        this.marvelUtils = marvelUtils;
+        this.checkpointRepository = checkpointRepository;
+        this.mongoTemplate = mongoTemplate;
+        this.eventPublisher = eventPublisher;
+        this.ingestionExecutor = ingestionExecutor;
+        this.ingestionCoordinator = ingestionCoordinator;
+        catalogs.put(CHARACTERS, new Catalog<>("name", UpstreamQuery::characters,
+                query -> marvelUtils.getCharactersPage(query, UpstreamPriority.BACKGROUND).exceptionally(error -> null).join(),
+                charactersRepository::upsertMirrored));
+        catalogs.put(COMICS, new Catalog<>("title", UpstreamQuery::comics,
+                query -> marvelUtils.getComicsPage(query, UpstreamPriority.BACKGROUND).exceptionally(error -> null).join(),
+                comicsRepository::upsertMirrored));
+    }
+
+    public boolean isKnown(String resource) {
+        return catalogs.containsKey(resource);
+    }
+
+    public synchronized IngestionRun start(String resource, boolean full) {
+        IngestionRun current = runs.get(resource);
+        if (current != null && current.getState() == IngestionRun.State.RUNNING) {
+            return null;
+        }
+        IngestionCheckpoint checkpoint = checkpointRepository.findById(resource).orElseGet(() -> {
+            IngestionCheckpoint created = new IngestionCheckpoint();
+            created.setId(resource);
+            return created;
+        });
+        boolean resume = !full && checkpoint.getRunStartedAt() != null;
+        if (!resume) {
+            checkpoint.setRunStartedAt(LocalDateTime.now());
+            checkpoint.setRunModifiedSince(full ? null : checkpoint.getLastCompletedAt());
+            checkpoint.setCompletedOffsets(new HashSet<>());
+            checkpointRepository.save(checkpoint);
+        }
+        IngestionRun run = new IngestionRun(resource, checkpoint.getRunModifiedSince());
+        runs.put(resource, run);
+        ingestionCoordinator.execute(() -> ingest(catalogs.get(resource), checkpoint, run));
+        return run;
+    }
+
+    public List<IngestionRun> getRuns() {
+        return new ArrayList<>(runs.values());
+    }
+
+    private <T> void ingest(Catalog<T> catalog, IngestionCheckpoint checkpoint, IngestionRun run) {
+        String modifiedSince = checkpoint.getRunModifiedSince() == null ? null :
+                checkpoint.getRunModifiedSince().atZone(ZoneId.systemDefault()).format(DateTimeFormatter.ISO_INSTANT);
+        try {
+            UpstreamResult<T> first = catalog.fetch.apply(pageQuery(catalog, modifiedSince, 0));
+            if (first == null) {
+                run.pageFailed();
+                return;
+            }
+            int totalPages = (first.getTotal() + PAGE_SIZE - 1) / PAGE_SIZE;
+            run.setTotalPages(totalPages);
+            List<CompletableFuture<Void>> windows = new ArrayList<>();
+            for (int page = 0; page < totalPages; page++) {
+                int offset = page * PAGE_SIZE;
+                if (checkpoint.getCompletedOffsets().contains(offset)) {
+                    continue;
+                }
+                if (offset == 0) {
+                    store(catalog, run, checkpoint.getId(), offset, first);
+                    continue;
+                }
+                windows.add(CompletableFuture.runAsync(() ->
+                        store(catalog, run, checkpoint.getId(), offset,
+                                catalog.fetch.apply(pageQuery(catalog, modifiedSince, offset))), ingestionExecutor));
+            }
+            CompletableFuture.allOf(windows.toArray(new CompletableFuture[0])).join();
+        } catch (Exception e) {
+            log.warn("Ingestion of {} failed", checkpoint.getId(), e);
+            run.pageFailed();
+        } finally {
+            run.finish();
+            if (run.getState() == IngestionRun.State.COMPLETED) {
+                complete(checkpoint);
+            }
+        }
+    }
+
+    private <T> void store(Catalog<T> catalog, IngestionRun run, String resource, int offset, UpstreamResult<T> page) {
+        if (page == null) {
+            run.pageFailed();
+            return;
+        }
+        run.pageStored(catalog.store.apply(page.getResults()));
+        eventPublisher.publishEvent(new CollectionChangedEvent(resource));
+        mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(resource)),
+                new Update().addToSet("completedOffsets", offset), IngestionCheckpoint.class);
+    }
+
+    private void complete(IngestionCheckpoint checkpoint) {
+        checkpoint.setLastCompletedAt(checkpoint.getRunStartedAt());
+        checkpoint.setRunStartedAt(null);
+        checkpoint.setRunModifiedSince(null);
+        checkpoint.setCompletedOffsets(new HashSet<>());
+        checkpointRepository.save(checkpoint);
+    }
+
+    private UpstreamQuery pageQuery(Catalog<?> catalog, String modifiedSince, int offset) {
+        return catalog.query.get()
+                .page(catalog.orderBy, PAGE_SIZE, offset)
+                .param(UpstreamQuery.Param.MODIFIED_SINCE, modifiedSince);
+    }
+
+    private static class Catalog<T> {
+        private final String orderBy;
+        private final Supplier<UpstreamQuery> query;
+        private final Function<UpstreamQuery, UpstreamResult<T>> fetch;
+        private final Function<List<T>, Integer> store;
+
+        private Catalog(String orderBy, Supplier<UpstreamQuery> query, Function<UpstreamQuery, UpstreamResult<T>> fetch,
+                        Function<List<T>, Integer> store) {
+            this.orderBy = orderBy;
+            this.query = query;
+            this.fetch = fetch;
+            this.store = store;
+        }
+    }
+
+}
@@ -0,0 +1,19 @@
+package main.service;
+
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import org.springframework.boot.autoconfigure.jackson.Jackson2ObjectMapperBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class JacksonConfig {
+
+    // Entities carry the ?fields= filter; wherever no selection was made it keeps every property
+    @Bean
+    public Jackson2ObjectMapperBuilderCustomizer fieldSetFilter() {
+        return builder -> builder.filters(new SimpleFilterProvider()
+                .addFilter(FieldSet.FILTER, SimpleBeanPropertyFilter.serializeAll()));
+    }
+
+}
@@ -1,216 +1,237 @@
 package main.service;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import main.entities.Character;
 import main.entities.Comic;
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.io.*;
-import java.math.BigInteger;
-import java.net.URI;
-import java.net.URL;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 @Service
 public class MarvelUtils {
 
-    @Value("${API_LINK}")
-    private String API_LINK;
-    @Value("${PUBLIC_KEY}")
-    private String PUBLIC_KEY;
-    @Value("${PRIVATE_KEY}")
-    private String PRIVATE_KEY;
+    private static final Logger log = LoggerFactory.getLogger(MarvelUtils.class);
 
     private final EntityMapper entityMapper;
+    private final UpstreamClient upstreamClient;
+    private final UpstreamCache upstreamCache;
+    private final SingleFlight singleFlight;
+    private final UpstreamSigner upstreamSigner;
+    private final UpstreamScheduler upstreamScheduler;
+    private final UpstreamHedging upstreamHedging;
+    private final UpstreamCircuitBreaker circuitBreaker;
+    private final JsonFactory jsonFactory = new JsonFactory();
+    private final Map<UpstreamRoute, Timer> decodeTimers = new EnumMap<>(UpstreamRoute.class);
+    private final Map<UpstreamRoute, DistributionSummary> payloadSizes = new EnumMap<>(UpstreamRoute.class);
+
+    @Value("${upstream.cache.stale-while-revalidate:1h}")
+    private Duration staleWhileRevalidate;
 
     @Autowired
-    public MarvelUtils(EntityMapper entityMapper) {
+    public MarvelUtils(EntityMapper entityMapper, UpstreamClient upstreamClient, UpstreamCache upstreamCache,
+                       SingleFlight singleFlight, UpstreamSigner upstreamSigner, UpstreamScheduler upstreamScheduler,
+                       UpstreamHedging upstreamHedging, UpstreamCircuitBreaker circuitBreaker,
+                       MeterRegistry meterRegistry) {
         this.entityMapper = entityMapper;
+        this.upstreamClient = upstreamClient;
+        this.upstreamCache = upstreamCache;
+        this.singleFlight = singleFlight;
+        this.upstreamSigner = upstreamSigner;
+        this.upstreamScheduler = upstreamScheduler;
+        this.upstreamHedging = upstreamHedging;
+        this.circuitBreaker = circuitBreaker;
+        for (UpstreamRoute route : UpstreamRoute.values()) {
+            String tag = route.name().toLowerCase(Locale.ROOT);
+            decodeTimers.put(route, Timer.builder("marvel.upstream.decode")
+                    .description("Time spent streaming a Marvel response body into entities")
+                    .tag("route", tag)
+                    .register(meterRegistry));
+            payloadSizes.put(route, DistributionSummary.builder("marvel.upstream.payload.size")
+                    .description("Decoded Marvel payload size, as weighed by the upstream cache")
+                    .baseUnit("bytes")
+                    .tag("route", tag)
+                    .register(meterRegistry));
+        }
     }
 
-    public String buildQueryCharacters() {
-        String timestamp = String.valueOf(System.currentTimeMillis());
-        String hash = generateHash(timestamp);
-        return API_LINK + "/characters" + "?ts=" + timestamp + "&apikey=" + PUBLIC_KEY + "&hash=" + hash;
-    }
-
-    public String buildQueryCharacters(String characterId) {
-        String timestamp = String.valueOf(System.currentTimeMillis());
-        String hash = generateHash(timestamp);
-        return API_LINK + "/characters/" + characterId + "?ts=" + timestamp + "&apikey=" + PUBLIC_KEY + "&hash=" + hash;
-    }
-
-    public String buildQueryCharactersByComics(String characterId) {
-        String timestamp = String.valueOf(System.currentTimeMillis());
-        String hash = generateHash(timestamp);
-        return API_LINK + "/characters/" + characterId + "/comics" + "?ts=" + timestamp + "&apikey=" + PUBLIC_KEY + "&hash=" + hash;
-    }
-
-    public String buildQueryComics() {
-        String timestamp = String.valueOf(System.currentTimeMillis());
-        String hash = generateHash(timestamp);
-        return API_LINK + "/comics" + "?ts=" + timestamp + "&apikey=" + PUBLIC_KEY + "&hash=" + hash;
+    public CompletableFuture<UpstreamResult<Character>> getCharactersPage(UpstreamQuery query, UpstreamPriority priority) {
+        return getCharactersPage(query, null, priority);
     }
 
-    public String buildQueryComics(String comicId) {
-        String timestamp = String.valueOf(System.currentTimeMillis());
-        String hash = generateHash(timestamp);
-        return API_LINK + "/comics/" + comicId + "?ts=" + timestamp + "&apikey=" + PUBLIC_KEY + "&hash=" + hash;
+    public CompletableFuture<UpstreamResult<Character>> getCharactersPage(UpstreamQuery query, FieldSet fields, UpstreamPriority priority) {
+        return getResult(query, fields, priority, parser -> entityMapper.readCharacter(parser, fields));
     }
 
-    public String buildQueryComicsByCharacters(String comicId) {
-        String timestamp = String.valueOf(System.currentTimeMillis());
-        String hash = generateHash(timestamp);
-        return API_LINK + "/comics/" + comicId + "/characters" + "?ts=" + timestamp + "&apikey=" + PUBLIC_KEY + "&hash=" + hash;
+    public CompletableFuture<UpstreamResult<Comic>> getComicsPage(UpstreamQuery query, UpstreamPriority priority) {
+        return getComicsPage(query, null, priority);
     }
 
-    public JSONArray getResultWithParam(String request, Map<String, String> param) {
-        request = addParam(request, param);
-        return getResult(request);
+    public CompletableFuture<UpstreamResult<Comic>> getComicsPage(UpstreamQuery query, FieldSet fields, UpstreamPriority priority) {
+        return getResult(query, fields, priority, parser -> entityMapper.readComic(parser, fields));
     }
 
-    public JSONArray getResult(String request) {
-        JSONObject jsonObject = new JSONObject();
-        try {
-            jsonObject = getJson(request);
-        } catch (IOException e) {
-            e.printStackTrace();
+    // Partially decoded pages are cached next to full ones under their own key; a fresh full page serves any selection
+    private <T> CompletableFuture<UpstreamResult<T>> getResult(UpstreamQuery query, FieldSet fields, UpstreamPriority priority, ResultReader<T> reader) {
+        String key = fields == null ? query.canonical() : query.canonical() + "#fields=" + fields;
+        UpstreamResult<T> cached = upstreamCache.get(key);
+        if (cached != null && cached.isFresh()) {
+            return CompletableFuture.completedFuture(cached);
         }
-        if (jsonObject == null || jsonObject.isEmpty() || !String.valueOf(jsonObject.get("code")).equals("200")) {
-            return null;
+        if (cached == null && fields != null) {
+            UpstreamResult<T> full = upstreamCache.get(query.canonical());
+            if (full != null && full.isFresh()) {
+                return CompletableFuture.completedFuture(full);
+            }
         }
-        return jsonObject.getJSONObject("data").getJSONArray("results");
+        if (cached != null && cached.isRevalidatable(staleWhileRevalidate.toMillis())) {
+            // Answer with the expired copy now and refresh it off the request path, below interactive traffic
+            UpstreamPriority refresh = priority == UpstreamPriority.INTERACTIVE ? UpstreamPriority.PREFETCH : priority;
+            singleFlight.execute(key, () -> fetch(query, refresh, key, cached, reader));
+            return CompletableFuture.completedFuture(cached.asStale());
+        }
+        return singleFlight.execute(key, () -> fetch(query, priority, key, cached, reader));
     }
 
-    public String uploadImage(String url) {
-        if (url.equals("")) {
-            return null;
-        }
-        String path;
-        try {
-            URI uri = new URI(url);
-            String file = String.valueOf(Paths.get(uri.getPath()).getFileName());
-            InputStream is = uri.toURL().openStream();
-            if (!Files.exists(Path.of("images/"))) {
-                Files.createDirectory(Path.of("images/"));
+    private <T> CompletableFuture<UpstreamResult<T>> fetch(UpstreamQuery query, UpstreamPriority priority, String key, UpstreamResult<T> cached, ResultReader<T> reader) {
+        if (!circuitBreaker.tryAcquire()) {
+            if (cached != null) {
+                return CompletableFuture.completedFuture(cached.asStale());
             }
-            if (!Files.exists(Path.of("images/" + file))) {
-                Files.copy(is, Path.of("images/" + file));
-            }
-            path = "images/" + file;
-            is.close();
-        } catch (Exception e) {
-            e.printStackTrace();
-            return null;
+            return CompletableFuture.failedFuture(new UpstreamUnavailableException("Marvel API circuit is open", circuitBreaker.getRetryAfterSeconds()));
         }
-        return path;
-    }
-
-    public Map<String, String> createMap(String format, String title, String titleStartsWith, String orderBy, int limit, int offset) {
-        Map<String, String> param = new HashMap<>();
-        param.put("&format=", format);
-        param.put("&title=", title);
-        param.put("&titleStartsWith=", titleStartsWith);
-        param.put("&orderBy=", orderBy);
-        param.put("&limit=", String.valueOf(limit));
-        param.put("&offset=", String.valueOf(offset));
-        return param;
-    }
-
-    public Map<String, String> createMap(String name, String nameStartsWith, String orderBy, int limit, int offset) {
-        Map<String, String> param = new HashMap<>();
-        param.put("&name=", name);
-        param.put("&nameStartsWith=", nameStartsWith);
-        param.put("&orderBy=", orderBy);
-        param.put("&limit=", String.valueOf(limit));
-        param.put("&offset=", String.valueOf(offset));
-        return param;
+        String etag = cached == null ? null : cached.getEtag();
+        // Signed at dispatch time, so a call that waited in the queue still carries a current timestamp
+        return upstreamHedging.call(priority, UpstreamRoute.of(key), () -> upstreamClient.get(upstreamSigner.url(query), etag))
+                .handle((response, error) -> {
+                    if (error != null) {
+                        Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                        if (cause instanceof RejectedExecutionException) {
+                            circuitBreaker.record(UpstreamCircuitBreaker.Outcome.IGNORED);
+                            return fallback(cached, cause.getMessage(), upstreamScheduler.getRetryAfterSeconds());
+                        }
+                        circuitBreaker.record(UpstreamCircuitBreaker.Outcome.FAILURE);
+                        log.warn("Marvel API request failed: {}", key, cause);
+                        return fallback(cached, "Marvel API request failed", circuitBreaker.getRetryAfterSeconds());
+                    }
+                    if (response.getStatus() >= 500 || response.getStatus() == 429) {
+                        circuitBreaker.record(UpstreamCircuitBreaker.Outcome.FAILURE);
+                        return fallback(cached, "Marvel API answered " + response.getStatus(), circuitBreaker.getRetryAfterSeconds());
+                    }
+                    circuitBreaker.record(UpstreamCircuitBreaker.Outcome.SUCCESS);
+                    return store(key, cached, response, reader);
+                });
+    }
+
+    // Any copy beats an error page; without one the caller gets a 503 instead of waiting on a dead upstream
+    private <T> UpstreamResult<T> fallback(UpstreamResult<T> cached, String reason, long retryAfterSeconds) {
+        if (cached != null) {
+            return cached.asStale();
+        }
+        throw new UpstreamUnavailableException(reason, retryAfterSeconds);
     }
 
-    public List<Comic> getComicsFromResult(JSONArray results) {
-        if (results == null) {
+    private <T> UpstreamResult<T> store(String key, UpstreamResult<T> cached, UpstreamResponse response, ResultReader<T> reader) {
+        try (response) {
+            if (response.isNotModified() && cached != null) {
+                upstreamCache.revalidate(key, cached);
+                return cached;
+            }
+            if (!response.isOk()) {
+                return null;
+            }
+            UpstreamRoute route = UpstreamRoute.of(key);
+            long start = System.nanoTime();
+            UpstreamResult<T> result = readResults(response.getBody(), reader);
+            decodeTimers.get(route).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            if (result == null) {
+                return null;
+            }
+            payloadSizes.get(route).record(result.getWeight());
+            if (result.getEtag() == null && response.getEtag() != null) {
+                result = result.withEtag(response.getEtag());
+            }
+            upstreamCache.put(key, result);
+            return result;
+        } catch (IOException e) {
+            log.warn("Could not decode Marvel response: {}", key, e);
             return null;
         }
-        List<Comic> comics = new ArrayList<>();
-        if (results.isEmpty()) {
-            return comics;
-        }
-        for (int i = 0; i < results.length(); i++) {
-            comics.add(entityMapper.mapperComic(results, i));
-        }
-        return comics;
     }
 
-    public List<Character> getCharactersFromResult(JSONArray results) {
-        if (results == null) {
-            return null;
-        }
-        List<Character> characters = new ArrayList<>();
-        if (results.isEmpty()) {
-            return characters;
-        }
-        for (int i = 0; i < results.length(); i++) {
-            characters.add(entityMapper.mapperCharacter(results, i));
+    <T> UpstreamResult<T> readResults(InputStream is, ResultReader<T> reader) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(is)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            String code = null;
+            String etag = null;
+            DataBlock<T> data = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                if (field.equals("code")) {
+                    code = parser.getValueAsString();
+                } else if (field.equals("etag")) {
+                    etag = parser.getValueAsString();
+                } else if (field.equals("data") && parser.currentToken() == JsonToken.START_OBJECT) {
+                    data = readData(parser, reader);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            if (!"200".equals(code) || data == null || data.results == null) {
+                return null;
+            }
+            return new UpstreamResult<>(data.results, data.total, etag, parser.getCurrentLocation().getByteOffset());
         }
-        return characters;
     }
 
-    private String addParam(String request, Map<String, String> param) {
-        StringBuilder requestBuilder = new StringBuilder(request);
-        for (String key : param.keySet()) {
-            if (param.get(key) != null) {
-                requestBuilder.append(key).append(param.get(key));
+    private <T> DataBlock<T> readData(JsonParser parser, ResultReader<T> reader) throws IOException {
+        DataBlock<T> data = new DataBlock<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if (field.equals("total")) {
+                data.total = parser.getValueAsInt();
+            } else if (field.equals("results") && parser.currentToken() == JsonToken.START_ARRAY) {
+                data.results = new ArrayList<>();
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    data.results.add(reader.read(parser));
+                }
+            } else {
+                parser.skipChildren();
             }
         }
-        return requestBuilder.toString();
+        return data;
     }
 
-    private JSONObject getJson(String url) throws IOException, JSONException {
-        InputStream is;
-        try {
-            is = new URL(url).openStream();
-        } catch (FileNotFoundException e) {
-            return null;
-        }
-        BufferedReader reader = new BufferedReader(new InputStreamReader(is));
-        StringBuilder builder = new StringBuilder();
-        int i;
-        while ((i = reader.read()) != -1) {
-            builder.append((char) i);
-        }
-        is.close();
-        return new JSONObject(builder.toString());
+    interface ResultReader<T> {
+        T read(JsonParser parser) throws IOException;
     }
 
-    private String generateHash(String timestamp) {
-        String hash = timestamp + PRIVATE_KEY + PUBLIC_KEY;
-        MessageDigest digest = null;
-        try {
-            digest = MessageDigest.getInstance("MD5");
-            digest.reset();
-            digest.update(hash.getBytes("UTF-8"));
-        } catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
-            e.printStackTrace();
-        }
-        byte[] bytes = digest.digest();
-        BigInteger bigInt = new BigInteger(1,bytes);
-        StringBuilder result = new StringBuilder(bigInt.toString(16));
-        while(result.length() < 32 ){
-            result.insert(0, "0");
-        }
-        return result.toString();
+    private static class DataBlock<T> {
+        private List<T> results;
+        private int total;
     }
 
 }
@@ -0,0 +1,114 @@
+package main.service;
+
+import main.entities.Character;
+import main.entities.Comic;
+import main.repository.CharactersRepository;
+import main.repository.ComicsRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+@Service
+public class MirrorService {
+
+    private static final Logger log = LoggerFactory.getLogger(MirrorService.class);
+
+    private final CharactersRepository charactersRepository;
+    private final ComicsRepository comicsRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ThreadPoolTaskExecutor mirrorExecutor;
+
+    @Value("${mirror.enabled:true}")
+    private boolean enabled;
+    @Value("${mirror.staleness:24h}")
+    private Duration staleness;
+    @Value("${mirror.stale-while-revalidate:24h}")
+    private Duration staleWhileRevalidate;
+
+    @Autowired
+    public MirrorService(CharactersRepository charactersRepository, ComicsRepository comicsRepository, ApplicationEventPublisher eventPublisher,
+                         @Qualifier("mirrorExecutor") ThreadPoolTaskExecutor mirrorExecutor) {
+        this.charactersRepository = charactersRepository;
+        this.comicsRepository = comicsRepository;
+        this.eventPublisher = eventPublisher;
+        this.mirrorExecutor = mirrorExecutor;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean isFresh(LocalDateTime fetchedAt) {
+        if (fetchedAt == null) {
+            return true;
+        }
+        return fetchedAt.plus(staleness).isAfter(LocalDateTime.now());
+    }
+
+    // Old enough to refresh, young enough to answer with while the refresh runs
+    public boolean isRevalidatable(LocalDateTime fetchedAt) {
+        return fetchedAt == null || fetchedAt.plus(staleness).plus(staleWhileRevalidate).isAfter(LocalDateTime.now());
+    }
+
+    // Runs a mirror lookup on the mirror pool so request threads never wait on Mongo
+    public <T> CompletableFuture<T> read(Supplier<T> lookup) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        mirrorExecutor.execute(new Read(() -> {
+            try {
+                result.complete(lookup.get());
+            } catch (Exception e) {
+                result.completeExceptionally(e);
+            }
+        }));
+        return result;
+    }
+
+    @Async("mirrorExecutor")
+    public void saveCharacter(Character character) {
+        try {
+            charactersRepository.upsertMirrored(List.of(character));
+            eventPublisher.publishEvent(new CollectionChangedEvent(IngestionService.CHARACTERS, List.of(character.getId()), true));
+        } catch (Exception e) {
+            log.warn("Could not mirror character {}", character.getId(), e);
+        }
+    }
+
+    @Async("mirrorExecutor")
+    public void saveComic(Comic comic) {
+        try {
+            comicsRepository.upsertMirrored(List.of(comic));
+            eventPublisher.publishEvent(new CollectionChangedEvent(IngestionService.COMICS, List.of(comic.getId()), true));
+        } catch (Exception e) {
+            log.warn("Could not mirror comic {}", comic.getId(), e);
+        }
+    }
+
+    // Marks lookups for the mirror pool's rejection policy: a caller waits on them, so unlike writes they can't be dropped
+    static final class Read implements Runnable {
+
+        private final Runnable lookup;
+
+        Read(Runnable lookup) {
+            this.lookup = lookup;
+        }
+
+        @Override
+        public void run() {
+            lookup.run();
+        }
+
+    }
+
+}
@@ -0,0 +1,42 @@
+package main.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.data.util.CloseableIterator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Open Mongo cursor written out as newline-delimited JSON. Blocking writes hold the cursor back until the
+ * client has taken the previous output, so at most one server batch is in memory however large the export.
+ */
+public class NdjsonExport<T> {
+
+    private final CloseableIterator<T> cursor;
+    private final ObjectWriter writer;
+
+    NdjsonExport(CloseableIterator<T> cursor, ObjectMapper objectMapper, FieldSet fields) {
+        this.cursor = cursor;
+        ObjectWriter writer = fields == null ? objectMapper.writer() : objectMapper.writer(fields.filters());
+        // The generator's buffer decides when bytes go out, not every document
+        this.writer = writer.without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    // Closes the cursor in every case, including a client that disconnects halfway
+    public long writeTo(OutputStream out) throws IOException {
+        long written = 0;
+        try (CloseableIterator<T> documents = cursor; JsonGenerator generator = writer.getFactory().createGenerator(out)) {
+            generator.setRootValueSeparator(null);
+            while (documents.hasNext()) {
+                writer.writeValue(generator, documents.next());
+                generator.writeRaw('\n');
+                written++;
+            }
+        }
+        return written;
+    }
+
+}
@@ -0,0 +1,88 @@
+package main.service;
+
+import main.api.Suggestion;
+import main.repository.MongoQueries;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Immutable sorted array of normalized labels. A prefix is a contiguous range of it, found by binary search,
+ * so a lookup touches only the entries it returns.
+ */
+public class PrefixIndex {
+
+    public static final PrefixIndex EMPTY = new PrefixIndex(new String[0], new String[0], new String[0]);
+
+    private final String[] keys;
+    private final String[] labels;
+    private final String[] ids;
+
+    private PrefixIndex(String[] keys, String[] labels, String[] ids) {
+        this.keys = keys;
+        this.labels = labels;
+        this.ids = ids;
+    }
+
+    public int size() {
+        return keys.length;
+    }
+
+    public List<Suggestion> lookup(String prefix, int limit) {
+        String key = MongoQueries.searchKey(prefix);
+        if (key == null || key.isEmpty() || limit < 1) {
+            return Collections.emptyList();
+        }
+        List<Suggestion> suggestions = new ArrayList<>(Math.min(limit, 16));
+        for (int i = lowerBound(key); i < keys.length && suggestions.size() < limit && keys[i].startsWith(key); i++) {
+            suggestions.add(new Suggestion(ids[i], labels[i]));
+        }
+        return suggestions;
+    }
+
+    private int lowerBound(String key) {
+        int low = 0;
+        int high = keys.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (keys[middle].compareTo(key) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    public static class Builder {
+
+        private final List<String[]> entries = new ArrayList<>();
+
+        public Builder add(String id, String label) {
+            String key = MongoQueries.searchKey(label);
+            if (id != null && key != null && !key.isEmpty()) {
+                entries.add(new String[]{key, label, id});
+            }
+            return this;
+        }
+
+        public PrefixIndex build() {
+            String[][] sorted = entries.toArray(new String[0][]);
+            Arrays.sort(sorted, Comparator.comparing((String[] entry) -> entry[0]).thenComparing(entry -> entry[2]));
+            String[] keys = new String[sorted.length];
+            String[] labels = new String[sorted.length];
+            String[] ids = new String[sorted.length];
+            for (int i = 0; i < sorted.length; i++) {
+                keys[i] = sorted[i][0];
+                // Most labels are already lower case; share the string instead of keeping two copies
+                labels[i] = sorted[i][1].equals(keys[i]) ? keys[i] : sorted[i][1];
+                ids[i] = sorted[i][2];
+            }
+            return new PrefixIndex(keys, labels, ids);
+        }
+    }
+
+}
@@ -0,0 +1,251 @@
+package main.service;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Immutable bipartite character-comic graph in CSR form: sorted id arrays map Marvel ids to dense indexes,
+ * and each side keeps an offsets array into one flat int array of neighbour indexes, sorted per row.
+ */
+public class RelationGraph {
+
+    public static final RelationGraph EMPTY = new Builder().build();
+
+    // Below this many edges a neighbour count is cheaper on the calling thread than split across the pool
+    private static final int PARALLEL_THRESHOLD = 1 << 14;
+
+    private final int[] characterIds;
+    private final int[] comicIds;
+    private final int[] characterOffsets;
+    private final int[] characterComics;
+    private final int[] comicOffsets;
+    private final int[] comicCharacters;
+
+    private RelationGraph(int[] characterIds, int[] comicIds, int[] characterOffsets, int[] characterComics,
+                          int[] comicOffsets, int[] comicCharacters) {
+        this.characterIds = characterIds;
+        this.comicIds = comicIds;
+        this.characterOffsets = characterOffsets;
+        this.characterComics = characterComics;
+        this.comicOffsets = comicOffsets;
+        this.comicCharacters = comicCharacters;
+    }
+
+    // Marvel ids are positive ints; anything else (ObjectId keys of local documents) maps to -1
+    public static int parseId(String id) {
+        try {
+            return id == null ? -1 : Integer.parseInt(id);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    public int characterCount() {
+        return characterIds.length;
+    }
+
+    public int comicCount() {
+        return comicIds.length;
+    }
+
+    public int edgeCount() {
+        return characterComics.length;
+    }
+
+    public long sizeInBytes() {
+        return 4L * (characterIds.length + comicIds.length + characterOffsets.length + characterComics.length
+                + comicOffsets.length + comicCharacters.length);
+    }
+
+    public boolean hasCharacter(int characterId) {
+        return Arrays.binarySearch(characterIds, characterId) >= 0;
+    }
+
+    public boolean hasComic(int comicId) {
+        return Arrays.binarySearch(comicIds, comicId) >= 0;
+    }
+
+    public int[] comicsOf(int characterId) {
+        int character = Arrays.binarySearch(characterIds, characterId);
+        if (character < 0) {
+            return new int[0];
+        }
+        return toIds(characterComics, characterOffsets[character], characterOffsets[character + 1], comicIds);
+    }
+
+    public int[] charactersOf(int comicId) {
+        int comic = Arrays.binarySearch(comicIds, comicId);
+        if (comic < 0) {
+            return new int[0];
+        }
+        return toIds(comicCharacters, comicOffsets[comic], comicOffsets[comic + 1], characterIds);
+    }
+
+    // Comics both characters appear in, by merging their sorted rows
+    public int[] coAppearances(int characterId, int otherId) {
+        int first = Arrays.binarySearch(characterIds, characterId);
+        int second = Arrays.binarySearch(characterIds, otherId);
+        if (first < 0 || second < 0) {
+            return new int[0];
+        }
+        int i = characterOffsets[first];
+        int iEnd = characterOffsets[first + 1];
+        int j = characterOffsets[second];
+        int jEnd = characterOffsets[second + 1];
+        int[] shared = new int[Math.min(iEnd - i, jEnd - j)];
+        int count = 0;
+        while (i < iEnd && j < jEnd) {
+            int left = characterComics[i];
+            int right = characterComics[j];
+            if (left == right) {
+                shared[count++] = comicIds[left];
+                i++;
+                j++;
+            } else if (left < right) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return Arrays.copyOf(shared, count);
+    }
+
+    /**
+     * Characters sharing the most comics with the given one, as {id, sharedComics} pairs, most shared first.
+     * Counting fans out over the character's comics in parallel once there are enough edges to pay for it.
+     */
+    public int[][] topNeighbours(int characterId, int limit) {
+        int character = Arrays.binarySearch(characterIds, characterId);
+        if (character < 0 || limit < 1) {
+            return new int[0][];
+        }
+        int from = characterOffsets[character];
+        int to = characterOffsets[character + 1];
+        long edges = 0;
+        for (int i = from; i < to; i++) {
+            int comic = characterComics[i];
+            edges += comicOffsets[comic + 1] - comicOffsets[comic];
+        }
+        IntStream comics = IntStream.range(from, to);
+        if (edges >= PARALLEL_THRESHOLD) {
+            comics = comics.parallel();
+        }
+        int[] counts = comics.collect(() -> new int[characterIds.length], (partial, i) -> {
+            int comic = characterComics[i];
+            for (int k = comicOffsets[comic]; k < comicOffsets[comic + 1]; k++) {
+                partial[comicCharacters[k]]++;
+            }
+        }, (left, right) -> {
+            for (int k = 0; k < left.length; k++) {
+                left[k] += right[k];
+            }
+        });
+        counts[character] = 0;
+        return top(counts, limit);
+    }
+
+    private int[][] top(int[] counts, int limit) {
+        // Bounded selection: keep the best `limit` entries in a small sorted window
+        int[] best = new int[limit];
+        int size = 0;
+        for (int candidate = 0; candidate < counts.length; candidate++) {
+            int count = counts[candidate];
+            if (count == 0 || (size == limit && count <= counts[best[size - 1]])) {
+                continue;
+            }
+            int position = size == limit ? size - 1 : size++;
+            while (position > 0 && counts[best[position - 1]] < count) {
+                best[position] = best[position - 1];
+                position--;
+            }
+            best[position] = candidate;
+        }
+        int[][] result = new int[size][];
+        for (int i = 0; i < size; i++) {
+            result[i] = new int[]{characterIds[best[i]], counts[best[i]]};
+        }
+        return result;
+    }
+
+    private static int[] toIds(int[] edges, int from, int to, int[] ids) {
+        int[] result = new int[to - from];
+        for (int i = from; i < to; i++) {
+            result[i - from] = ids[edges[i]];
+        }
+        return result;
+    }
+
+    public static class Builder {
+
+        private int[] comics = new int[1024];
+        private int[] characters = new int[1024];
+        private int size;
+
+        public Builder add(int comicId, int characterId) {
+            if (size == comics.length) {
+                comics = Arrays.copyOf(comics, size * 2);
+                characters = Arrays.copyOf(characters, size * 2);
+            }
+            comics[size] = comicId;
+            characters[size] = characterId;
+            size++;
+            return this;
+        }
+
+        public RelationGraph build() {
+            int[] comicIds = distinct(comics, size);
+            int[] characterIds = distinct(characters, size);
+            // Dense indexes for every edge; duplicates are dropped once rows are sorted
+            int[] comicIndexes = new int[size];
+            int[] characterIndexes = new int[size];
+            for (int i = 0; i < size; i++) {
+                comicIndexes[i] = Arrays.binarySearch(comicIds, comics[i]);
+                characterIndexes[i] = Arrays.binarySearch(characterIds, characters[i]);
+            }
+            int[][] byCharacter = rows(characterIndexes, comicIndexes, characterIds.length);
+            int[][] byComic = rows(comicIndexes, characterIndexes, comicIds.length);
+            return new RelationGraph(characterIds, comicIds, byCharacter[0], byCharacter[1], byComic[0], byComic[1]);
+        }
+
+        private int[][] rows(int[] sources, int[] targets, int rowCount) {
+            int[] offsets = new int[rowCount + 1];
+            for (int i = 0; i < size; i++) {
+                offsets[sources[i] + 1]++;
+            }
+            for (int row = 0; row < rowCount; row++) {
+                offsets[row + 1] += offsets[row];
+            }
+            int[] cursor = Arrays.copyOf(offsets, rowCount);
+            int[] edges = new int[size];
+            for (int i = 0; i < size; i++) {
+                edges[cursor[sources[i]]++] = targets[i];
+            }
+            int[] compactOffsets = new int[rowCount + 1];
+            int write = 0;
+            for (int row = 0; row < rowCount; row++) {
+                Arrays.sort(edges, offsets[row], offsets[row + 1]);
+                compactOffsets[row] = write;
+                for (int i = offsets[row]; i < offsets[row + 1]; i++) {
+                    if (i == offsets[row] || edges[i] != edges[i - 1]) {
+                        edges[write++] = edges[i];
+                    }
+                }
+            }
+            compactOffsets[rowCount] = write;
+            return new int[][]{compactOffsets, Arrays.copyOf(edges, write)};
+        }
+
+        private static int[] distinct(int[] values, int size) {
+            int[] sorted = Arrays.copyOf(values, size);
+            Arrays.sort(sorted);
+            int count = 0;
+            for (int i = 0; i < sorted.length; i++) {
+                if (i == 0 || sorted[i] != sorted[i - 1]) {
+                    sorted[count++] = sorted[i];
+                }
+            }
+            return Arrays.copyOf(sorted, count);
+        }
+    }
+
+}
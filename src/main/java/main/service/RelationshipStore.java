@@ -0,0 +1,98 @@
+package main.service;
+
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+@Service
+public class RelationshipStore {
+
+    private static final Logger log = LoggerFactory.getLogger(RelationshipStore.class);
+
+    private final MongoTemplate mongoTemplate;
+    private final AtomicBoolean changed = new AtomicBoolean(true);
+    private volatile RelationGraph graph = RelationGraph.EMPTY;
+    private volatile long builtMillis;
+
+    @Value("${relations.enabled:true}")
+    private boolean enabled;
+
+    @Autowired
+    public RelationshipStore(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    public RelationGraph getGraph() {
+        return graph;
+    }
+
+    @EventListener
+    public void onCollectionChanged(CollectionChangedEvent event) {
+        if (IngestionService.COMICS.equals(event.getCollection())) {
+            changed.set(true);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        RelationGraph current = graph;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("characters", current.characterCount());
+        stats.put("comics", current.comicCount());
+        stats.put("edges", current.edgeCount());
+        stats.put("bytes", current.sizeInBytes());
+        stats.put("buildMillis", builtMillis);
+        return stats;
+    }
+
+    // Edges only live on comics, so only comic writes and ingestion runs trigger a rebuild
+    @Scheduled(fixedDelayString = "#{T(org.springframework.boot.convert.DurationStyle).detectAndParse('${relations.refresh:60s}').toMillis()}")
+    public void refresh() {
+        if (!enabled || !changed.getAndSet(false)) {
+            return;
+        }
+        try {
+            long start = System.nanoTime();
+            graph = build();
+            builtMillis = (System.nanoTime() - start) / 1_000_000;
+        } catch (Exception e) {
+            changed.set(true);
+            log.warn("Could not rebuild the relationship graph", e);
+        }
+    }
+
+    private RelationGraph build() {
+        Query query = new Query(Criteria.where("characterIds").exists(true));
+        query.fields().include("characterIds");
+        RelationGraph.Builder builder = new RelationGraph.Builder();
+        try (CloseableIterator<Document> documents = mongoTemplate.stream(query, Document.class, IngestionService.COMICS)) {
+            while (documents.hasNext()) {
+                Document document = documents.next();
+                // Only Marvel ids take part; locally created comics keep ObjectId keys
+                int comicId = RelationGraph.parseId(String.valueOf(document.get("_id")));
+                List<?> characterIds = document.get("characterIds", List.class);
+                if (comicId < 0 || characterIds == null) {
+                    continue;
+                }
+                for (Object characterId : characterIds) {
+                    builder.add(comicId, ((Number) characterId).intValue());
+                }
+            }
+        }
+        return builder.build();
+    }
+
+}
@@ -0,0 +1,153 @@
+package main.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPOutputStream;
+
+@Service
+public class ResponseCache {
+
+    // Larger writes (bulk loads) are recorded as touching the whole collection rather than id by id
+    private static final int MAX_TRACKED_IDS = 1000;
+
+    private final Cache<String, CachedResponse> cache;
+    private final boolean enabled;
+    private final int gzipMinSize;
+    // Per collection, bumped on every local write to it; entries are checked against it when read, never scanned
+    private final Map<String, AtomicLong> generations = Map.of(
+            IngestionService.CHARACTERS, new AtomicLong(), IngestionService.COMICS, new AtomicLong());
+    // Generation at which each written document last changed, kept as long as an entry rendered before it can live
+    private final Cache<String, Long> documentWrites;
+
+    private final LongAdder notModified = new LongAdder();
+    private final LongAdder invalidated = new LongAdder();
+
+    public ResponseCache(@Value("${responses.cache.enabled:true}") boolean enabled,
+                         @Value("${responses.cache.max-weight:32MB}") DataSize maxWeight,
+                         @Value("${responses.cache.ttl:60s}") Duration ttl,
+                         @Value("${responses.cache.gzip-min-size:1KB}") DataSize gzipMinSize,
+                         MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.gzipMinSize = (int) gzipMinSize.toBytes();
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxWeight.toBytes())
+                .weigher((String key, CachedResponse response) -> key.length() + response.getWeight())
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        // Outlives every entry that could have been rendered before the write, including one put just as it landed
+        this.documentWrites = Caffeine.newBuilder().expireAfterWrite(ttl.multipliedBy(2)).build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "responses");
+        FunctionCounter.builder("marvel.responses.not.modified", notModified, LongAdder::sum).register(meterRegistry);
+        FunctionCounter.builder("marvel.responses.invalidated", invalidated, LongAdder::sum).register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public CachedResponse get(String key) {
+        CachedResponse response = cache.getIfPresent(key);
+        if (response != null && !isCurrent(response)) {
+            if (cache.asMap().remove(key, response)) {
+                invalidated.increment();
+            }
+            return null;
+        }
+        return response;
+    }
+
+    // Taken before rendering and stored with the response; relationship lists read both collections
+    public long generation(String collection, boolean relation) {
+        if (relation) {
+            return generations.get(IngestionService.CHARACTERS).get() + generations.get(IngestionService.COMICS).get();
+        }
+        return generations.get(collection).get();
+    }
+
+    // A response rendered across a write is dropped here, or by the first get after a write that races the put
+    public void put(String key, CachedResponse response) {
+        if (isCurrent(response)) {
+            cache.put(key, response);
+        }
+    }
+
+    public byte[] gzip(byte[] body) {
+        if (body.length < gzipMinSize) {
+            return null;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 4);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(body);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    public void notModified() {
+        notModified.increment();
+    }
+
+    // Mirror writes store what upstream-sourced responses already show, so they leave the cache alone
+    @EventListener
+    public void onCollectionChanged(CollectionChangedEvent event) {
+        AtomicLong generation = generations.get(event.getCollection());
+        if (event.isMirrored() || generation == null) {
+            return;
+        }
+        long current = generation.incrementAndGet();
+        if (event.getIds() == null || event.getIds().size() > MAX_TRACKED_IDS) {
+            documentWrites.put(event.getCollection(), current);
+            return;
+        }
+        for (String id : event.getIds()) {
+            documentWrites.put(event.getCollection() + "/" + id, current);
+        }
+    }
+
+    // A single document stays valid through writes to other documents of its collection
+    private boolean isCurrent(CachedResponse response) {
+        if (response.isRelation() || response.getId() == null) {
+            return response.getGeneration() == generation(response.getCollection(), response.isRelation());
+        }
+        return !writtenSince(response.getCollection(), response.getGeneration())
+                && !writtenSince(response.getCollection() + "/" + response.getId(), response.getGeneration());
+    }
+
+    private boolean writtenSince(String key, long generation) {
+        Long written = documentWrites.getIfPresent(key);
+        return written != null && written > generation;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("hits", cache.stats().hitCount());
+        stats.put("misses", cache.stats().missCount());
+        stats.put("notModified", notModified.sum());
+        stats.put("invalidated", invalidated.sum());
+        stats.put("evictions", cache.stats().evictionCount());
+        stats.put("entries", cache.estimatedSize());
+        stats.put("weightBytes", cache.policy().eviction()
+                .map(eviction -> eviction.weightedSize().orElse(0L))
+                .orElse(0L));
+        return stats;
+    }
+
+}
@@ -0,0 +1,46 @@
+package main.service;
+
+import main.repository.CharactersRepository;
+import main.repository.ComicsRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+
+/**
+ * Local listings filter and sort on nameKey/titleKey, so a document stored before those fields existed would
+ * silently drop out of them. Derives the missing keys once at boot, before the node takes traffic.
+ */
+@Service
+public class SearchKeyBackfill implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(SearchKeyBackfill.class);
+    private static final int BATCH_SIZE = 1000;
+
+    private final CharactersRepository charactersRepository;
+    private final ComicsRepository comicsRepository;
+
+    @Autowired
+    public SearchKeyBackfill(CharactersRepository charactersRepository, ComicsRepository comicsRepository) {
+        this.charactersRepository = charactersRepository;
+        this.comicsRepository = comicsRepository;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        try {
+            long characters = charactersRepository.backfillSearchKeys(BATCH_SIZE);
+            long comics = comicsRepository.backfillSearchKeys(BATCH_SIZE);
+            if (characters + comics > 0) {
+                log.info("Derived search keys for {} characters and {} comics", characters, comics);
+            }
+        } catch (DataAccessException e) {
+            // Not fatal: the documents stay out of local listings until the next start
+            log.warn("Could not backfill search keys", e);
+        }
+    }
+
+}
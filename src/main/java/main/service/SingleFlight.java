@@ -0,0 +1,91 @@
+package main.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+@Service
+public class SingleFlight {
+
+    private final ConcurrentHashMap<String, CompletableFuture<Object>> calls = new ConcurrentHashMap<>();
+    private final Duration maxWait;
+
+    private final LongAdder leaders = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+
+    public SingleFlight(@Value("${upstream.single-flight.max-wait:10s}") Duration maxWait, MeterRegistry meterRegistry) {
+        this.maxWait = maxWait;
+        Gauge.builder("marvel.single.flight.in.flight", calls, Map::size).register(meterRegistry);
+        FunctionCounter.builder("marvel.single.flight.calls", leaders, LongAdder::sum).tag("role", "leader").register(meterRegistry);
+        FunctionCounter.builder("marvel.single.flight.calls", coalesced, LongAdder::sum).tag("role", "coalesced").register(meterRegistry);
+        FunctionCounter.builder("marvel.single.flight.timeouts", timeouts, LongAdder::sum).register(meterRegistry);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> execute(String key, Supplier<CompletableFuture<T>> call) {
+        CompletableFuture<Object> flight = new CompletableFuture<>();
+        CompletableFuture<Object> existing = calls.putIfAbsent(key, flight);
+        if (existing != null) {
+            coalesced.increment();
+            return (CompletableFuture<T>) await(existing);
+        }
+        leaders.increment();
+        CompletableFuture<T> result;
+        try {
+            result = call.get();
+        } catch (RuntimeException | Error e) {
+            calls.remove(key, flight);
+            flight.completeExceptionally(e);
+            throw e;
+        }
+        result.whenComplete((value, error) -> {
+            calls.remove(key, flight);
+            if (error != null) {
+                flight.completeExceptionally(error);
+            } else {
+                flight.complete(value);
+            }
+        });
+        return result;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("inFlight", calls.size());
+        stats.put("leaders", leaders.sum());
+        stats.put("coalesced", coalesced.sum());
+        stats.put("timeouts", timeouts.sum());
+        return stats;
+    }
+
+    private CompletableFuture<Object> await(CompletableFuture<Object> flight) {
+        // Waiters get their own copy, so a waiter timing out never completes the leader's flight. Giving up on a
+        // slow upstream is reported like any other unavailability, as a 503, never as an empty answer
+        return flight.copy()
+                .orTimeout(maxWait.toMillis(), TimeUnit.MILLISECONDS)
+                .exceptionally(error -> {
+                    Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                    if (cause instanceof TimeoutException) {
+                        timeouts.increment();
+                        throw new CompletionException(new UpstreamUnavailableException(
+                                "Timed out waiting for an identical Marvel API request", 1));
+                    }
+                    throw error instanceof CompletionException ? (CompletionException) error : new CompletionException(error);
+                });
+    }
+
+}
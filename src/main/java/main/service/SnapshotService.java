@@ -0,0 +1,155 @@
+package main.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the hottest upstream cache entries on local disk so a restarted node starts warm instead of refetching
+ * them from Marvel. The file is rewritten periodically and on shutdown, and loaded once at boot.
+ */
+@Service
+public class SnapshotService implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(SnapshotService.class);
+
+    private final UpstreamCache upstreamCache;
+    private final boolean enabled;
+    private final Path path;
+    private final int maxEntries;
+    private final Duration retain;
+    private final Timer loadTimer;
+    private final Timer writeTimer;
+
+    private volatile String loadOutcome = "none";
+    private volatile int loadedEntries;
+    private volatile long loadMillis;
+    private volatile int writtenEntries;
+    private volatile long writtenBytes;
+    private volatile long writeMillis;
+
+    @Autowired
+    public SnapshotService(UpstreamCache upstreamCache,
+                           @Value("${snapshot.enabled:true}") boolean enabled,
+                           @Value("${snapshot.path:snapshots/upstream-cache.bin}") String path,
+                           @Value("${snapshot.max-entries:10000}") int maxEntries,
+                           @Value("${upstream.cache.retain:24h}") Duration retain,
+                           MeterRegistry meterRegistry) {
+        this.upstreamCache = upstreamCache;
+        this.enabled = enabled;
+        this.path = Paths.get(path).toAbsolutePath();
+        this.maxEntries = maxEntries;
+        this.retain = retain;
+        this.loadTimer = Timer.builder("marvel.snapshot").tag("operation", "load").register(meterRegistry);
+        this.writeTimer = Timer.builder("marvel.snapshot").tag("operation", "write").register(meterRegistry);
+    }
+
+    // Application runners finish before the readiness state flips to accepting traffic
+    @Override
+    public void run(ApplicationArguments args) {
+        if (enabled) {
+            load();
+        }
+    }
+
+    @Scheduled(initialDelayString = "#{T(org.springframework.boot.convert.DurationStyle).detectAndParse('${snapshot.interval:5m}').toMillis()}",
+            fixedDelayString = "#{T(org.springframework.boot.convert.DurationStyle).detectAndParse('${snapshot.interval:5m}').toMillis()}")
+    public void scheduledWrite() {
+        if (enabled) {
+            write();
+        }
+    }
+
+    // A redeploy on the same host then starts from the hot set of the instance it replaces
+    @EventListener(ContextClosedEvent.class)
+    public void onShutdown() {
+        if (enabled) {
+            write();
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("path", path.toString());
+        stats.put("loadOutcome", loadOutcome);
+        stats.put("loadedEntries", loadedEntries);
+        stats.put("loadMillis", loadMillis);
+        stats.put("writtenEntries", writtenEntries);
+        stats.put("writtenBytes", writtenBytes);
+        stats.put("writeMillis", writeMillis);
+        return stats;
+    }
+
+    // Any unreadable, corrupt or older-format file is skipped as a whole and the node simply starts cold
+    void load() {
+        if (!Files.isRegularFile(path)) {
+            loadOutcome = "missing";
+            return;
+        }
+        long start = System.nanoTime();
+        UpstreamSnapshot snapshot;
+        try {
+            snapshot = UpstreamSnapshot.read(path);
+        } catch (IOException | RuntimeException e) {
+            // A runtime failure in decoding is as much a bad file as a checksum mismatch, not a reason to fail startup
+            loadOutcome = "rejected";
+            log.warn("Ignoring cache snapshot {}: {}", path, e.getMessage());
+            return;
+        }
+        if (System.currentTimeMillis() - snapshot.getCreatedMillis() > retain.toMillis()) {
+            loadOutcome = "expired";
+            log.info("Ignoring cache snapshot {}: older than the {} retention", path, retain);
+            return;
+        }
+        int restored = 0;
+        for (Map.Entry<String, UpstreamResult<?>> entry : snapshot.getEntries().entrySet()) {
+            if (upstreamCache.restore(entry.getKey(), entry.getValue())) {
+                restored++;
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        loadTimer.record(elapsed, TimeUnit.NANOSECONDS);
+        loadOutcome = "loaded";
+        loadedEntries = restored;
+        loadMillis = TimeUnit.NANOSECONDS.toMillis(elapsed);
+        log.info("Restored {} upstream cache entries from {} in {} ms", restored, path, loadMillis);
+    }
+
+    // Synchronized so the shutdown write cannot interleave with a scheduled one
+    synchronized void write() {
+        Map<String, UpstreamResult<?>> hottest = upstreamCache.hottest(maxEntries);
+        if (hottest.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            long bytes = UpstreamSnapshot.write(path, new UpstreamSnapshot(System.currentTimeMillis(), hottest));
+            long elapsed = System.nanoTime() - start;
+            writeTimer.record(elapsed, TimeUnit.NANOSECONDS);
+            writtenEntries = hottest.size();
+            writtenBytes = bytes;
+            writeMillis = TimeUnit.NANOSECONDS.toMillis(elapsed);
+        } catch (IOException e) {
+            log.warn("Could not write cache snapshot {}", path, e);
+        }
+    }
+
+}
@@ -0,0 +1,102 @@
+package main.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+@Service
+public class UpstreamCache {
+
+    private final Cache<String, UpstreamResult<?>> cache;
+    private final Map<UpstreamRoute, Duration> ttls = new EnumMap<>(UpstreamRoute.class);
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder stale = new LongAdder();
+    private final LongAdder revalidated = new LongAdder();
+
+    public UpstreamCache(@Value("${upstream.cache.max-weight:64MB}") DataSize maxWeight,
+                         @Value("${upstream.cache.retain:24h}") Duration retain,
+                         @Value("${upstream.cache.ttl.list:5m}") Duration listTtl,
+                         @Value("${upstream.cache.ttl.by-id:1h}") Duration byIdTtl,
+                         @Value("${upstream.cache.ttl.relation:15m}") Duration relationTtl,
+                         MeterRegistry meterRegistry) {
+        // Caffeine evicts by W-TinyLFU within the byte budget; entries outlive their TTL so they can be revalidated by ETag
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxWeight.toBytes())
+                .weigher((String key, UpstreamResult<?> result) -> key.length() + result.getWeight())
+                .expireAfterWrite(retain)
+                .recordStats()
+                .build();
+        ttls.put(UpstreamRoute.LIST, listTtl);
+        ttls.put(UpstreamRoute.BY_ID, byIdTtl);
+        ttls.put(UpstreamRoute.RELATION, relationTtl);
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "upstream");
+        // Caffeine counts an expired-but-retained entry as a hit, so freshness gets its own counters
+        FunctionCounter.builder("marvel.upstream.cache.lookups", hits, LongAdder::sum).tag("result", "fresh").register(meterRegistry);
+        FunctionCounter.builder("marvel.upstream.cache.lookups", stale, LongAdder::sum).tag("result", "stale").register(meterRegistry);
+        FunctionCounter.builder("marvel.upstream.cache.lookups", misses, LongAdder::sum).tag("result", "miss").register(meterRegistry);
+        FunctionCounter.builder("marvel.upstream.cache.revalidated", revalidated, LongAdder::sum).register(meterRegistry);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> UpstreamResult<T> get(String key) {
+        UpstreamResult<T> result = (UpstreamResult<T>) cache.getIfPresent(key);
+        if (result == null) {
+            misses.increment();
+        } else if (result.isFresh()) {
+            hits.increment();
+        } else {
+            stale.increment();
+        }
+        return result;
+    }
+
+    public void put(String key, UpstreamResult<?> result) {
+        result.setFreshUntil(System.currentTimeMillis() + ttls.get(UpstreamRoute.of(key)).toMillis());
+        cache.put(key, result);
+    }
+
+    public void revalidate(String key, UpstreamResult<?> result) {
+        revalidated.increment();
+        put(key, result);
+    }
+
+    // The most frequently used entries first, as ranked by Caffeine's admission sketch
+    public Map<String, UpstreamResult<?>> hottest(int limit) {
+        return cache.policy().eviction()
+                .map(eviction -> eviction.hottest(limit))
+                .orElse(Map.of());
+    }
+
+    // Keeps the entry's original freshness and never replaces one a request stored in the meantime
+    public boolean restore(String key, UpstreamResult<?> result) {
+        return cache.asMap().putIfAbsent(key, result) == null;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("hits", hits.sum());
+        stats.put("misses", misses.sum());
+        stats.put("stale", stale.sum());
+        stats.put("revalidated", revalidated.sum());
+        stats.put("evictions", cache.stats().evictionCount());
+        stats.put("entries", cache.estimatedSize());
+        stats.put("weightBytes", cache.policy().eviction()
+                .map(eviction -> eviction.weightedSize().orElse(0L))
+                .orElse(0L));
+        return stats;
+    }
+
+}
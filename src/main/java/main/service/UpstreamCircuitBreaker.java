@@ -0,0 +1,155 @@
+package main.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Count-based breaker over the last calls to Marvel. It opens when the failure rate over a full enough window
+ * crosses the threshold, rejects calls while open, then lets a few trial calls through to decide whether to close.
+ */
+@Service
+public class UpstreamCircuitBreaker {
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    public enum Outcome {
+        SUCCESS,
+        FAILURE,
+        // Calls that never reached Marvel, e.g. shed for quota; they only hand back a trial permit
+        IGNORED
+    }
+
+    private final boolean[] window;
+    private final int minCalls;
+    private final double failureRate;
+    private final long openMillis;
+    private final int trialCalls;
+
+    private State state = State.CLOSED;
+    private int position;
+    private int recorded;
+    private int failures;
+    private long openedAt;
+    private int trialsInFlight;
+    private int trialSuccesses;
+
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder opened = new LongAdder();
+
+    @Autowired
+    public UpstreamCircuitBreaker(@Value("${upstream.circuit-breaker.window:50}") int window,
+                                  @Value("${upstream.circuit-breaker.min-calls:20}") int minCalls,
+                                  @Value("${upstream.circuit-breaker.failure-rate:0.5}") double failureRate,
+                                  @Value("${upstream.circuit-breaker.open-for:30s}") Duration openFor,
+                                  @Value("${upstream.circuit-breaker.trial-calls:3}") int trialCalls,
+                                  MeterRegistry meterRegistry) {
+        this.window = new boolean[window];
+        this.minCalls = Math.min(minCalls, window);
+        this.failureRate = failureRate;
+        this.openMillis = openFor.toMillis();
+        this.trialCalls = trialCalls;
+        // 0 closed, 1 open, 2 half-open
+        Gauge.builder("marvel.upstream.circuit.state", this, breaker -> breaker.getState().ordinal()).register(meterRegistry);
+        FunctionCounter.builder("marvel.upstream.circuit.opened", opened, LongAdder::sum).register(meterRegistry);
+        FunctionCounter.builder("marvel.upstream.circuit.rejected", rejected, LongAdder::sum).register(meterRegistry);
+    }
+
+    public synchronized boolean tryAcquire() {
+        if (state == State.OPEN) {
+            if (System.currentTimeMillis() - openedAt < openMillis) {
+                rejected.increment();
+                return false;
+            }
+            state = State.HALF_OPEN;
+            trialsInFlight = 0;
+            trialSuccesses = 0;
+        }
+        if (state == State.HALF_OPEN) {
+            if (trialsInFlight + trialSuccesses >= trialCalls) {
+                rejected.increment();
+                return false;
+            }
+            trialsInFlight++;
+        }
+        return true;
+    }
+
+    public synchronized void record(Outcome outcome) {
+        if (state == State.HALF_OPEN) {
+            trialsInFlight = Math.max(0, trialsInFlight - 1);
+            if (outcome == Outcome.FAILURE) {
+                open();
+            } else if (outcome == Outcome.SUCCESS && ++trialSuccesses >= trialCalls) {
+                close();
+            }
+            return;
+        }
+        if (state == State.OPEN || outcome == Outcome.IGNORED) {
+            return;
+        }
+        boolean failure = outcome == Outcome.FAILURE;
+        if (recorded == window.length) {
+            if (window[position]) {
+                failures--;
+            }
+        } else {
+            recorded++;
+        }
+        window[position] = failure;
+        if (failure) {
+            failures++;
+        }
+        position = (position + 1) % window.length;
+        if (recorded >= minCalls && failures >= failureRate * recorded) {
+            open();
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized long getRetryAfterSeconds() {
+        if (state != State.OPEN) {
+            return 1;
+        }
+        return Math.max(1, (openMillis - (System.currentTimeMillis() - openedAt) + 999) / 1000);
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("state", state.name());
+        stats.put("windowCalls", recorded);
+        stats.put("windowFailures", failures);
+        stats.put("opened", opened.sum());
+        stats.put("rejected", rejected.sum());
+        return stats;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = System.currentTimeMillis();
+        opened.increment();
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        position = 0;
+        recorded = 0;
+        failures = 0;
+    }
+
+}
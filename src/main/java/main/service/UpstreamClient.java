@@ -0,0 +1,253 @@
+package main.service;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationEnvironmentPreparedEvent;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.context.ApplicationListener;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPInputStream;
+
+@Service
+public class UpstreamClient {
+
+    private final HttpClient httpClient;
+    private final Map<UpstreamRoute, Duration> timeouts = new EnumMap<>(UpstreamRoute.class);
+    private final Map<UpstreamRoute, LongAdder> routeRequests = new EnumMap<>(UpstreamRoute.class);
+    private final Map<UpstreamRoute, LatencyWindow> latencies = new EnumMap<>(UpstreamRoute.class);
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder cancelled = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger threadCount = new AtomicInteger();
+
+    private final MeterRegistry meterRegistry;
+    // Timers per resource, route and status code, created on first use so recording never allocates
+    private final AtomicReferenceArray<Timer> requestTimers = new AtomicReferenceArray<>(2 * 3 * 600);
+    private final Map<UpstreamRoute, DistributionSummary> responseSizes = new EnumMap<>(UpstreamRoute.class);
+
+    public UpstreamClient(@Value("${upstream.connect-timeout:2s}") Duration connectTimeout,
+                          @Value("${upstream.timeout.list:5s}") Duration listTimeout,
+                          @Value("${upstream.timeout.by-id:3s}") Duration byIdTimeout,
+                          @Value("${upstream.timeout.relation:5s}") Duration relationTimeout,
+                          @Value("${upstream.threads:4}") int threads,
+                          MeterRegistry meterRegistry) {
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(connectTimeout)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .executor(Executors.newFixedThreadPool(threads, runnable -> {
+                    Thread thread = new Thread(runnable, "upstream-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }))
+                .build();
+        timeouts.put(UpstreamRoute.LIST, listTimeout);
+        timeouts.put(UpstreamRoute.BY_ID, byIdTimeout);
+        timeouts.put(UpstreamRoute.RELATION, relationTimeout);
+        for (UpstreamRoute route : UpstreamRoute.values()) {
+            routeRequests.put(route, new LongAdder());
+            latencies.put(route, new LatencyWindow(512));
+            responseSizes.put(route, DistributionSummary.builder("marvel.upstream.response.size")
+                    .description("Body size of Marvel API responses as received, before gzip decoding")
+                    .baseUnit("bytes")
+                    .tag("route", route.name().toLowerCase(Locale.ROOT))
+                    .register(meterRegistry));
+        }
+        this.meterRegistry = meterRegistry;
+        Gauge.builder("marvel.upstream.in.flight", inFlight, AtomicInteger::get)
+                .description("Marvel API requests waiting for a response")
+                .register(meterRegistry);
+    }
+
+    /**
+     * The JDK client keeps its own keep-alive pool and reads its size and idle timeout from system properties
+     * once, when the first HttpClient in the JVM is initialized. They are applied from main as soon as the
+     * environment is prepared, before any bean exists; -D flags given at launch take precedence.
+     */
+    public static ApplicationListener<ApplicationEnvironmentPreparedEvent> poolSettings() {
+        return event -> {
+            ConfigurableEnvironment environment = event.getEnvironment();
+            setIfAbsent("jdk.httpclient.connectionPoolSize", environment.getProperty("upstream.pool.max-connections", "50"));
+            Duration keepAlive = DurationStyle.detectAndParse(environment.getProperty("upstream.pool.keep-alive", "60s"));
+            setIfAbsent("jdk.httpclient.keepalive.timeout", String.valueOf(keepAlive.toSeconds()));
+        };
+    }
+
+    private static void setIfAbsent(String property, String value) {
+        if (System.getProperty(property) == null) {
+            System.setProperty(property, value);
+        }
+    }
+
+    public CompletableFuture<UpstreamResponse> get(String url, String etag) {
+        UpstreamRoute route = UpstreamRoute.of(url);
+        boolean comics = UpstreamRoute.resource(url).equals(IngestionService.COMICS);
+        URI uri;
+        try {
+            uri = URI.create(url);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        HttpRequest.Builder builder = HttpRequest.newBuilder(uri)
+                .timeout(timeouts.get(route))
+                .header("Accept", "application/json")
+                .header("Accept-Encoding", "gzip");
+        if (etag != null) {
+            builder.header("If-None-Match", etag);
+        }
+        HttpRequest request = builder.GET().build();
+        requests.increment();
+        routeRequests.get(route).increment();
+        inFlight.incrementAndGet();
+        long start = System.nanoTime();
+        CompletableFuture<HttpResponse<byte[]>> exchange = httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray());
+        CompletableFuture<UpstreamResponse> result = exchange
+                .whenComplete((response, error) -> {
+                    long elapsed = System.nanoTime() - start;
+                    inFlight.decrementAndGet();
+                    if (error instanceof CancellationException || (error != null && error.getCause() instanceof CancellationException)) {
+                        cancelled.increment();
+                        return;
+                    }
+                    totalNanos.add(elapsed);
+                    maxNanos.accumulateAndGet(elapsed, Math::max);
+                    if (error != null || (response.statusCode() / 100 != 2 && response.statusCode() != 304)) {
+                        failures.increment();
+                    } else {
+                        latencies.get(route).record(elapsed);
+                    }
+                    requestTimer(comics, route, error == null ? response.statusCode() : 0).record(elapsed, TimeUnit.NANOSECONDS);
+                    if (error == null) {
+                        responseSizes.get(route).record(response.body().length);
+                    }
+                })
+                .thenApply(this::toUpstreamResponse);
+        // A caller that gives up (a hedged call's loser) aborts the exchange instead of waiting out the response
+        result.whenComplete((response, error) -> {
+            if (result.isCancelled()) {
+                exchange.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    // Recent successful-call latency of the route, or null until the window holds minSamples calls
+    public Duration latencyPercentile(UpstreamRoute route, double percentile, int minSamples) {
+        return latencies.get(route).percentile(percentile, minSamples);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long count = requests.sum();
+        stats.put("requests", count);
+        stats.put("failures", failures.sum());
+        stats.put("cancelled", cancelled.sum());
+        stats.put("inFlight", inFlight.get());
+        stats.put("avgMillis", count == 0 ? 0 : totalNanos.sum() / count / 1_000_000.0);
+        stats.put("maxMillis", maxNanos.get() / 1_000_000.0);
+        Map<String, Long> routes = new LinkedHashMap<>();
+        routeRequests.forEach((route, adder) -> routes.put(route.name(), adder.sum()));
+        stats.put("routes", routes);
+        Map<String, Object> p95 = new LinkedHashMap<>();
+        latencies.forEach((route, window) -> {
+            Duration latency = window.percentile(0.95, 1);
+            p95.put(route.name(), latency == null ? null : latency.toNanos() / 1_000_000.0);
+        });
+        stats.put("p95Millis", p95);
+        return stats;
+    }
+
+    private Timer requestTimer(boolean comics, UpstreamRoute route, int status) {
+        int code = status < 0 || status > 599 ? 0 : status;
+        int index = ((comics ? 3 : 0) + route.ordinal()) * 600 + code;
+        Timer timer = requestTimers.get(index);
+        if (timer == null) {
+            timer = Timer.builder("marvel.upstream.requests")
+                    .description("Marvel API calls by resource, route and HTTP status; status \"error\" means no response")
+                    .tag("resource", comics ? IngestionService.COMICS : IngestionService.CHARACTERS)
+                    .tag("route", route.name().toLowerCase(Locale.ROOT))
+                    .tag("status", code == 0 ? "error" : String.valueOf(code))
+                    .register(meterRegistry);
+            requestTimers.set(index, timer);
+        }
+        return timer;
+    }
+
+    private UpstreamResponse toUpstreamResponse(HttpResponse<byte[]> response) {
+        int status = response.statusCode();
+        String etag = response.headers().firstValue("ETag").orElse(null);
+        if (status / 100 != 2) {
+            return new UpstreamResponse(status, etag, null);
+        }
+        InputStream body = new ByteArrayInputStream(response.body());
+        String encoding = response.headers().firstValue("Content-Encoding").orElse("");
+        if (encoding.equalsIgnoreCase("gzip")) {
+            try {
+                body = new GZIPInputStream(body, 8192);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return new UpstreamResponse(status, etag, body);
+    }
+
+    // Ring of the latest samples; a percentile copies and sorts at most a few hundred longs
+    private static class LatencyWindow {
+        private final AtomicLongArray samples;
+        private final AtomicLong count = new AtomicLong();
+
+        private LatencyWindow(int size) {
+            this.samples = new AtomicLongArray(size);
+        }
+
+        private void record(long nanos) {
+            samples.set((int) (count.getAndIncrement() % samples.length()), nanos);
+        }
+
+        private Duration percentile(double percentile, int minSamples) {
+            int size = (int) Math.min(count.get(), samples.length());
+            if (size < Math.max(1, minSamples)) {
+                return null;
+            }
+            long[] sorted = new long[size];
+            for (int i = 0; i < size; i++) {
+                sorted[i] = samples.get(i);
+            }
+            Arrays.sort(sorted);
+            return Duration.ofNanos(sorted[Math.min(size - 1, (int) Math.ceil(percentile * size) - 1)]);
+        }
+    }
+
+}
@@ -0,0 +1,123 @@
+package main.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Sends interactive GETs through the scheduler and, when the first attempt is still out the route's recent p95
+ * after it was dispatched, a second identical one. Whichever answers first wins; the other attempt is cancelled,
+ * so it leaves the queue unsent or has its exchange aborted. Hedges are ordinary scheduled calls, so they are
+ * paced, counted against the quota and shed like any other.
+ */
+@Service
+public class UpstreamHedging {
+
+    private final UpstreamScheduler upstreamScheduler;
+    private final UpstreamClient upstreamClient;
+
+    private final LongAdder hedged = new LongAdder();
+    private final LongAdder hedgeWins = new LongAdder();
+
+    @Value("${upstream.hedge.enabled:true}")
+    private boolean enabled;
+    @Value("${upstream.hedge.percentile:0.95}")
+    private double percentile;
+    @Value("${upstream.hedge.min-samples:50}")
+    private int minSamples;
+    @Value("${upstream.hedge.min-delay:50ms}")
+    private Duration minDelay;
+
+    @Autowired
+    public UpstreamHedging(UpstreamScheduler upstreamScheduler, UpstreamClient upstreamClient, MeterRegistry meterRegistry) {
+        this.upstreamScheduler = upstreamScheduler;
+        this.upstreamClient = upstreamClient;
+        FunctionCounter.builder("marvel.upstream.hedge", hedged, LongAdder::sum).tag("outcome", "sent").register(meterRegistry);
+        FunctionCounter.builder("marvel.upstream.hedge", hedgeWins, LongAdder::sum).tag("outcome", "won").register(meterRegistry);
+    }
+
+    public CompletableFuture<UpstreamResponse> call(UpstreamPriority priority, UpstreamRoute route,
+                                                    Supplier<CompletableFuture<UpstreamResponse>> call) {
+        Duration percentileDelay = enabled && priority == UpstreamPriority.INTERACTIVE
+                ? upstreamClient.latencyPercentile(route, percentile, minSamples) : null;
+        if (percentileDelay == null) {
+            return upstreamScheduler.submit(priority, call);
+        }
+        Duration delay = percentileDelay.compareTo(minDelay) < 0 ? minDelay : percentileDelay;
+        CompletableFuture<UpstreamResponse> result = new CompletableFuture<>();
+        AtomicInteger pending = new AtomicInteger(1);
+        List<CompletableFuture<UpstreamResponse>> attempts = new CopyOnWriteArrayList<>();
+        // The clock starts when the primary leaves the scheduler queue: time spent waiting for a token says
+        // nothing about how slow Marvel is
+        CompletableFuture<UpstreamResponse> primary = upstreamScheduler.submit(priority, () -> {
+            CompletableFuture.delayedExecutor(delay.toNanos(), TimeUnit.NANOSECONDS).execute(() -> {
+                if (result.isDone()) {
+                    return;
+                }
+                pending.incrementAndGet();
+                hedged.increment();
+                CompletableFuture<UpstreamResponse> hedge = upstreamScheduler.submit(priority, call);
+                attempts.add(hedge);
+                if (result.isDone()) {
+                    hedge.cancel(true);
+                }
+                race(hedge, result, pending, true);
+            });
+            return call.get();
+        });
+        attempts.add(primary);
+        race(primary, result, pending, false);
+        result.whenComplete((response, error) -> attempts.forEach(attempt -> attempt.cancel(true)));
+        return result;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("hedged", hedged.sum());
+        stats.put("hedgeWins", hedgeWins.sum());
+        return stats;
+    }
+
+    private void race(CompletableFuture<UpstreamResponse> attempt, CompletableFuture<UpstreamResponse> result,
+                      AtomicInteger pending, boolean hedge) {
+        attempt.whenComplete((response, error) -> {
+            if (error == null) {
+                // Counted before completing, so whoever the result wakes up already sees the win
+                if (hedge) {
+                    hedgeWins.increment();
+                }
+                if (!result.complete(response)) {
+                    if (hedge) {
+                        hedgeWins.decrement();
+                    }
+                    closeQuietly(response);
+                }
+            } else if (pending.decrementAndGet() == 0) {
+                result.completeExceptionally(error);
+            }
+        });
+    }
+
+    private static void closeQuietly(UpstreamResponse response) {
+        try {
+            response.close();
+        } catch (IOException ignored) {
+            // The losing body is an in-memory buffer; nothing to recover
+        }
+    }
+
+}
@@ -0,0 +1,10 @@
+package main.service;
+
+// Dispatch order for upstream calls; later classes are shed first when the daily quota runs low
+public enum UpstreamPriority {
+
+    INTERACTIVE,
+    PREFETCH,
+    BACKGROUND
+
+}
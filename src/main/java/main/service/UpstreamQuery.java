@@ -0,0 +1,122 @@
+package main.service;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.Map;
+
+public class UpstreamQuery {
+
+    // Declared in wire-name order, so iterating the EnumMap yields the canonical parameter order
+    public enum Param {
+        FORMAT("format"),
+        LIMIT("limit"),
+        MODIFIED_SINCE("modifiedSince"),
+        NAME("name"),
+        NAME_STARTS_WITH("nameStartsWith"),
+        OFFSET("offset"),
+        ORDER_BY("orderBy"),
+        TITLE("title"),
+        TITLE_STARTS_WITH("titleStartsWith");
+
+        private final String wireName;
+
+        Param(String wireName) {
+            this.wireName = wireName;
+        }
+
+        public String getWireName() {
+            return wireName;
+        }
+    }
+
+    private final String path;
+    private final Map<Param, String> params = new EnumMap<>(Param.class);
+    private String canonical;
+
+    private UpstreamQuery(String path) {
+        this.path = path;
+    }
+
+    public static UpstreamQuery characters() {
+        return new UpstreamQuery("/characters");
+    }
+
+    public static UpstreamQuery characters(String characterId) {
+        return new UpstreamQuery("/characters/" + encode(characterId));
+    }
+
+    public static UpstreamQuery characterComics(String characterId) {
+        return new UpstreamQuery("/characters/" + encode(characterId) + "/comics");
+    }
+
+    public static UpstreamQuery comics() {
+        return new UpstreamQuery("/comics");
+    }
+
+    public static UpstreamQuery comics(String comicId) {
+        return new UpstreamQuery("/comics/" + encode(comicId));
+    }
+
+    public static UpstreamQuery comicCharacters(String comicId) {
+        return new UpstreamQuery("/comics/" + encode(comicId) + "/characters");
+    }
+
+    public UpstreamQuery param(Param param, String value) {
+        if (value != null) {
+            params.put(param, value);
+            canonical = null;
+        }
+        return this;
+    }
+
+    public UpstreamQuery param(Param param, int value) {
+        return param(param, Integer.toString(value));
+    }
+
+    public UpstreamQuery page(String orderBy, int limit, int offset) {
+        return param(Param.ORDER_BY, orderBy).param(Param.LIMIT, limit).param(Param.OFFSET, offset);
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Path and encoded parameters in canonical order, without signing parameters:
+     * equal queries always render to the same string, so it doubles as the cache key.
+     */
+    public String canonical() {
+        if (canonical == null) {
+            StringBuilder builder = new StringBuilder(path.length() + 16 * params.size() + 1).append(path);
+            char separator = '?';
+            for (Map.Entry<Param, String> entry : params.entrySet()) {
+                builder.append(separator).append(entry.getKey().wireName).append('=').append(encode(entry.getValue()));
+                separator = '&';
+            }
+            canonical = builder.toString();
+        }
+        return canonical;
+    }
+
+    @Override
+    public String toString() {
+        return canonical();
+    }
+
+    static String encode(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (!isUnreserved(value.charAt(i))) {
+                return URLEncoder.encode(value, StandardCharsets.UTF_8).replace("+", "%20");
+            }
+        }
+        // Ids, numbers and plain names are left as they are without allocating
+        return value;
+    }
+
+    private static boolean isUnreserved(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                || c == '-' || c == '.' || c == '_' || c == '~';
+    }
+
+}
@@ -0,0 +1,33 @@
+package main.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+@Getter
+@AllArgsConstructor
+public class UpstreamResponse implements Closeable {
+
+    private final int status;
+    private final String etag;
+    private final InputStream body;
+
+    public boolean isOk() {
+        return status / 100 == 2 && body != null;
+    }
+
+    public boolean isNotModified() {
+        return status == 304;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (body != null) {
+            body.close();
+        }
+    }
+
+}
@@ -0,0 +1,54 @@
+package main.service;
+
+import lombok.Getter;
+
+import java.util.Collections;
+import java.util.List;
+
+@Getter
+public class UpstreamResult<T> {
+
+    private final List<T> results;
+    private final int total;
+    private final String etag;
+    private final int weight;
+    // Set only on copies handed out past their TTL, never on the instance held by the cache
+    private final boolean stale;
+    private volatile long freshUntil;
+
+    public UpstreamResult(List<T> results, int total, String etag, long weight) {
+        this(results, total, etag, weight, false);
+    }
+
+    private UpstreamResult(List<T> results, int total, String etag, long weight, boolean stale) {
+        this.results = Collections.unmodifiableList(results);
+        this.total = total;
+        this.etag = etag;
+        this.weight = (int) Math.min(weight, Integer.MAX_VALUE);
+        this.stale = stale;
+    }
+
+    public UpstreamResult<T> withEtag(String etag) {
+        return new UpstreamResult<>(results, total, etag, weight);
+    }
+
+    public UpstreamResult<T> asStale() {
+        UpstreamResult<T> copy = new UpstreamResult<>(results, total, etag, weight, true);
+        copy.freshUntil = freshUntil;
+        return copy;
+    }
+
+    public boolean isFresh() {
+        return System.currentTimeMillis() < freshUntil;
+    }
+
+    // Past its TTL but still inside the window where it may be served while a refresh runs
+    public boolean isRevalidatable(long staleWhileRevalidateMillis) {
+        return System.currentTimeMillis() < freshUntil + staleWhileRevalidateMillis;
+    }
+
+    void setFreshUntil(long freshUntil) {
+        this.freshUntil = freshUntil;
+    }
+
+}
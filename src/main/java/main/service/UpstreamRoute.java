@@ -0,0 +1,50 @@
+package main.service;
+
+public enum UpstreamRoute {
+
+    LIST,
+    BY_ID,
+    RELATION;
+
+    // Runs for every upstream call and cache write, so it counts separators in place instead of splitting the path
+    public static UpstreamRoute of(String path) {
+        int resource = resourceIndex(path);
+        if (resource < 0) {
+            return LIST;
+        }
+        int end = path.indexOf('?', resource);
+        if (end < 0) {
+            end = path.length();
+        }
+        // Trailing slashes don't open another segment
+        while (end > resource + 1 && path.charAt(end - 1) == '/') {
+            end--;
+        }
+        int separators = 0;
+        for (int i = resource + 1; i < end; i++) {
+            if (path.charAt(i) == '/') {
+                separators++;
+            }
+        }
+        if (separators == 0) {
+            return LIST;
+        }
+        return separators == 1 ? BY_ID : RELATION;
+    }
+
+    // The top-level resource a path starts from: "comics/1/characters" belongs to comics
+    public static String resource(String path) {
+        int resource = resourceIndex(path);
+        return resource >= 0 && path.startsWith("/comics", resource) ? IngestionService.COMICS : IngestionService.CHARACTERS;
+    }
+
+    private static int resourceIndex(String path) {
+        int characters = path.indexOf("/characters");
+        int comics = path.indexOf("/comics");
+        if (characters < 0 || comics < 0) {
+            return Math.max(characters, comics);
+        }
+        return Math.min(characters, comics);
+    }
+
+}
@@ -0,0 +1,310 @@
+package main.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import main.entities.UpstreamQuota;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Single gate in front of every Marvel call: a token bucket paces dispatch, a priority queue lets interactive
+ * requests overtake prefetch and background work, and a daily counter shared through Mongo sheds the lower
+ * classes once the remaining quota reaches their reserve.
+ */
+@Service
+public class UpstreamScheduler {
+
+    private final MongoTemplate mongoTemplate;
+    private final ZoneId zone;
+    private final long dailyQuota;
+    private final int maxQueueDepth;
+    private final double permitsPerNano;
+    private final double burst;
+    private final Map<UpstreamPriority, Long> reserves = new EnumMap<>(UpstreamPriority.class);
+    private final Map<UpstreamPriority, AtomicInteger> queued = new EnumMap<>(UpstreamPriority.class);
+    private final Map<UpstreamPriority, LongAdder> dispatched = new EnumMap<>(UpstreamPriority.class);
+    private final Map<UpstreamPriority, LongAdder> shed = new EnumMap<>(UpstreamPriority.class);
+
+    private final PriorityBlockingQueue<Ticket> queue = new PriorityBlockingQueue<>(64,
+            Comparator.comparing((Ticket ticket) -> ticket.priority).thenComparingLong(ticket -> ticket.sequence));
+    private final AtomicLong sequence = new AtomicLong();
+    private final Thread dispatcher;
+
+    // The quota day and its counters are swapped as one, so a call is always counted against the day it was made in
+    private final AtomicReference<DayUsage> usage;
+    // The day before the last rollover, kept until its remaining calls have been written
+    private volatile DayUsage previousDay;
+
+    // Only the dispatcher thread touches the bucket
+    private double tokens;
+    private long refilledAt = System.nanoTime();
+
+    @Autowired
+    public UpstreamScheduler(MongoTemplate mongoTemplate,
+                             @Value("${upstream.quota.daily:3000}") long dailyQuota,
+                             @Value("${upstream.quota.zone:UTC}") ZoneId zone,
+                             @Value("${upstream.quota.reserve.prefetch:300}") long prefetchReserve,
+                             @Value("${upstream.quota.reserve.background:900}") long backgroundReserve,
+                             @Value("${upstream.rate.per-second:10}") double perSecond,
+                             @Value("${upstream.rate.burst:20}") int burst,
+                             @Value("${upstream.queue.max-depth:1000}") int maxQueueDepth,
+                             MeterRegistry meterRegistry) {
+        this.mongoTemplate = mongoTemplate;
+        this.zone = zone;
+        this.dailyQuota = dailyQuota;
+        this.maxQueueDepth = maxQueueDepth;
+        this.permitsPerNano = perSecond / TimeUnit.SECONDS.toNanos(1);
+        this.burst = burst;
+        this.tokens = burst;
+        this.usage = new AtomicReference<>(new DayUsage(LocalDate.now(zone).toString()));
+        reserves.put(UpstreamPriority.INTERACTIVE, 0L);
+        reserves.put(UpstreamPriority.PREFETCH, prefetchReserve);
+        reserves.put(UpstreamPriority.BACKGROUND, backgroundReserve);
+        for (UpstreamPriority priority : UpstreamPriority.values()) {
+            queued.put(priority, new AtomicInteger());
+            dispatched.put(priority, new LongAdder());
+            shed.put(priority, new LongAdder());
+            Tags tags = Tags.of("priority", priority.name().toLowerCase(Locale.ROOT));
+            Gauge.builder("marvel.upstream.queue.depth", queued.get(priority), AtomicInteger::get).tags(tags).register(meterRegistry);
+            FunctionCounter.builder("marvel.upstream.dispatched", dispatched.get(priority), LongAdder::sum).tags(tags).register(meterRegistry);
+            FunctionCounter.builder("marvel.upstream.shed", shed.get(priority), LongAdder::sum).tags(tags).register(meterRegistry);
+        }
+        Gauge.builder("marvel.upstream.quota.remaining", this, UpstreamScheduler::getRemaining).register(meterRegistry);
+        Gauge.builder("marvel.upstream.quota.used", usage, current -> current.get().used()).register(meterRegistry);
+        dispatcher = new Thread(this::dispatch, "upstream-scheduler");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    /**
+     * Queues the call and starts it once a token is free and the quota still covers its class. A shed call
+     * completes exceptionally with {@link RejectedExecutionException} without ever reaching Marvel. Cancelling
+     * the returned future drops a queued call without spending a token and cancels one already started.
+     */
+    public <T> CompletableFuture<T> submit(UpstreamPriority priority, Supplier<CompletableFuture<T>> call) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        if (!admits(priority) || (priority != UpstreamPriority.INTERACTIVE && queue.size() >= maxQueueDepth)) {
+            shed.get(priority).increment();
+            result.completeExceptionally(new RejectedExecutionException("Upstream budget exhausted for " + priority));
+            return result;
+        }
+        queued.get(priority).incrementAndGet();
+        queue.add(new Ticket(priority, sequence.getAndIncrement(), () -> {
+            CompletableFuture<T> started = call.get();
+            started.whenComplete((value, error) -> {
+                if (error != null) {
+                    result.completeExceptionally(error);
+                } else {
+                    result.complete(value);
+                }
+            });
+            result.whenComplete((value, error) -> {
+                if (result.isCancelled()) {
+                    started.cancel(true);
+                }
+            });
+        }, result));
+        return result;
+    }
+
+    public long getRemaining() {
+        return Math.max(0, dailyQuota - usage.get().used());
+    }
+
+    // How long a shed caller should wait: until the quota day rolls over once it is spent, otherwise a moment
+    public long getRetryAfterSeconds() {
+        if (getRemaining() > 0) {
+            return 1;
+        }
+        ZonedDateTime now = ZonedDateTime.now(zone);
+        return Math.max(1, Duration.between(now, now.toLocalDate().plusDays(1).atStartOfDay(zone)).getSeconds());
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        DayUsage current = usage.get();
+        stats.put("day", current.day);
+        stats.put("dailyQuota", dailyQuota);
+        stats.put("used", current.used());
+        stats.put("remaining", Math.max(0, dailyQuota - current.used()));
+        stats.put("queueDepth", queue.size());
+        Map<String, Object> priorities = new LinkedHashMap<>();
+        for (UpstreamPriority priority : UpstreamPriority.values()) {
+            Map<String, Object> counters = new LinkedHashMap<>();
+            counters.put("queued", queued.get(priority).get());
+            counters.put("dispatched", dispatched.get(priority).sum());
+            counters.put("shed", shed.get(priority).sum());
+            priorities.put(priority.name(), counters);
+        }
+        stats.put("priorities", priorities);
+        return stats;
+    }
+
+    // Starts from what every instance already spent today, so a restart does not hand out the whole quota again
+    @PostConstruct
+    public void load() {
+        DayUsage current = usage.get();
+        try {
+            UpstreamQuota quota = mongoTemplate.findById(current.day, UpstreamQuota.class);
+            if (quota != null) {
+                current.persisted = quota.getCalls();
+            }
+        } catch (Exception e) {
+            // The first successful flush reads the shared count instead
+        }
+    }
+
+    // Folds this instance's calls into the shared daily document and picks up what the other instances spent.
+    // Synchronized so the shutdown flush cannot write the same pending calls as a scheduled one
+    @Scheduled(fixedDelayString = "#{T(org.springframework.boot.convert.DurationStyle).detectAndParse('${upstream.quota.flush:5s}').toMillis()}")
+    public synchronized void flush() {
+        DayUsage current = usage.get();
+        String today = LocalDate.now(zone).toString();
+        if (!today.equals(current.day)) {
+            // Swap first so new calls land on today; the old day is still written below, late increments included
+            previousDay = current;
+            current = new DayUsage(today);
+            usage.set(current);
+        }
+        DayUsage previous = previousDay;
+        if (previous != null && previous.pending.get() > 0) {
+            write(previous);
+        }
+        write(current);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        dispatcher.interrupt();
+        flush();
+    }
+
+    private void write(DayUsage dayUsage) {
+        // Stays in pending until the write has landed, so used() never drops by the delta in flight
+        long delta = dayUsage.pending.get();
+        try {
+            UpstreamQuota quota = mongoTemplate.findAndModify(new Query(Criteria.where("_id").is(dayUsage.day)),
+                    new Update().inc("calls", delta), FindAndModifyOptions.options().upsert(true).returnNew(true), UpstreamQuota.class);
+            // The new total already holds the delta; counting it twice for a moment errs on the side of the quota
+            if (quota != null) {
+                dayUsage.persisted = quota.getCalls();
+            }
+            dayUsage.pending.addAndGet(-delta);
+        } catch (Exception e) {
+            // Keep counting locally; the calls are written to their own day with the next successful flush
+        }
+    }
+
+    private boolean admits(UpstreamPriority priority) {
+        return getRemaining() > reserves.get(priority);
+    }
+
+    private void dispatch() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                awaitToken();
+                Ticket ticket = queue.take();
+                queued.get(ticket.priority).decrementAndGet();
+                if (ticket.result.isDone()) {
+                    // Cancelled while queued; it costs neither a token nor quota
+                    continue;
+                }
+                // The budget may have dropped while the ticket waited, so the check runs again at dispatch time
+                if (!admits(ticket.priority)) {
+                    shed.get(ticket.priority).increment();
+                    ticket.result.completeExceptionally(new RejectedExecutionException("Upstream budget exhausted for " + ticket.priority));
+                    continue;
+                }
+                refill();
+                tokens -= 1;
+                usage.get().pending.incrementAndGet();
+                dispatched.get(ticket.priority).increment();
+                try {
+                    ticket.start.run();
+                } catch (RuntimeException e) {
+                    ticket.result.completeExceptionally(e);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void awaitToken() throws InterruptedException {
+        refill();
+        while (tokens < 1) {
+            LockSupport.parkNanos((long) ((1 - tokens) / permitsPerNano));
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            refill();
+        }
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - refilledAt) * permitsPerNano);
+        refilledAt = now;
+    }
+
+    // Calls counted by every instance as of the last flush, plus this instance's calls since then
+    private static class DayUsage {
+        private final String day;
+        private volatile long persisted;
+        private final AtomicLong pending = new AtomicLong();
+
+        private DayUsage(String day) {
+            this.day = day;
+        }
+
+        private long used() {
+            return persisted + pending.get();
+        }
+    }
+
+    private static class Ticket {
+        private final UpstreamPriority priority;
+        private final long sequence;
+        private final Runnable start;
+        private final CompletableFuture<?> result;
+
+        private Ticket(UpstreamPriority priority, long sequence, Runnable start, CompletableFuture<?> result) {
+            this.priority = priority;
+            this.sequence = sequence;
+            this.start = start;
+            this.result = result;
+        }
+    }
+
+}
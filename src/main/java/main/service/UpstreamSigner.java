@@ -0,0 +1,88 @@
+package main.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+
+@Service
+public class UpstreamSigner {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final ThreadLocal<MessageDigest> MD5 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private final String apiLink;
+    private final String publicKey;
+    private final String privateKey;
+    private final long bucketMillis;
+    private volatile Signature current;
+
+    @Autowired
+    public UpstreamSigner(@Value("${API_LINK}") String apiLink,
+                          @Value("${PUBLIC_KEY}") String publicKey,
+                          @Value("${PRIVATE_KEY}") String privateKey,
+                          @Value("${upstream.signing.bucket:1m}") Duration bucket) {
+        this.apiLink = apiLink;
+        this.publicKey = publicKey;
+        this.privateKey = privateKey;
+        this.bucketMillis = Math.max(1, bucket.toMillis());
+    }
+
+    public String url(UpstreamQuery query) {
+        String suffix = signature(System.currentTimeMillis()).suffix;
+        String canonical = query.canonical();
+        return new StringBuilder(apiLink.length() + canonical.length() + suffix.length() + 1)
+                .append(apiLink)
+                .append(canonical)
+                .append(canonical.indexOf('?') < 0 ? '?' : '&')
+                .append(suffix)
+                .toString();
+    }
+
+    String hash(String timestamp) {
+        MessageDigest digest = MD5.get();
+        digest.update(timestamp.getBytes(StandardCharsets.UTF_8));
+        digest.update(privateKey.getBytes(StandardCharsets.UTF_8));
+        digest.update(publicKey.getBytes(StandardCharsets.UTF_8));
+        byte[] bytes = digest.digest();
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[i * 2] = HEX[(bytes[i] >> 4) & 0xf];
+            hex[i * 2 + 1] = HEX[bytes[i] & 0xf];
+        }
+        return new String(hex);
+    }
+
+    private Signature signature(long now) {
+        long bucket = now / bucketMillis;
+        Signature signature = current;
+        if (signature == null || signature.bucket != bucket) {
+            // Racing threads may both sign the new bucket; either result is valid
+            String timestamp = String.valueOf(bucket * bucketMillis);
+            signature = new Signature(bucket, "ts=" + timestamp + "&apikey=" + publicKey + "&hash=" + hash(timestamp));
+            current = signature;
+        }
+        return signature;
+    }
+
+    private static class Signature {
+        private final long bucket;
+        private final String suffix;
+
+        private Signature(long bucket, String suffix) {
+            this.bucket = bucket;
+            this.suffix = suffix;
+        }
+    }
+
+}
@@ -0,0 +1,337 @@
+package main.service;
+
+import main.entities.Character;
+import main.entities.Comic;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Binary image of upstream cache entries. A fixed header (magic, format version, creation time, entry count,
+ * body length, CRC32C of the body) precedes the entries; FORMAT_VERSION has to change with the entity fields
+ * or the layout, and files of any other version are rejected rather than read.
+ */
+class UpstreamSnapshot {
+
+    static final int MAGIC = 0x4D565353;
+    static final int FORMAT_VERSION = 1;
+
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 4 + 4 + 4;
+    // Key and etag lengths, total, weight, freshUntil, type and result count
+    private static final int MIN_ENTRY_SIZE = 4 + 4 + 4 + 4 + 8 + 1 + 4;
+    private static final byte CHARACTERS = 1;
+    private static final byte COMICS = 2;
+    private static final long NO_DATE = Long.MIN_VALUE;
+
+    private final long createdMillis;
+    private final Map<String, UpstreamResult<?>> entries;
+
+    UpstreamSnapshot(long createdMillis, Map<String, UpstreamResult<?>> entries) {
+        this.createdMillis = createdMillis;
+        this.entries = entries;
+    }
+
+    long getCreatedMillis() {
+        return createdMillis;
+    }
+
+    Map<String, UpstreamResult<?>> getEntries() {
+        return entries;
+    }
+
+    // Written next to the target and moved over it, so a crash mid-write never leaves a truncated snapshot behind
+    static long write(Path path, UpstreamSnapshot snapshot) throws IOException {
+        Path parent = path.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temp = Files.createTempFile(parent, path.getFileName().toString(), ".part");
+        try {
+            long size;
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                channel.position(HEADER_SIZE);
+                CRC32C crc = new CRC32C();
+                // Not closed: that would close the channel before the header goes in
+                DataOutputStream out = new DataOutputStream(new CheckedOutputStream(
+                        new BufferedOutputStream(Channels.newOutputStream(channel), 65536), crc));
+                int count = 0;
+                for (Map.Entry<String, UpstreamResult<?>> entry : snapshot.entries.entrySet()) {
+                    if (writeEntry(out, entry.getKey(), entry.getValue())) {
+                        count++;
+                    }
+                }
+                out.flush();
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE)
+                        .putInt(MAGIC)
+                        .putInt(FORMAT_VERSION)
+                        .putLong(snapshot.createdMillis)
+                        .putInt(count)
+                        .putInt(out.size())
+                        .putInt((int) crc.getValue())
+                        .flip();
+                while (header.hasRemaining()) {
+                    channel.write(header, HEADER_SIZE - header.remaining());
+                }
+                channel.force(true);
+                size = channel.size();
+            }
+            Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            return size;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    // Maps the file and verifies it as a whole before decoding anything; any mismatch is an IOException.
+    // The header is outside the checksum, so counts are checked against the bytes that could back them
+    static UpstreamSnapshot read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+                throw new IOException("Not a snapshot file: " + path);
+            }
+            int version = buffer.getInt();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Snapshot format " + version + " is not the supported " + FORMAT_VERSION + ": " + path);
+            }
+            long createdMillis = buffer.getLong();
+            int count = buffer.getInt();
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (length != buffer.remaining()) {
+                throw new IOException("Snapshot body is " + buffer.remaining() + " bytes instead of " + length + ": " + path);
+            }
+            if (count < 0 || count > length / MIN_ENTRY_SIZE) {
+                throw new IOException("Snapshot entry count " + count + " does not fit a " + length + " byte body: " + path);
+            }
+            CRC32C crc = new CRC32C();
+            crc.update(buffer.duplicate());
+            if ((int) crc.getValue() != checksum) {
+                throw new IOException("Snapshot checksum mismatch: " + path);
+            }
+            Map<String, UpstreamResult<?>> entries = new LinkedHashMap<>(count * 4 / 3 + 1);
+            Reader reader = new Reader(buffer);
+            try {
+                for (int i = 0; i < count; i++) {
+                    String key = reader.string();
+                    entries.put(key, readEntry(reader));
+                }
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                throw new IOException("Malformed snapshot entry: " + path, e);
+            }
+            return new UpstreamSnapshot(createdMillis, entries);
+        }
+    }
+
+    private static boolean writeEntry(DataOutputStream out, String key, UpstreamResult<?> result) throws IOException {
+        List<?> results = result.getResults();
+        byte type = CHARACTERS;
+        for (Object item : results) {
+            if (item instanceof Comic) {
+                type = COMICS;
+            } else if (!(item instanceof Character)) {
+                return false;
+            }
+            break;
+        }
+        writeString(out, key);
+        writeString(out, result.getEtag());
+        out.writeInt(result.getTotal());
+        out.writeInt(result.getWeight());
+        out.writeLong(result.getFreshUntil());
+        out.writeByte(type);
+        out.writeInt(results.size());
+        for (Object item : results) {
+            if (type == CHARACTERS) {
+                writeCharacter(out, (Character) item);
+            } else {
+                writeComic(out, (Comic) item);
+            }
+        }
+        return true;
+    }
+
+    private static UpstreamResult<?> readEntry(Reader in) {
+        String etag = in.string();
+        int total = in.buffer.getInt();
+        int weight = in.buffer.getInt();
+        long freshUntil = in.buffer.getLong();
+        byte type = in.buffer.get();
+        int size = in.buffer.getInt();
+        if (type != CHARACTERS && type != COMICS) {
+            throw new IllegalArgumentException("Unknown entity type " + type);
+        }
+        if (size < 0 || size > in.buffer.remaining()) {
+            throw new IllegalArgumentException("Result count " + size + " out of range");
+        }
+        List<Object> results = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            results.add(type == CHARACTERS ? readCharacter(in) : readComic(in));
+        }
+        UpstreamResult<?> result = new UpstreamResult<>(results, total, etag, weight);
+        result.setFreshUntil(freshUntil);
+        return result;
+    }
+
+    private static void writeCharacter(DataOutputStream out, Character character) throws IOException {
+        writeString(out, character.getId());
+        writeString(out, character.getName());
+        writeString(out, character.getNameKey());
+        writeString(out, character.getDescription());
+        writeDate(out, character.getModified());
+        writeString(out, character.getResourceURI());
+        writeString(out, character.getThumbnail());
+        writeDate(out, character.getFetchedAt());
+        writeLong(out, character.getVersion());
+    }
+
+    private static Character readCharacter(Reader in) {
+        Character character = new Character();
+        character.setId(in.string());
+        character.setName(in.string());
+        character.setNameKey(in.string());
+        character.setDescription(in.string());
+        character.setModified(in.date());
+        character.setResourceURI(in.string());
+        character.setThumbnail(in.string());
+        character.setFetchedAt(in.date());
+        character.setVersion(in.nullableLong());
+        return character;
+    }
+
+    private static void writeComic(DataOutputStream out, Comic comic) throws IOException {
+        writeString(out, comic.getId());
+        writeString(out, comic.getTitle());
+        writeString(out, comic.getTitleKey());
+        writeString(out, comic.getDescription());
+        writeDate(out, comic.getModified());
+        writeString(out, comic.getFormat());
+        out.writeBoolean(comic.getPageCount() != null);
+        if (comic.getPageCount() != null) {
+            out.writeInt(comic.getPageCount());
+        }
+        writeString(out, comic.getResourceURI());
+        writeString(out, comic.getSeries());
+        int[] characterIds = comic.getCharacterIds();
+        out.writeInt(characterIds == null ? -1 : characterIds.length);
+        if (characterIds != null) {
+            for (int id : characterIds) {
+                out.writeInt(id);
+            }
+        }
+        writeString(out, comic.getThumbnail());
+        writeDate(out, comic.getFetchedAt());
+        writeLong(out, comic.getVersion());
+    }
+
+    private static Comic readComic(Reader in) {
+        Comic comic = new Comic();
+        comic.setId(in.string());
+        comic.setTitle(in.string());
+        comic.setTitleKey(in.string());
+        comic.setDescription(in.string());
+        comic.setModified(in.date());
+        comic.setFormat(in.string());
+        comic.setPageCount(in.buffer.get() != 0 ? in.buffer.getInt() : null);
+        comic.setResourceURI(in.string());
+        comic.setSeries(in.string());
+        int ids = in.buffer.getInt();
+        if (ids > in.buffer.remaining() / 4) {
+            throw new BufferUnderflowException();
+        }
+        if (ids >= 0) {
+            int[] characterIds = new int[ids];
+            in.buffer.asIntBuffer().get(characterIds);
+            in.buffer.position(in.buffer.position() + ids * 4);
+            comic.setCharacterIds(characterIds);
+        }
+        comic.setThumbnail(in.string());
+        comic.setFetchedAt(in.date());
+        comic.setVersion(in.nullableLong());
+        return comic;
+    }
+
+    // Length-prefixed UTF-8, -1 for null
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static void writeDate(DataOutputStream out, LocalDateTime value) throws IOException {
+        if (value == null) {
+            out.writeLong(NO_DATE);
+            return;
+        }
+        out.writeLong(value.toEpochSecond(ZoneOffset.UTC));
+        out.writeInt(value.getNano());
+    }
+
+    private static void writeLong(DataOutputStream out, Long value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeLong(value);
+        }
+    }
+
+    // Decodes straight from the mapped buffer; the scratch array is reused for every string
+    private static class Reader {
+
+        private final ByteBuffer buffer;
+        private byte[] scratch = new byte[256];
+
+        Reader(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        String string() {
+            int length = buffer.getInt();
+            if (length < 0) {
+                return null;
+            }
+            if (length > buffer.remaining()) {
+                throw new BufferUnderflowException();
+            }
+            if (length > scratch.length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            buffer.get(scratch, 0, length);
+            return new String(scratch, 0, length, StandardCharsets.UTF_8);
+        }
+
+        LocalDateTime date() {
+            long seconds = buffer.getLong();
+            if (seconds == NO_DATE) {
+                return null;
+            }
+            return LocalDateTime.ofEpochSecond(seconds, buffer.getInt(), ZoneOffset.UTC);
+        }
+
+        Long nullableLong() {
+            return buffer.get() != 0 ? buffer.getLong() : null;
+        }
+
+    }
+
+}
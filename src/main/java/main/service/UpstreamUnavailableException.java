@@ -0,0 +1,17 @@
+package main.service;
+
+// Raised when Marvel can't be asked right now and no cached or mirrored copy can stand in for the answer
+public class UpstreamUnavailableException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public UpstreamUnavailableException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+}
@@ -0,0 +1,185 @@
+package main.controller;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import main.api.BatchItem;
+import main.entities.Character;
+import main.entities.Comic;
+import main.repository.MongoQueries;
+import main.service.EntityMapper;
+import main.service.FieldSet;
+import main.service.JacksonConfig;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.MethodParameter;
+import org.springframework.core.ResolvableType;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.http.converter.json.MappingJacksonValue;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.http.server.ServletServerHttpResponse;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FieldSetAdviceTest {
+
+    private static final String UPSTREAM_COMIC = "{\"id\":1886,\"title\":\"Official Handbook\",\"description\":\"Sequel\","
+            + "\"format\":\"Comic\",\"pageCount\":32,\"series\":{\"name\":\"Official Handbook (2004)\"},"
+            + "\"thumbnail\":{\"path\":\"http://i.annihil.us/u/prod/marvel/i/mg/b/40/4bc64020a4ccc\",\"extension\":\"jpg\"},"
+            + "\"characters\":{\"items\":[{\"resourceURI\":\"http://gateway.marvel.com/v1/public/characters/1009610\"}]}}";
+
+    private final FieldSetAdvice advice = new FieldSetAdvice();
+    private final ObjectMapper objectMapper = objectMapper();
+
+    @Test
+    void relationEndpointFiltersByTheEntityItReturns() throws IOException {
+        assertThat(FieldSetAdvice.parser(ResolvableType.forMethodParameter(handler(CharactersController.class, "getCharacterComics"))))
+                .hasValueSatisfying(parse -> assertThat(parse.apply("title")).hasToString("id,title"));
+
+        JsonNode json = write(List.of(comic()), handler(CharactersController.class, "getCharacterComics"), "title,format");
+
+        assertThat(fieldNames(json.get(0))).containsExactlyInAnyOrder("id", "title", "format");
+    }
+
+    @Test
+    void byIdAndBatchResponsesAreFiltered() throws IOException {
+        Character character = new Character();
+        character.setId("1009610");
+        character.setName("Spider-Man");
+        character.setDescription("Bitten");
+        character.setFetchedAt(LocalDateTime.of(2021, 9, 1, 12, 0));
+
+        JsonNode single = write(character, handler(CharactersController.class, "getCharacter"), "name");
+        JsonNode batch = write(List.of(new BatchItem<>("1009610", true, false, character)),
+                handler(CharactersController.class, "getCharactersByIds"), "name");
+
+        assertThat(fieldNames(single)).containsExactlyInAnyOrder("id", "name");
+        // Only the entity is filtered, the batch envelope keeps its own properties
+        assertThat(fieldNames(batch.get(0))).containsExactlyInAnyOrder("id", "found", "stale", "data");
+        assertThat(fieldNames(batch.get(0).get("data"))).containsExactlyInAnyOrder("id", "name");
+    }
+
+    @Test
+    void responsesWithoutEntitiesAreLeftAlone() throws IOException {
+        MappingJacksonValue container = new MappingJacksonValue(List.of());
+        advice.beforeBodyWrite(container, handler(CharactersController.class, "getNeighbours"), MediaType.APPLICATION_JSON,
+                MappingJackson2HttpMessageConverter.class, request("name"), new ServletServerHttpResponse(new MockHttpServletResponse()));
+
+        assertThat(container.getFilters()).isNull();
+    }
+
+    @Test
+    void locallyProjectedComicSerializesTheSelection() throws IOException {
+        FieldSet fields = FieldSet.comics("title,thumbnail");
+        Query query = new Query();
+        MongoQueries.project(query, fields.getNames(), Sort.by("titleKey", "_id"));
+        Document stored = new Document("_id", "1886").append("title", "Official Handbook").append("titleKey", "official handbook")
+                .append("description", "Sequel").append("format", "Comic").append("pageCount", 32)
+                .append("thumbnail", "http://i.annihil.us/u/prod/marvel/i/mg/b/40/4bc64020a4ccc.jpg");
+        Document projected = new Document();
+        query.getFieldsObject().keySet().stream().filter(stored::containsKey).forEach(key -> projected.append(key, stored.get(key)));
+
+        assertThat(query.getFieldsObject().keySet()).containsExactlyInAnyOrder("_id", "title", "thumbnail", "titleKey");
+        Comic comic = converter().read(Comic.class, projected);
+        JsonNode json = write(List.of(comic), handler(ComicsController.class, "getComics"), "title,thumbnail");
+
+        assertThat(fieldNames(json.get(0))).containsExactlyInAnyOrder("id", "title", "thumbnail");
+        assertThat(json.get(0).get("title").asText()).isEqualTo("Official Handbook");
+    }
+
+    @Test
+    void upstreamDecodedComicSerializesTheSelection() throws IOException {
+        FieldSet fields = FieldSet.comics("title,thumbnail");
+        Comic comic;
+        try (JsonParser parser = objectMapper.getFactory().createParser(UPSTREAM_COMIC)) {
+            parser.nextToken();
+            comic = new EntityMapper().readComic(parser, fields);
+        }
+
+        // Unselected properties are skipped while decoding, fetchedAt is set but filtered on the way out
+        assertThat(comic.getDescription()).isNull();
+        assertThat(comic.getCharacterIds()).isNull();
+        JsonNode json = write(List.of(comic), handler(ComicsController.class, "getComics"), "title,thumbnail");
+
+        assertThat(fieldNames(json.get(0))).containsExactlyInAnyOrder("id", "title", "thumbnail");
+        assertThat(json.get(0).get("thumbnail").asText()).isEqualTo("http://i.annihil.us/u/prod/marvel/i/mg/b/40/4bc64020a4ccc.jpg");
+    }
+
+    @Test
+    void withoutSelectionEveryPropertyIsWritten() throws IOException {
+        JsonNode json = write(List.of(comic()), handler(ComicsController.class, "getComics"), null);
+
+        assertThat(fieldNames(json.get(0))).contains("id", "title", "description", "format", "pageCount");
+    }
+
+    private JsonNode write(Object body, MethodParameter returnType, String fields) throws IOException {
+        MappingJacksonValue container = (MappingJacksonValue) advice.beforeBodyWrite(body, returnType, MediaType.APPLICATION_JSON,
+                MappingJackson2HttpMessageConverter.class, request(fields), new ServletServerHttpResponse(new MockHttpServletResponse()));
+        ObjectMapper mapper = container.getFilters() == null ? objectMapper : objectMapper.copy().setFilterProvider(container.getFilters());
+        return objectMapper.readTree(mapper.writeValueAsString(container.getValue()));
+    }
+
+    private static ServletServerHttpRequest request(String fields) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/");
+        if (fields != null) {
+            request.setParameter("fields", fields);
+        }
+        return new ServletServerHttpRequest(request);
+    }
+
+    private static MethodParameter handler(Class<?> controller, String name) {
+        Method method = Arrays.stream(controller.getDeclaredMethods()).filter(candidate -> candidate.getName().equals(name))
+                .findFirst().orElseThrow();
+        return new MethodParameter(method, -1);
+    }
+
+    private static List<String> fieldNames(JsonNode node) {
+        List<String> names = new ArrayList<>();
+        node.fieldNames().forEachRemaining(names::add);
+        return names;
+    }
+
+    private static Comic comic() {
+        Comic comic = new Comic();
+        comic.setId("1886");
+        comic.setTitle("Official Handbook");
+        comic.setDescription("Sequel");
+        comic.setFormat("Comic");
+        comic.setPageCount(32);
+        return comic;
+    }
+
+    private static ObjectMapper objectMapper() {
+        Jackson2ObjectMapperBuilder builder = Jackson2ObjectMapperBuilder.json();
+        new JacksonConfig().fieldSetFilter().customize(builder);
+        return builder.build();
+    }
+
+    private static MappingMongoConverter converter() {
+        MongoCustomConversions conversions = new MongoCustomConversions(List.of());
+        MongoMappingContext context = new MongoMappingContext();
+        context.setSimpleTypeHolder(conversions.getSimpleTypeHolder());
+        MappingMongoConverter converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, context);
+        converter.setCustomConversions(conversions);
+        converter.afterPropertiesSet();
+        return converter;
+    }
+
+}
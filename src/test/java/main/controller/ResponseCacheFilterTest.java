@@ -0,0 +1,26 @@
+package main.controller;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ResponseCacheFilterTest {
+
+    private static final String ETAG = "\"abc.jpg\"";
+
+    @Test
+    void matchesExactWeakWildcardAndListedTags() {
+        assertThat(ResponseCacheFilter.matches(ETAG, ETAG)).isTrue();
+        assertThat(ResponseCacheFilter.matches("W/" + ETAG, ETAG)).isTrue();
+        assertThat(ResponseCacheFilter.matches("*", ETAG)).isTrue();
+        assertThat(ResponseCacheFilter.matches("\"other\", " + ETAG, ETAG)).isTrue();
+    }
+
+    @Test
+    void missesAbsentAndDifferentTags() {
+        assertThat(ResponseCacheFilter.matches(null, ETAG)).isFalse();
+        assertThat(ResponseCacheFilter.matches("\"other\"", ETAG)).isFalse();
+        assertThat(ResponseCacheFilter.matches("\"abc.jpg", ETAG)).isFalse();
+    }
+
+}
@@ -0,0 +1,68 @@
+package main.repository;
+
+import main.entities.Character;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CharactersRepositoryImplTest extends MongoRepositoryTest {
+
+    private CharactersRepositoryImpl repository;
+
+    @BeforeEach
+    void setUp() {
+        repository = new CharactersRepositoryImpl(mongoTemplate);
+    }
+
+    @Test
+    void localEditOfAMirroredDocumentSurvivesTheNextMirrorWrite() {
+        repository.upsertMirrored(List.of(mirrored("1011334", "3-D Man")));
+
+        repository.saveVersioned(local("1011334", "Edited locally", null), null, false, MongoUpdates.keptOnClientWrite(null));
+        repository.upsertMirrored(List.of(mirrored("1011334", "3-D Man")));
+
+        Character stored = mongoTemplate.findById("1011334", Character.class);
+        assertThat(stored.getName()).isEqualTo("Edited locally");
+        assertThat(stored.getFetchedAt()).isNull();
+        assertThat(stored.getThumbnail()).isEqualTo("http://i.annihil.us/3-D Man.jpg");
+    }
+
+    @Test
+    void emptyThumbnailInTheRequestClearsTheStoredOne() {
+        repository.upsertMirrored(List.of(mirrored("1011334", "3-D Man")));
+
+        repository.saveVersioned(local("1011334", "3-D Man", null), null, false, MongoUpdates.keptOnClientWrite(""));
+
+        assertThat(mongoTemplate.findById("1011334", Character.class).getThumbnail()).isNull();
+    }
+
+    @Test
+    void suppliedThumbnailReplacesTheStoredOne() {
+        repository.upsertMirrored(List.of(mirrored("1011334", "3-D Man")));
+
+        String thumbnail = "http://example.com/new.jpg";
+        repository.saveVersioned(local("1011334", "3-D Man", thumbnail), null, false, MongoUpdates.keptOnClientWrite(thumbnail));
+
+        assertThat(mongoTemplate.findById("1011334", Character.class).getThumbnail()).isEqualTo(thumbnail);
+    }
+
+    private static Character mirrored(String id, String name) {
+        Character character = local(id, name, "http://i.annihil.us/" + name + ".jpg");
+        character.setFetchedAt(LocalDateTime.now());
+        return character;
+    }
+
+    private static Character local(String id, String name, String thumbnail) {
+        Character character = new Character();
+        character.setId(id);
+        character.setName(name);
+        character.setNameKey(MongoQueries.searchKey(name));
+        character.setThumbnail(thumbnail);
+        return character;
+    }
+
+}
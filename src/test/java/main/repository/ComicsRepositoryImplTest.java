@@ -0,0 +1,44 @@
+package main.repository;
+
+import main.entities.Comic;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ComicsRepositoryImplTest extends MongoRepositoryTest {
+
+    private ComicsRepositoryImpl repository;
+
+    @BeforeEach
+    void setUp() {
+        repository = new ComicsRepositoryImpl(mongoTemplate);
+    }
+
+    @Test
+    void clientWriteKeepsTheRelationsMarvelListed() {
+        Comic mirrored = comic("1886", "Official Handbook");
+        mirrored.setCharacterIds(new int[]{1009610, 1009368});
+        mirrored.setFetchedAt(LocalDateTime.now());
+        repository.upsertMirrored(List.of(mirrored));
+
+        repository.saveVersioned(comic("1886", "Official Handbook, revised"), null, false, MongoUpdates.keptOnClientWrite(null));
+
+        Comic stored = mongoTemplate.findById("1886", Comic.class);
+        assertThat(stored.getTitle()).isEqualTo("Official Handbook, revised");
+        assertThat(stored.getCharacterIds()).containsExactly(1009610, 1009368);
+        assertThat(stored.getFetchedAt()).isNull();
+    }
+
+    private static Comic comic(String id, String title) {
+        Comic comic = new Comic();
+        comic.setId(id);
+        comic.setTitle(title);
+        comic.setTitleKey(MongoQueries.searchKey(title));
+        return comic;
+    }
+
+}
@@ -0,0 +1,107 @@
+package main.repository;
+
+import com.mongodb.ExplainVerbosity;
+import main.entities.Character;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.convert.QueryMapper;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Deep pages must cost what the first one does: measured as index keys examined, which unlike latency is deterministic
+class KeysetPagingTest extends MongoRepositoryTest {
+
+    private static final int DOCUMENTS = 5000;
+    private static final int LIMIT = 100;
+    private static final Map<String, String> SORTS = Map.of("name", "nameKey", "modified", "modified");
+
+    private CharactersRepositoryImpl repository;
+    private final List<Character> stored = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        MongoPersistentEntityIndexResolver resolver = new MongoPersistentEntityIndexResolver(mongoTemplate.getConverter().getMappingContext());
+        resolver.resolveIndexFor(Character.class).forEach(mongoTemplate.indexOps(Character.class)::ensureIndex);
+        repository = new CharactersRepositoryImpl(mongoTemplate);
+        for (int i = 0; i < DOCUMENTS; i++) {
+            Character character = new Character();
+            character.setId(String.format("%05d", (i * 7919) % DOCUMENTS));
+            // Repeated names and dates, so pages break inside runs of equal sort values
+            character.setName("Hero " + (i % 700));
+            character.setNameKey(MongoQueries.searchKey(character.getName()));
+            character.setModified(i % 7 == 0 ? null : LocalDateTime.of(2014, 1, 1, 0, 0).plusDays(i % 365));
+            stored.add(character);
+        }
+        mongoTemplate.insertAll(stored);
+    }
+
+    @Test
+    void cursorWalkReturnsEveryDocumentOnceInSortOrder() {
+        for (String orderBy : List.of("name", "-name", "modified", "-modified")) {
+            List<String> walked = new ArrayList<>();
+            String cursor = null;
+            do {
+                KeysetPage<Character> page = repository.findLocal(null, null, null, orderBy, LIMIT, 0, cursor, null);
+                page.getItems().forEach(character -> walked.add(character.getId()));
+                cursor = page.getNextCursor();
+            } while (cursor != null);
+
+            assertThat(walked).as(orderBy).isEqualTo(expected(orderBy));
+        }
+    }
+
+    @Test
+    void deepCursorPageExaminesNoMoreKeysThanTheFirst() {
+        for (String orderBy : List.of("name", "-name", "modified", "-modified")) {
+            Sort sort = MongoQueries.sort(orderBy, SORTS, "name");
+            String cursor = null;
+            for (int page = 0; page < 40; page++) {
+                cursor = repository.findLocal(null, null, null, orderBy, LIMIT, 0, cursor, null).getNextCursor();
+            }
+
+            long first = keysExamined(CharactersRepositoryImpl.query(null, null, null, sort, null));
+            long deep = keysExamined(CharactersRepositoryImpl.query(null, null, null, sort, cursor));
+            long offset = keysExamined(CharactersRepositoryImpl.query(null, null, null, sort, null).skip(40 * LIMIT));
+
+            assertThat(deep).as(orderBy).isLessThanOrEqualTo(first + LIMIT);
+            assertThat(offset).as(orderBy).isGreaterThanOrEqualTo(40 * LIMIT);
+        }
+    }
+
+    private long keysExamined(Query query) {
+        QueryMapper mapper = new QueryMapper(mongoTemplate.getConverter());
+        Document filter = mapper.getMappedObject(query.getQueryObject(), mongoTemplate.getConverter().getMappingContext().getPersistentEntity(Character.class));
+        Document plan = mongoTemplate.getCollection(mongoTemplate.getCollectionName(Character.class))
+                .find(filter)
+                .sort(query.getSortObject())
+                .hintString(query.getHint())
+                .skip((int) query.getSkip())
+                .limit(LIMIT)
+                .explain(ExplainVerbosity.EXECUTION_STATS);
+        return plan.get("executionStats", Document.class).get("totalKeysExamined", Number.class).longValue();
+    }
+
+    private List<String> expected(String orderBy) {
+        // Mongo orders a missing value before any other
+        Comparator<Character> comparator = orderBy.endsWith("name")
+                ? Comparator.comparing(Character::getNameKey, Comparator.nullsFirst(Comparator.<String>naturalOrder()))
+                : Comparator.comparing(Character::getModified, Comparator.nullsFirst(Comparator.<LocalDateTime>naturalOrder()));
+        comparator = comparator.thenComparing(Character::getId);
+        if (orderBy.startsWith("-")) {
+            comparator = comparator.reversed();
+        }
+        return stored.stream().sorted(comparator).map(Character::getId).collect(Collectors.toList());
+    }
+
+}
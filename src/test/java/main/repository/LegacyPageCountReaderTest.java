@@ -0,0 +1,71 @@
+package main.repository;
+
+import main.entities.Comic;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.mapping.event.AfterLoadEvent;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LegacyPageCountReaderTest {
+
+    private final LegacyPageCountReader reader = new LegacyPageCountReader();
+    private final MappingMongoConverter converter = converter();
+
+    @Test
+    void parsesPlainNumbers() {
+        assertThat(LegacyPageCountReader.parse("32")).isEqualTo(32);
+        assertThat(LegacyPageCountReader.parse(" 32 ")).isEqualTo(32);
+        assertThat(LegacyPageCountReader.parse("+7")).isEqualTo(7);
+        assertThat(LegacyPageCountReader.parse("-7")).isEqualTo(-7);
+        assertThat(LegacyPageCountReader.parse("0")).isEqualTo(0);
+    }
+
+    @Test
+    void rejectsEverythingElse() {
+        assertThat(LegacyPageCountReader.parse("null")).isNull();
+        assertThat(LegacyPageCountReader.parse("about 30")).isNull();
+        assertThat(LegacyPageCountReader.parse("")).isNull();
+        assertThat(LegacyPageCountReader.parse("-")).isNull();
+        assertThat(LegacyPageCountReader.parse("12.5")).isNull();
+        assertThat(LegacyPageCountReader.parse("99999999999")).isNull();
+    }
+
+    @Test
+    void legacyStringsLoadInsteadOfFailingTheDocument() {
+        assertThat(load("null").getPageCount()).isNull();
+        assertThat(load("about 30").getPageCount()).isNull();
+        assertThat(load(" 32 ").getPageCount()).isEqualTo(32);
+        assertThat(load(48).getPageCount()).isEqualTo(48);
+    }
+
+    @Test
+    void leavesTheRestOfTheDocumentAlone() {
+        Comic comic = load("null");
+        assertThat(comic.getId()).isEqualTo("1886");
+        assertThat(comic.getTitle()).isEqualTo("Official Handbook");
+    }
+
+    private static MappingMongoConverter converter() {
+        MongoCustomConversions conversions = new MongoCustomConversions(List.of());
+        MongoMappingContext context = new MongoMappingContext();
+        context.setSimpleTypeHolder(conversions.getSimpleTypeHolder());
+        MappingMongoConverter converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, context);
+        converter.setCustomConversions(conversions);
+        converter.afterPropertiesSet();
+        return converter;
+    }
+
+    private Comic load(Object pageCount) {
+        Document document = new Document("_id", "1886").append("title", "Official Handbook").append(LegacyPageCountReader.FIELD, pageCount);
+        reader.onAfterLoad(new AfterLoadEvent<>(document, Comic.class, "comics"));
+        return converter.read(Comic.class, document);
+    }
+
+}
@@ -0,0 +1,148 @@
+package main.repository;
+
+import main.entities.Character;
+import main.entities.Comic;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.convert.QueryMapper;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Every filter and orderBy a local listing accepts must be an index scan in sort order: no COLLSCAN, no in-memory SORT
+class LocalListingPlanTest extends MongoRepositoryTest {
+
+    private static final List<String> CHARACTER_ORDERS = List.of("name", "-name", "modified", "-modified");
+    private static final List<String> COMIC_ORDERS = List.of("title", "-title", "modified", "-modified");
+    private static final Map<String, String> CHARACTER_SORTS = Map.of("name", "nameKey", "modified", "modified");
+    private static final Map<String, String> COMIC_SORTS = Map.of("title", "titleKey", "modified", "modified");
+
+    private CharactersRepositoryImpl characters;
+    private ComicsRepositoryImpl comics;
+
+    @BeforeEach
+    void setUp() {
+        MongoPersistentEntityIndexResolver resolver = new MongoPersistentEntityIndexResolver(mongoTemplate.getConverter().getMappingContext());
+        resolver.resolveIndexFor(Character.class).forEach(mongoTemplate.indexOps(Character.class)::ensureIndex);
+        resolver.resolveIndexFor(Comic.class).forEach(mongoTemplate.indexOps(Comic.class)::ensureIndex);
+        characters = new CharactersRepositoryImpl(mongoTemplate);
+        comics = new ComicsRepositoryImpl(mongoTemplate);
+        for (int i = 0; i < 200; i++) {
+            Character character = new Character();
+            character.setId(String.valueOf(1000 + i));
+            character.setName((i % 2 == 0 ? "Spider " : "Iron ") + i);
+            character.setNameKey(MongoQueries.searchKey(character.getName()));
+            character.setModified(i % 10 == 0 ? null : LocalDateTime.of(2014, 1, 1, 0, 0).plusHours(i));
+            mongoTemplate.insert(character);
+            Comic comic = new Comic();
+            comic.setId(String.valueOf(2000 + i));
+            comic.setTitle((i % 2 == 0 ? "Amazing " : "Uncanny ") + i);
+            comic.setTitleKey(MongoQueries.searchKey(comic.getTitle()));
+            comic.setFormat(i % 3 == 0 ? "Comic" : "Trade Paperback");
+            comic.setModified(i % 10 == 0 ? null : LocalDateTime.of(2014, 1, 1, 0, 0).plusHours(i));
+            mongoTemplate.insert(comic);
+        }
+    }
+
+    @Test
+    void characterListingsScanTheSortIndex() {
+        for (String orderBy : CHARACTER_ORDERS) {
+            Sort sort = MongoQueries.sort(orderBy, CHARACTER_SORTS, "name");
+            assertIndexOrdered(Character.class, CharactersRepositoryImpl.query(null, null, null, sort, null), orderBy);
+            if (orderBy.endsWith("name")) {
+                assertIndexOrdered(Character.class, CharactersRepositoryImpl.query(null, "Spider 4", null, sort, null), orderBy + " name");
+                assertIndexOrdered(Character.class, CharactersRepositoryImpl.query(null, null, "spi", sort, null), orderBy + " nameStartsWith");
+            }
+        }
+    }
+
+    @Test
+    void comicListingsScanTheSortIndex() {
+        for (String orderBy : COMIC_ORDERS) {
+            Sort sort = MongoQueries.sort(orderBy, COMIC_SORTS, "title");
+            assertIndexOrdered(Comic.class, ComicsRepositoryImpl.query(null, null, null, null, sort, null), orderBy);
+            assertIndexOrdered(Comic.class, ComicsRepositoryImpl.query(null, "trade paperback", null, null, sort, null), orderBy + " format");
+            if (orderBy.endsWith("title")) {
+                assertIndexOrdered(Comic.class, ComicsRepositoryImpl.query(null, null, "Amazing 4", null, sort, null), orderBy + " title");
+                assertIndexOrdered(Comic.class, ComicsRepositoryImpl.query(null, null, null, "ama", sort, null), orderBy + " titleStartsWith");
+                assertIndexOrdered(Comic.class, ComicsRepositoryImpl.query(null, "comic", null, "ama", sort, null), orderBy + " format titleStartsWith");
+            }
+        }
+    }
+
+    @Test
+    void nextPagesSeekTheSortIndex() {
+        for (String orderBy : CHARACTER_ORDERS) {
+            String cursor = characters.findLocal(null, null, null, orderBy, 25, 0, null, null).getNextCursor();
+            Sort sort = MongoQueries.sort(orderBy, CHARACTER_SORTS, "name");
+            assertIndexOrdered(Character.class, CharactersRepositoryImpl.query(null, null, null, sort, cursor), orderBy + " cursor");
+        }
+        for (String orderBy : COMIC_ORDERS) {
+            String cursor = comics.findLocal(null, "comic", null, null, orderBy, 25, 0, null, null).getNextCursor();
+            Sort sort = MongoQueries.sort(orderBy, COMIC_SORTS, "title");
+            assertIndexOrdered(Comic.class, ComicsRepositoryImpl.query(null, "comic", null, null, sort, cursor), orderBy + " format cursor");
+        }
+    }
+
+    @Test
+    void nameFilterWithAnotherSortIsRejected() {
+        assertThat(characters.findLocal(null, null, "spi", "modified", 20, 0, null, null)).isNull();
+        assertThat(characters.streamLocal("Spider 4", null, "-modified", 100, null)).isNull();
+        assertThat(comics.findLocal(null, null, null, "ama", "modified", 20, 0, null, null)).isNull();
+        // An empty prefix filters nothing, so it does not restrict the sort
+        assertThat(characters.findLocal(null, null, "", "modified", 20, 0, null, null)).isNotNull();
+    }
+
+    @Test
+    void relationIdListsNeverScanTheCollection() {
+        List<String> ids = List.of("2000", "2003", "2042", "2101");
+        for (String orderBy : COMIC_ORDERS) {
+            Sort sort = MongoQueries.sort(orderBy, COMIC_SORTS, "title");
+            List<String> stages = stages(explain(Comic.class, ComicsRepositoryImpl.query(ids, null, null, null, sort, null)));
+            assertThat(stages).as(orderBy).contains("IXSCAN").doesNotContain("COLLSCAN");
+        }
+    }
+
+    private void assertIndexOrdered(Class<?> type, Query query, String description) {
+        assertThat(query).as(description).isNotNull();
+        List<String> stages = stages(explain(type, query));
+        assertThat(stages).as(description).contains("IXSCAN").doesNotContain("COLLSCAN", "SORT");
+    }
+
+    private Document explain(Class<?> type, Query query) {
+        QueryMapper mapper = new QueryMapper(mongoTemplate.getConverter());
+        Document filter = mapper.getMappedObject(query.getQueryObject(), mongoTemplate.getConverter().getMappingContext().getPersistentEntity(type));
+        Document plan = mongoTemplate.getCollection(mongoTemplate.getCollectionName(type))
+                .find(filter)
+                .sort(query.getSortObject())
+                .hintString(query.getHint())
+                .limit(20)
+                .explain();
+        return plan.get("queryPlanner", Document.class).get("winningPlan", Document.class);
+    }
+
+    private static List<String> stages(Document plan) {
+        List<String> stages = new ArrayList<>();
+        collect(plan, stages);
+        return stages;
+    }
+
+    private static void collect(Document stage, List<String> stages) {
+        stages.add(stage.getString("stage"));
+        if (stage.containsKey("inputStage")) {
+            collect(stage.get("inputStage", Document.class), stages);
+        }
+        for (Document input : stage.getList("inputStages", Document.class, List.of())) {
+            collect(input, stages);
+        }
+    }
+
+}
@@ -0,0 +1,93 @@
+package main.repository;
+
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.query.Criteria;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MongoQueriesTest {
+
+    private static final Map<String, String> FIELDS = Map.of("name", "nameKey", "modified", "modified");
+    private static final Sort BY_NAME = MongoQueries.sort("name", FIELDS, "name");
+    private static final Sort BY_MODIFIED_DESC = MongoQueries.sort("-modified", FIELDS, "name");
+
+    @Test
+    void sortMapsOrderByOntoIndexedFieldsWithIdTieBreaker() {
+        assertThat(MongoQueries.sort(null, FIELDS, "name")).isEqualTo(Sort.by(Sort.Direction.ASC, "nameKey", "_id"));
+        assertThat(MongoQueries.sort(" -modified ", FIELDS, "name")).isEqualTo(Sort.by(Sort.Direction.DESC, "modified", "_id"));
+        assertThat(MongoQueries.sort("description", FIELDS, "name")).isNull();
+        assertThat(MongoQueries.sort("-", FIELDS, "name")).isNull();
+    }
+
+    @Test
+    void cursorSeeksPastTheLastRow() {
+        Document after = MongoQueries.after(BY_NAME, MongoQueries.cursor(BY_NAME, "spider-man", "1009610")).getCriteriaObject();
+
+        assertThat(after.get("nameKey")).isEqualTo(new Document("$gte", "spider-man"));
+        assertThat(after.getList("$or", Document.class)).containsExactly(
+                new Document("nameKey", new Document("$gt", "spider-man")),
+                new Document("_id", new Document("$gt", "1009610")));
+    }
+
+    @Test
+    void dateAndNullValuesSurviveTheRoundTrip() {
+        LocalDateTime modified = LocalDateTime.of(2014, 4, 29, 14, 18, 17);
+        Document after = MongoQueries.after(BY_MODIFIED_DESC, MongoQueries.cursor(BY_MODIFIED_DESC, modified, "7")).getCriteriaObject();
+        // Rows with no date sort last in a descending scan, so they always follow a dated row
+        assertThat(after.getList("$or", Document.class)).containsExactly(
+                new Document("modified", new Document("$lte", modified)).append("$or", List.of(
+                        new Document("modified", new Document("$lt", modified)),
+                        new Document("_id", new Document("$lt", "7")))),
+                new Document("modified", null));
+
+        Document afterNull = MongoQueries.after(BY_MODIFIED_DESC, MongoQueries.cursor(BY_MODIFIED_DESC, null, "7")).getCriteriaObject();
+        assertThat(afterNull).isEqualTo(new Document("modified", null).append("_id", new Document("$lt", "7")));
+    }
+
+    @Test
+    void cursorIssuedForAnotherSortIsRejected() {
+        String byName = MongoQueries.cursor(BY_NAME, "spider-man", "1009610");
+
+        assertThat(MongoQueries.after(BY_MODIFIED_DESC, byName)).isNull();
+        assertThat(MongoQueries.after(MongoQueries.sort("-name", FIELDS, "name"), byName)).isNull();
+    }
+
+    @Test
+    void tamperedCursorIsRejected() {
+        String cursor = MongoQueries.cursor(BY_NAME, "spider-man", "1009610");
+        String[] parts = cursor.split("\\.");
+
+        for (String tampered : List.of(
+                "",
+                "garbage",
+                cursor + ".extra",
+                cursor.substring(0, cursor.lastIndexOf('.')) + ".",
+                parts[0] + "." + parts[1] + "." + parts[2] + ".x" + encode("spider-man"),
+                parts[0] + "." + parts[1] + "." + parts[2] + ".t" + encode("yesterday"),
+                parts[0] + "." + parts[1] + "." + "!!!" + "." + parts[3],
+                encode("nameKey") + ".X." + parts[2] + "." + parts[3])) {
+            assertThat(MongoQueries.after(BY_NAME, tampered)).as(tampered).isNull();
+        }
+    }
+
+    @Test
+    void startsWithIsAHalfOpenRangeAndIgnoresAnEmptyPrefix() {
+        Document range = MongoQueries.startsWith(new Criteria(), "nameKey", " Spi").getCriteriaObject();
+        assertThat(range.get("nameKey")).isEqualTo(new Document("$gte", "spi").append("$lt", "spj"));
+
+        assertThat(MongoQueries.startsWith(new Criteria(), "nameKey", "  ").getCriteriaObject()).isEmpty();
+    }
+
+    private static String encode(String value) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+}
@@ -0,0 +1,40 @@
+package main.repository;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+// A real mongod per test class; every test starts from an empty database
+@Testcontainers(disabledWithoutDocker = true)
+abstract class MongoRepositoryTest {
+
+    @Container
+    private static final MongoDBContainer MONGO = new MongoDBContainer("mongo:4.4");
+
+    private static MongoClient client;
+
+    protected MongoTemplate mongoTemplate;
+
+    @BeforeAll
+    static void connect() {
+        client = MongoClients.create(MONGO.getReplicaSetUrl());
+    }
+
+    @AfterAll
+    static void disconnect() {
+        client.close();
+    }
+
+    @BeforeEach
+    void resetDatabase() {
+        client.getDatabase("marvel").drop();
+        mongoTemplate = new MongoTemplate(client, "marvel");
+    }
+
+}
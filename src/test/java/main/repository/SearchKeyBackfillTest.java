@@ -0,0 +1,37 @@
+package main.repository;
+
+import main.entities.Character;
+import main.entities.Comic;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SearchKeyBackfillTest extends MongoRepositoryTest {
+
+    @Test
+    void derivesMissingKeysAcrossBatches() {
+        for (int i = 0; i < 5; i++) {
+            mongoTemplate.insert(new Document("_id", "c" + i).append("name", " Spider-Man " + i), "characters");
+        }
+        mongoTemplate.insert(new Document("_id", "nameless"), "characters");
+
+        long updated = new CharactersRepositoryImpl(mongoTemplate).backfillSearchKeys(2);
+
+        assertThat(updated).isEqualTo(5);
+        assertThat(mongoTemplate.findById("c3", Character.class).getNameKey()).isEqualTo("spider-man 3");
+        assertThat(mongoTemplate.findById("nameless", Character.class).getNameKey()).isNull();
+        assertThat(new CharactersRepositoryImpl(mongoTemplate).backfillSearchKeys(2)).isZero();
+    }
+
+    @Test
+    void leavesExistingKeysAlone() {
+        mongoTemplate.insert(new Document("_id", "1").append("title", "Amazing Fantasy").append("titleKey", "custom"), "comics");
+        mongoTemplate.insert(new Document("_id", "2").append("title", "X-Men"), "comics");
+
+        assertThat(new ComicsRepositoryImpl(mongoTemplate).backfillSearchKeys(100)).isEqualTo(1);
+        assertThat(mongoTemplate.findById("1", Comic.class).getTitleKey()).isEqualTo("custom");
+        assertThat(mongoTemplate.findById("2", Comic.class).getTitleKey()).isEqualTo("x-men");
+    }
+
+}
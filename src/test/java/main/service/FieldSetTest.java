@@ -0,0 +1,41 @@
+package main.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FieldSetTest {
+
+    @Test
+    void absentParameterSelectsNothing() {
+        assertThat(FieldSet.characters(null)).isNull();
+        assertThat(FieldSet.comics(null)).isNull();
+    }
+
+    @Test
+    void unknownNameIsRejected() {
+        // Null is what the controllers answer with 400
+        assertThat(FieldSet.characters("name,title")).isNull();
+        assertThat(FieldSet.comics("title,name")).isNull();
+        assertThat(FieldSet.characters("nameKey")).isNull();
+        assertThat(FieldSet.comics("characterIds")).isNull();
+    }
+
+    @Test
+    void idIsAlwaysSelected() {
+        assertThat(FieldSet.characters("name").getNames()).containsExactly("id", "name");
+        assertThat(FieldSet.comics("").getNames()).containsExactly("id");
+        assertThat(FieldSet.comics("id").getNames()).containsExactly("id");
+    }
+
+    @Test
+    void canonicalFormIgnoresOrderSpacingAndRepeats() {
+        FieldSet selected = FieldSet.comics(" thumbnail,title,, title ,format");
+
+        assertThat(selected).hasToString("format,id,thumbnail,title");
+        assertThat(FieldSet.comics("title,format,thumbnail")).hasToString(selected.toString());
+        assertThat(selected.contains("title")).isTrue();
+        assertThat(selected.contains("description")).isFalse();
+    }
+
+}
@@ -0,0 +1,78 @@
+package main.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MirrorServiceTest {
+
+    // One thread and a one-slot queue, so the third task overflows
+    private final ThreadPoolTaskExecutor executor = executor();
+    private final MirrorService mirrorService = new MirrorService(null, null, null, executor);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        executor.shutdown();
+    }
+
+    @Test
+    void lookupRunsOnTheMirrorPool() throws Exception {
+        String thread = mirrorService.read(() -> Thread.currentThread().getName()).get(5, TimeUnit.SECONDS);
+
+        assertThat(thread).startsWith("mirror-");
+    }
+
+    @Test
+    void failedLookupCompletesExceptionally() {
+        CompletableFuture<Object> result = mirrorService.read(() -> {
+            throw new IllegalStateException("Mongo down");
+        });
+
+        assertThatThrownBy(() -> result.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void overflowingLookupRunsOnTheCallerInsteadOfBeingDropped() throws Exception {
+        executor.execute(this::await);
+        executor.execute(this::await);
+
+        CompletableFuture<String> result = mirrorService.read(() -> Thread.currentThread().getName());
+
+        assertThat(result).isCompletedWithValue(Thread.currentThread().getName());
+    }
+
+    @Test
+    void overflowingWriteIsStillDropped() {
+        executor.execute(this::await);
+        executor.execute(this::await);
+        boolean[] ran = new boolean[1];
+
+        executor.execute(() -> ran[0] = true);
+
+        assertThat(ran[0]).isFalse();
+    }
+
+    private void await() {
+        try {
+            release.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static ThreadPoolTaskExecutor executor() {
+        ThreadPoolTaskExecutor executor = new AsyncConfig().mirrorExecutor(1, 1);
+        executor.initialize();
+        return executor;
+    }
+
+}
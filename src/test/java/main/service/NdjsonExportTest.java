@@ -0,0 +1,113 @@
+package main.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import main.entities.Character;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class NdjsonExportTest {
+
+    private final ObjectMapper objectMapper = objectMapper();
+
+    @Test
+    void writesOneLinePerDocumentAndClosesTheCursor() throws IOException {
+        Cursor cursor = new Cursor(3, -1);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        long written = new NdjsonExport<>(cursor, objectMapper, null).writeTo(out);
+
+        assertThat(written).isEqualTo(3);
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertThat(lines).hasSize(3);
+        assertThat(objectMapper.readValue(lines[2], Character.class).getName()).isEqualTo("Hero 2");
+        assertThat(cursor.closed).isTrue();
+    }
+
+    @Test
+    void clientDisconnectingMidExportClosesTheCursor() {
+        Cursor cursor = new Cursor(100_000, -1);
+        OutputStream client = new OutputStream() {
+            private int bytes;
+
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                bytes += len;
+                if (bytes > 64 * 1024) {
+                    throw new IOException("Broken pipe");
+                }
+            }
+        };
+
+        assertThatThrownBy(() -> new NdjsonExport<>(cursor, objectMapper, null).writeTo(client))
+                .isInstanceOf(IOException.class)
+                .hasMessage("Broken pipe");
+        assertThat(cursor.closed).isTrue();
+        // The cursor stops being drained as soon as the write fails
+        assertThat(cursor.next).isLessThan(100_000);
+    }
+
+    @Test
+    void cursorFailingMidExportIsStillClosed() {
+        Cursor cursor = new Cursor(10, 5);
+
+        assertThatThrownBy(() -> new NdjsonExport<>(cursor, objectMapper, null).writeTo(OutputStream.nullOutputStream()))
+                .isInstanceOf(DataAccessResourceFailureException.class);
+        assertThat(cursor.closed).isTrue();
+    }
+
+    private static ObjectMapper objectMapper() {
+        Jackson2ObjectMapperBuilder builder = Jackson2ObjectMapperBuilder.json();
+        new JacksonConfig().fieldSetFilter().customize(builder);
+        return builder.build();
+    }
+
+    private static class Cursor implements CloseableIterator<Character> {
+
+        private final int size;
+        private final int failAt;
+        private int next;
+        private boolean closed;
+
+        Cursor(int size, int failAt) {
+            this.size = size;
+            this.failAt = failAt;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == failAt) {
+                throw new DataAccessResourceFailureException("Cursor lost");
+            }
+            return next < size;
+        }
+
+        @Override
+        public Character next() {
+            Character character = new Character();
+            character.setId(String.valueOf(1009000 + next));
+            character.setName("Hero " + next++);
+            return character;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+}
@@ -0,0 +1,59 @@
+package main.service;
+
+import main.api.Suggestion;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PrefixIndexTest {
+
+    private final PrefixIndex index = new PrefixIndex.Builder()
+            .add("1009610", "Spider-Man")
+            .add("1011054", "Spider-Man (1602)")
+            .add("1009609", "Spider-Girl (May Parker)")
+            .add("1009368", "Iron Man")
+            .add("1017100", "A-Bomb (HAS)")
+            .add("1", "   ")
+            .add(null, "Nameless")
+            .build();
+
+    @Test
+    void emptyOrBlankPrefixSuggestsNothing() {
+        assertThat(index.lookup("", 10)).isEmpty();
+        assertThat(index.lookup("   ", 10)).isEmpty();
+        assertThat(index.lookup(null, 10)).isEmpty();
+    }
+
+    @Test
+    void prefixIsCaseInsensitiveAndSortedByKeyThenId() {
+        assertThat(ids(index.lookup(" SPIDER", 10))).containsExactly("1009609", "1009610", "1011054");
+        assertThat(index.lookup("spider-man", 10)).extracting(Suggestion::getName).containsExactly("Spider-Man", "Spider-Man (1602)");
+    }
+
+    @Test
+    void limitCutsTheRange() {
+        assertThat(ids(index.lookup("spider", 2))).containsExactly("1009609", "1009610");
+        assertThat(index.lookup("spider", 0)).isEmpty();
+    }
+
+    @Test
+    void prefixesOutsideTheKeysSuggestNothing() {
+        assertThat(index.lookup("zz", 10)).isEmpty();
+        assertThat(index.lookup("0", 10)).isEmpty();
+        assertThat(index.lookup("spider-mann", 10)).isEmpty();
+    }
+
+    @Test
+    void blankLabelsAndMissingIdsAreNotIndexed() {
+        assertThat(index.size()).isEqualTo(5);
+        assertThat(PrefixIndex.EMPTY.lookup("a", 10)).isEmpty();
+    }
+
+    private static List<String> ids(List<Suggestion> suggestions) {
+        return suggestions.stream().map(Suggestion::getId).collect(Collectors.toList());
+    }
+
+}
@@ -0,0 +1,97 @@
+package main.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RelationGraphTest {
+
+    // Comic 10: Spider-Man (1), Iron Man (2); comic 20: Spider-Man, Iron Man, Hulk (3); comic 30: Hulk alone
+    private final RelationGraph graph = new RelationGraph.Builder()
+            .add(10, 1).add(10, 2)
+            .add(20, 1).add(20, 2).add(20, 3)
+            .add(30, 3)
+            .add(10, 1)
+            .build();
+
+    @Test
+    void emptyGraphAnswersEverythingWithNothing() {
+        RelationGraph empty = RelationGraph.EMPTY;
+
+        assertThat(empty.characterCount()).isZero();
+        assertThat(empty.comicCount()).isZero();
+        assertThat(empty.edgeCount()).isZero();
+        assertThat(empty.hasCharacter(1)).isFalse();
+        assertThat(empty.comicsOf(1)).isEmpty();
+        assertThat(empty.charactersOf(10)).isEmpty();
+        assertThat(empty.coAppearances(1, 2)).isEmpty();
+        assertThat(empty.topNeighbours(1, 5)).isEmpty();
+    }
+
+    @Test
+    void nodesWithoutEdgesAreUnknownAndEmpty() {
+        // 15 sits between two known comics, 4 past the last character, 0 before the first
+        for (int comicId : new int[]{0, 15, 40, -1}) {
+            assertThat(graph.hasComic(comicId)).isFalse();
+            assertThat(graph.charactersOf(comicId)).isEmpty();
+        }
+        for (int characterId : new int[]{0, 4, -1}) {
+            assertThat(graph.hasCharacter(characterId)).isFalse();
+            assertThat(graph.comicsOf(characterId)).isEmpty();
+            assertThat(graph.topNeighbours(characterId, 5)).isEmpty();
+            assertThat(graph.coAppearances(1, characterId)).isEmpty();
+            assertThat(graph.coAppearances(characterId, 1)).isEmpty();
+        }
+    }
+
+    @Test
+    void characterWhoOnlyAppearsAloneHasNoNeighbours() {
+        RelationGraph solo = new RelationGraph.Builder().add(30, 3).add(10, 1).add(10, 2).build();
+
+        assertThat(solo.comicsOf(3)).containsExactly(30);
+        assertThat(solo.topNeighbours(3, 5)).isEmpty();
+        assertThat(solo.coAppearances(3, 1)).isEmpty();
+    }
+
+    @Test
+    void rowsAreSortedAndDeduplicated() {
+        assertThat(graph.edgeCount()).isEqualTo(6);
+        assertThat(graph.comicsOf(1)).containsExactly(10, 20);
+        assertThat(graph.comicsOf(3)).containsExactly(20, 30);
+        assertThat(graph.charactersOf(20)).containsExactly(1, 2, 3);
+        assertThat(graph.charactersOf(30)).containsExactly(3);
+    }
+
+    @Test
+    void coAppearancesAndNeighboursCountSharedComics() {
+        assertThat(graph.coAppearances(1, 2)).containsExactly(10, 20);
+        assertThat(graph.coAppearances(1, 3)).containsExactly(20);
+        assertThat(graph.topNeighbours(1, 5)).isEqualTo(new int[][]{{2, 2}, {3, 1}});
+        assertThat(graph.topNeighbours(1, 1)).isEqualTo(new int[][]{{2, 2}});
+        assertThat(graph.topNeighbours(1, 0)).isEmpty();
+    }
+
+    @Test
+    void parallelCountMatchesTheSequentialOne() {
+        // Every comic has about 200 characters, so character 0's 100 comics add up to well over the parallel threshold
+        RelationGraph.Builder builder = new RelationGraph.Builder();
+        for (int comic = 0; comic < 100; comic++) {
+            for (int character = 0; character < 300; character++) {
+                if (character == 0 || (character + comic) % 3 != 0) {
+                    builder.add(1000 + comic, character);
+                }
+            }
+        }
+        RelationGraph large = builder.build();
+
+        int[][] top = large.topNeighbours(0, 3);
+
+        assertThat(top.length).isEqualTo(3);
+        for (int[] neighbour : top) {
+            assertThat(neighbour[1]).isEqualTo(large.coAppearances(0, neighbour[0]).length);
+        }
+        assertThat(top[0][1]).isGreaterThanOrEqualTo(top[1][1]);
+        assertThat(top[1][1]).isGreaterThanOrEqualTo(top[2][1]);
+    }
+
+}
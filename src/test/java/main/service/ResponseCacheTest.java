@@ -0,0 +1,77 @@
+package main.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ResponseCacheTest {
+
+    private final ResponseCache cache = new ResponseCache(true, DataSize.ofMegabytes(1), Duration.ofMinutes(1),
+            DataSize.ofKilobytes(1), new SimpleMeterRegistry());
+
+    @Test
+    void mirrorWritesKeepEveryEntry() {
+        put("/characters", IngestionService.CHARACTERS, null, false);
+        put("/characters/1", IngestionService.CHARACTERS, "1", false);
+
+        cache.onCollectionChanged(new CollectionChangedEvent(IngestionService.CHARACTERS, List.of("1"), true));
+
+        assertThat(cache.get("/characters")).isNotNull();
+        assertThat(cache.get("/characters/1")).isNotNull();
+    }
+
+    @Test
+    void localWriteDropsItsDocumentListsAndRelationsOnly() {
+        put("/characters", IngestionService.CHARACTERS, null, false);
+        put("/characters/1", IngestionService.CHARACTERS, "1", false);
+        put("/characters/2", IngestionService.CHARACTERS, "2", false);
+        put("/characters/2/comics", IngestionService.CHARACTERS, null, true);
+        put("/comics", IngestionService.COMICS, null, false);
+
+        cache.onCollectionChanged(new CollectionChangedEvent(IngestionService.CHARACTERS, List.of("1")));
+
+        assertThat(cache.get("/characters")).isNull();
+        assertThat(cache.get("/characters/1")).isNull();
+        assertThat(cache.get("/characters/2")).isNotNull();
+        assertThat(cache.get("/characters/2/comics")).isNull();
+        assertThat(cache.get("/comics")).isNotNull();
+        assertThat(cache.getStats()).containsEntry("invalidated", 3L);
+    }
+
+    @Test
+    void collectionWideWriteDropsEveryDocument() {
+        put("/comics/7", IngestionService.COMICS, "7", false);
+
+        cache.onCollectionChanged(new CollectionChangedEvent(IngestionService.COMICS));
+
+        assertThat(cache.get("/comics/7")).isNull();
+    }
+
+    @Test
+    void responseRenderedAcrossAWriteIsNotKept() {
+        long before = cache.generation(IngestionService.COMICS, false);
+        cache.onCollectionChanged(new CollectionChangedEvent(IngestionService.COMICS, List.of("7")));
+
+        cache.put("/comics/7", response(IngestionService.COMICS, "7", false, before));
+        cache.put("/comics", response(IngestionService.COMICS, null, false, before));
+
+        assertThat(cache.get("/comics/7")).isNull();
+        assertThat(cache.get("/comics")).isNull();
+    }
+
+    private void put(String key, String collection, String id, boolean relation) {
+        cache.put(key, response(collection, id, relation, cache.generation(collection, relation)));
+    }
+
+    private static CachedResponse response(String collection, String id, boolean relation, long generation) {
+        return new CachedResponse("{}".getBytes(StandardCharsets.UTF_8), null, "\"e\"", Map.of(), collection, id, relation, generation);
+    }
+
+}
@@ -0,0 +1,115 @@
+package main.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SingleFlightTest {
+
+    private static final int BURST = 64;
+
+    private final ExecutorService callers = Executors.newFixedThreadPool(16);
+    private final AtomicInteger upstreamHits = new AtomicInteger();
+
+    @AfterEach
+    void tearDown() {
+        callers.shutdownNow();
+    }
+
+    @Test
+    void burstOfIdenticalCallsHitsUpstreamOnce() throws Exception {
+        SingleFlight singleFlight = new SingleFlight(Duration.ofSeconds(5), new SimpleMeterRegistry());
+        for (int round = 1; round <= 3; round++) {
+            CompletableFuture<String> upstream = new CompletableFuture<>();
+            List<CompletableFuture<String>> results = burst(singleFlight, "characters/1011334", upstream);
+            upstream.complete("round " + round);
+            for (CompletableFuture<String> result : results) {
+                assertThat(result.get(5, TimeUnit.SECONDS)).isEqualTo("round " + round);
+            }
+            assertThat(upstreamHits.get()).isEqualTo(round);
+        }
+        assertThat(singleFlight.getStats()).containsEntry("inFlight", 0).containsEntry("leaders", 3L)
+                .containsEntry("coalesced", 3L * (BURST - 1));
+    }
+
+    @Test
+    void differentKeysDoNotShareACall() throws Exception {
+        SingleFlight singleFlight = new SingleFlight(Duration.ofSeconds(5), new SimpleMeterRegistry());
+        CompletableFuture<String> first = singleFlight.execute("characters/1", () -> hit(CompletableFuture.completedFuture("1")));
+        CompletableFuture<String> second = singleFlight.execute("characters/2", () -> hit(CompletableFuture.completedFuture("2")));
+        assertThat(first.get()).isEqualTo("1");
+        assertThat(second.get()).isEqualTo("2");
+        assertThat(upstreamHits.get()).isEqualTo(2);
+    }
+
+    @Test
+    void upstreamFailureReachesEveryCaller() throws Exception {
+        SingleFlight singleFlight = new SingleFlight(Duration.ofSeconds(5), new SimpleMeterRegistry());
+        CompletableFuture<String> upstream = new CompletableFuture<>();
+        List<CompletableFuture<String>> results = burst(singleFlight, "comics/82967", upstream);
+        IllegalStateException failure = new IllegalStateException("upstream broke");
+        upstream.completeExceptionally(failure);
+        for (CompletableFuture<String> result : results) {
+            assertThatThrownBy(() -> result.get(5, TimeUnit.SECONDS))
+                    .isInstanceOf(ExecutionException.class)
+                    .hasCause(failure);
+        }
+        assertThat(upstreamHits.get()).isEqualTo(1);
+        assertThat(singleFlight.getStats()).containsEntry("inFlight", 0);
+    }
+
+    @Test
+    void waiterGivesUpAsUnavailableWithoutTouchingTheLeader() throws Exception {
+        SingleFlight singleFlight = new SingleFlight(Duration.ofMillis(100), new SimpleMeterRegistry());
+        CompletableFuture<String> upstream = new CompletableFuture<>();
+        CompletableFuture<String> leader = singleFlight.execute("comics/1", () -> hit(upstream));
+        CompletableFuture<String> waiter = singleFlight.execute("comics/1", () -> hit(new CompletableFuture<>()));
+        assertThatThrownBy(() -> waiter.get(5, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(UpstreamUnavailableException.class);
+        assertThat(leader).isNotDone();
+        upstream.complete("late");
+        assertThat(leader.get()).isEqualTo("late");
+        assertThat(upstreamHits.get()).isEqualTo(1);
+        assertThat(singleFlight.getStats()).containsEntry("timeouts", 1L);
+    }
+
+    // Releases BURST callers at once and waits until every one of them has joined the flight
+    private List<CompletableFuture<String>> burst(SingleFlight singleFlight, String key, CompletableFuture<String> upstream) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<CompletableFuture<String>>> calls = new ArrayList<>();
+        for (int i = 0; i < BURST; i++) {
+            calls.add(callers.submit(() -> {
+                start.await();
+                return singleFlight.execute(key, () -> hit(upstream));
+            }));
+        }
+        start.countDown();
+        List<CompletableFuture<String>> results = new ArrayList<>();
+        for (Future<CompletableFuture<String>> call : calls) {
+            results.add(call.get(5, TimeUnit.SECONDS));
+        }
+        return results;
+    }
+
+    private CompletableFuture<String> hit(CompletableFuture<String> upstream) {
+        upstreamHits.incrementAndGet();
+        return upstream;
+    }
+
+}
@@ -0,0 +1,143 @@
+package main.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import main.entities.Character;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Every damaged file has to be skipped as a whole, leaving the node cold instead of failing its startup
+class SnapshotServiceTest {
+
+    private static final int HEADER_SIZE = 28;
+    private static final int NANOS = 123456789;
+
+    @TempDir
+    Path dir;
+
+    private Path file;
+    private UpstreamCache cache;
+    private SnapshotService service;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        file = dir.resolve("upstream-cache.bin");
+        cache = new UpstreamCache(DataSize.ofMegabytes(1), Duration.ofHours(24), Duration.ofMinutes(5), Duration.ofHours(1),
+                Duration.ofMinutes(15), new SimpleMeterRegistry());
+        service = new SnapshotService(cache, true, file.toString(), 100, Duration.ofHours(24), new SimpleMeterRegistry());
+        Map<String, UpstreamResult<?>> entries = new LinkedHashMap<>();
+        entries.put("/characters/1", result("1"));
+        entries.put("/characters/2", result("2"));
+        UpstreamSnapshot.write(file, new UpstreamSnapshot(System.currentTimeMillis(), entries));
+    }
+
+    @Test
+    void intactFileIsRestored() {
+        service.load();
+
+        assertThat(service.getStats()).containsEntry("loadOutcome", "loaded").containsEntry("loadedEntries", 2);
+        assertThat(cache.<Character>get("/characters/2").getResults().get(0).getModified().getNano()).isEqualTo(NANOS);
+    }
+
+    @Test
+    void truncatedFileStartsCold() throws IOException {
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 10));
+
+        assertStartsCold();
+    }
+
+    @Test
+    void badChecksumStartsCold() throws IOException {
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length - 1] ^= 1;
+        Files.write(file, bytes);
+
+        assertStartsCold();
+    }
+
+    @Test
+    void olderFormatStartsCold() throws IOException {
+        header(header -> header.putInt(4, UpstreamSnapshot.FORMAT_VERSION - 1));
+
+        assertStartsCold();
+    }
+
+    @Test
+    void hugeEntryCountStartsCold() throws IOException {
+        header(header -> header.putInt(16, Integer.MAX_VALUE));
+
+        assertStartsCold();
+    }
+
+    @Test
+    void negativeEntryCountStartsCold() throws IOException {
+        header(header -> header.putInt(16, -1));
+
+        assertStartsCold();
+    }
+
+    @Test
+    void undecodableBodyWithAValidChecksumStartsCold() throws IOException {
+        // A negative nano-of-second makes the date itself throw, past every structural check
+        body(body -> {
+            for (int i = 0; i + 4 <= body.limit(); i++) {
+                if (body.getInt(i) == NANOS) {
+                    body.putInt(i, -1);
+                    return;
+                }
+            }
+            throw new AssertionError("No date found in the snapshot body");
+        });
+
+        assertStartsCold();
+    }
+
+    private void assertStartsCold() {
+        service.load();
+
+        assertThat(service.getStats()).containsEntry("loadOutcome", "rejected").containsEntry("loadedEntries", 0);
+        assertThat(cache.getStats()).containsEntry("entries", 0L);
+    }
+
+    private void header(Consumer<ByteBuffer> change) throws IOException {
+        ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(file));
+        change.accept(bytes);
+        Files.write(file, bytes.array());
+    }
+
+    private void body(Consumer<ByteBuffer> change) throws IOException {
+        ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(file));
+        ByteBuffer body = ByteBuffer.wrap(bytes.array(), HEADER_SIZE, bytes.capacity() - HEADER_SIZE).slice();
+        change.accept(body);
+        CRC32C crc = new CRC32C();
+        crc.update(body.rewind());
+        bytes.putInt(24, (int) crc.getValue());
+        Files.write(file, bytes.array());
+    }
+
+    private static UpstreamResult<Character> result(String id) {
+        Character character = new Character();
+        character.setId(id);
+        character.setName("Hero " + id);
+        character.setModified(LocalDateTime.of(2014, 4, 29, 14, 18, 17, NANOS));
+        return new UpstreamResult<>(List.of(character), 1, "\"etag-" + id + "\"", 100);
+    }
+
+}
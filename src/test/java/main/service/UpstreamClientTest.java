@@ -0,0 +1,131 @@
+package main.service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class UpstreamClientTest {
+
+    private static final byte[] BODY = "{\"code\":200,\"data\":{\"results\":[]}}".getBytes(StandardCharsets.UTF_8);
+
+    private HttpServer server;
+    private String base;
+    private UpstreamClient client;
+    private final List<String> acceptEncodings = new CopyOnWriteArrayList<>();
+    private final List<String> ifNoneMatch = new CopyOnWriteArrayList<>();
+    private final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v1/public/characters", this::handle);
+        server.start();
+        base = "http://127.0.0.1:" + server.getAddress().getPort() + "/v1/public";
+        client = new UpstreamClient(Duration.ofSeconds(1), Duration.ofSeconds(2), Duration.ofMillis(300), Duration.ofSeconds(2),
+                2, new SimpleMeterRegistry());
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    // /characters: gzip-encoded list; /characters/304: honours If-None-Match; /characters/slow: past the by-id timeout
+    private void handle(HttpExchange exchange) throws IOException {
+        clientPorts.add(exchange.getRemoteAddress().getPort());
+        acceptEncodings.add(exchange.getRequestHeaders().getFirst("Accept-Encoding"));
+        String etag = exchange.getRequestHeaders().getFirst("If-None-Match");
+        if (etag != null) {
+            ifNoneMatch.add(etag);
+        }
+        String path = exchange.getRequestURI().getPath();
+        if (path.endsWith("/slow")) {
+            try {
+                Thread.sleep(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (path.endsWith("/304") && "\"e1\"".equals(etag)) {
+            exchange.getResponseHeaders().add("ETag", "\"e1\"");
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+            return;
+        }
+        byte[] body = gzip(BODY);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+        exchange.getResponseHeaders().add("ETag", "\"e1\"");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    @Test
+    void asksForGzipAndDecodesIt() throws Exception {
+        try (UpstreamResponse response = client.get(base + "/characters?limit=1", null).get(5, TimeUnit.SECONDS)) {
+            assertThat(response.isOk()).isTrue();
+            assertThat(response.getEtag()).isEqualTo("\"e1\"");
+            assertThat(response.getBody().readAllBytes()).isEqualTo(BODY);
+        }
+        assertThat(acceptEncodings).containsExactly("gzip");
+    }
+
+    @Test
+    void revalidatesWithTheCachedEtag() throws Exception {
+        try (UpstreamResponse response = client.get(base + "/characters/304", "\"e1\"").get(5, TimeUnit.SECONDS)) {
+            assertThat(response.isNotModified()).isTrue();
+            assertThat(response.getBody()).isNull();
+        }
+        assertThat(ifNoneMatch).containsExactly("\"e1\"");
+    }
+
+    @Test
+    void reusesKeptAliveConnections() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            client.get(base + "/characters?offset=" + i, null).get(5, TimeUnit.SECONDS).close();
+        }
+        assertThat(clientPorts).hasSize(1);
+    }
+
+    @Test
+    void appliesThePerRouteTimeout() {
+        long start = System.nanoTime();
+        assertThatThrownBy(() -> client.get(base + "/characters/slow", null).get(5, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(HttpTimeoutException.class);
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofMillis(900));
+        assertThat(client.getStats()).containsEntry("requests", 1L).containsEntry("failures", 1L);
+    }
+
+    private static byte[] gzip(byte[] body) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(body);
+        }
+        return out.toByteArray();
+    }
+
+}
@@ -0,0 +1,157 @@
+package main.service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Fault injection through a stub whose first answer per path can be held back
+class UpstreamHedgingTest {
+
+    private static final byte[] BODY = "{\"code\":200}".getBytes(StandardCharsets.UTF_8);
+    private static final Duration MIN_DELAY = Duration.ofMillis(100);
+
+    private HttpServer server;
+    private ExecutorService stubThreads;
+    private String base;
+    private final Map<String, AtomicInteger> hits = new ConcurrentHashMap<>();
+    private final Map<String, Long> firstDelays = new ConcurrentHashMap<>();
+
+    private UpstreamClient client;
+    private UpstreamScheduler scheduler;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        stubThreads = Executors.newCachedThreadPool();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v1/public/characters", this::handle);
+        server.setExecutor(stubThreads);
+        server.start();
+        base = "http://127.0.0.1:" + server.getAddress().getPort() + "/v1/public/characters/";
+        client = new UpstreamClient(Duration.ofSeconds(1), Duration.ofSeconds(5), Duration.ofSeconds(5), Duration.ofSeconds(5),
+                2, new SimpleMeterRegistry());
+        // A few fast by-id calls straight through the client put the route's p95 well under MIN_DELAY
+        for (int i = 0; i < 5; i++) {
+            client.get(base + "warm-" + i, null).join().close();
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+        server.stop(0);
+        stubThreads.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        int hit = hits.computeIfAbsent(path, key -> new AtomicInteger()).incrementAndGet();
+        Long delay = firstDelays.get(path);
+        if (hit == 1 && delay != null) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        exchange.sendResponseHeaders(200, BODY.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(BODY);
+        }
+    }
+
+    @Test
+    void hedgeOvertakesAStalledPrimaryAndAbortsIt() throws Exception {
+        UpstreamHedging hedging = hedging(1000, 100);
+        firstDelays.put(path("stalled"), 2000L);
+
+        long start = System.nanoTime();
+        hedging.call(UpstreamPriority.INTERACTIVE, UpstreamRoute.BY_ID, () -> client.get(base + "stalled", null))
+                .get(5, TimeUnit.SECONDS).close();
+
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofMillis(1500));
+        assertThat(hedging.getStats()).containsEntry("hedged", 1L).containsEntry("hedgeWins", 1L);
+        assertThat(hits.get(path("stalled"))).hasValue(2);
+        // The primary's exchange is torn down at once instead of being held until the stub answers
+        awaitNoneInFlight();
+        assertThat(client.getStats()).containsEntry("cancelled", 1L);
+    }
+
+    @Test
+    void delayCountsFromDispatchNotFromTheQueue() throws Exception {
+        // One token, two per second: the call below waits about 500 ms for it, several times MIN_DELAY
+        UpstreamHedging hedging = hedging(2, 1);
+        scheduler.submit(UpstreamPriority.INTERACTIVE, () -> client.get(base + "first", null)).get(5, TimeUnit.SECONDS).close();
+        firstDelays.put(path("queued"), 30L);
+
+        hedging.call(UpstreamPriority.INTERACTIVE, UpstreamRoute.BY_ID, () -> client.get(base + "queued", null))
+                .get(5, TimeUnit.SECONDS).close();
+
+        assertThat(hedging.getStats()).containsEntry("hedged", 0L);
+        assertThat(hits.get(path("queued"))).hasValue(1);
+    }
+
+    @Test
+    void queuedHedgeIsDroppedOnceThePrimaryAnswers() throws Exception {
+        // One token per second: the hedge fired after MIN_DELAY waits behind the primary for most of a second
+        UpstreamHedging hedging = hedging(1, 1);
+        firstDelays.put(path("slow"), 300L);
+
+        hedging.call(UpstreamPriority.INTERACTIVE, UpstreamRoute.BY_ID, () -> client.get(base + "slow", null))
+                .get(5, TimeUnit.SECONDS).close();
+        // Give the dispatcher time to reach the cancelled ticket
+        Thread.sleep(1200);
+
+        assertThat(hedging.getStats()).containsEntry("hedged", 1L).containsEntry("hedgeWins", 0L);
+        assertThat(hits.get(path("slow"))).hasValue(1);
+        assertThat(interactive(scheduler.getStats())).containsEntry("dispatched", 1L);
+    }
+
+    private UpstreamHedging hedging(double perSecond, int burst) {
+        scheduler = new UpstreamScheduler(null, 3000, ZoneOffset.UTC, 0, 0, perSecond, burst, 100, new SimpleMeterRegistry());
+        UpstreamHedging hedging = new UpstreamHedging(scheduler, client, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(hedging, "enabled", true);
+        ReflectionTestUtils.setField(hedging, "percentile", 0.95);
+        ReflectionTestUtils.setField(hedging, "minSamples", 1);
+        ReflectionTestUtils.setField(hedging, "minDelay", MIN_DELAY);
+        return hedging;
+    }
+
+    private void awaitNoneInFlight() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(500);
+        while (!Integer.valueOf(0).equals(client.getStats().get("inFlight")) && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(client.getStats()).containsEntry("inFlight", 0);
+    }
+
+    private static String path(String id) {
+        return "/v1/public/characters/" + id;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> interactive(Map<String, Object> stats) {
+        return (Map<String, Object>) ((Map<String, Object>) stats.get("priorities")).get(UpstreamPriority.INTERACTIVE.name());
+    }
+
+}
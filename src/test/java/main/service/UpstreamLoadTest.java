@@ -0,0 +1,127 @@
+package main.service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Slow upstream, few threads: blocking callers are capped at one call per thread, async ones are not
+class UpstreamLoadTest {
+
+    private static final int REQUESTS = 64;
+    private static final int WORKERS = 8;
+    private static final long LATENCY_MILLIS = 150;
+    private static final byte[] BODY = "{\"code\":200}".getBytes(StandardCharsets.UTF_8);
+
+    private HttpServer server;
+    private ExecutorService stubThreads;
+    private String base;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger peakInFlight = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        stubThreads = Executors.newCachedThreadPool();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), REQUESTS);
+        server.createContext("/v1/public/characters", this::handle);
+        server.setExecutor(stubThreads);
+        server.start();
+        base = "http://127.0.0.1:" + server.getAddress().getPort() + "/v1/public/characters/";
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+        stubThreads.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        peakInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+        try {
+            Thread.sleep(LATENCY_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            inFlight.decrementAndGet();
+        }
+        exchange.sendResponseHeaders(200, BODY.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(BODY);
+        }
+    }
+
+    @Test
+    void asyncCallsAreNotBoundByThreads() throws Exception {
+        UpstreamClient client = client();
+        long blockingNanos = blocking(client);
+        int blockingPeak = peakInFlight.getAndSet(0);
+        long asyncNanos = async(client);
+        int asyncPeak = peakInFlight.get();
+
+        assertThat(blockingPeak).isLessThanOrEqualTo(WORKERS);
+        assertThat(asyncPeak).as("calls in flight at once").isGreaterThan(REQUESTS / 2);
+        assertThat(asyncNanos)
+                .as("async %d ms vs blocking %d ms", asyncNanos / 1_000_000, blockingNanos / 1_000_000)
+                .isLessThan(blockingNanos / 2);
+    }
+
+    // A servlet-style pool: each worker holds its thread until the upstream answers
+    private long blocking(UpstreamClient client) throws Exception {
+        ExecutorService workers = Executors.newFixedThreadPool(WORKERS);
+        try {
+            long start = System.nanoTime();
+            List<Future<?>> calls = new ArrayList<>();
+            for (int i = 0; i < REQUESTS; i++) {
+                String url = base + i;
+                calls.add(workers.submit(() -> {
+                    client.get(url, null).join().close();
+                    return null;
+                }));
+            }
+            for (Future<?> call : calls) {
+                call.get(30, TimeUnit.SECONDS);
+            }
+            return System.nanoTime() - start;
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    private long async(UpstreamClient client) throws Exception {
+        long start = System.nanoTime();
+        List<CompletableFuture<UpstreamResponse>> calls = new ArrayList<>();
+        for (int i = 0; i < REQUESTS; i++) {
+            calls.add(client.get(base + i, null));
+        }
+        CompletableFuture.allOf(calls.toArray(new CompletableFuture[0])).get(30, TimeUnit.SECONDS);
+        long elapsed = System.nanoTime() - start;
+        for (CompletableFuture<UpstreamResponse> call : calls) {
+            call.join().close();
+        }
+        return elapsed;
+    }
+
+    private static UpstreamClient client() {
+        Duration timeout = Duration.ofSeconds(10);
+        return new UpstreamClient(Duration.ofSeconds(2), timeout, timeout, timeout, 2, new SimpleMeterRegistry());
+    }
+
+}
@@ -0,0 +1,59 @@
+package main.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UpstreamRouteTest {
+
+    private static final String BASE = "https://gateway.marvel.com/v1/public";
+
+    @Test
+    void routeFollowsTheSegmentsAfterTheResource() {
+        assertThat(UpstreamRoute.of("/characters")).isEqualTo(UpstreamRoute.LIST);
+        assertThat(UpstreamRoute.of("/characters?nameStartsWith=spi&limit=20")).isEqualTo(UpstreamRoute.LIST);
+        assertThat(UpstreamRoute.of("/characters/")).isEqualTo(UpstreamRoute.LIST);
+        assertThat(UpstreamRoute.of("/characters/1009610")).isEqualTo(UpstreamRoute.BY_ID);
+        assertThat(UpstreamRoute.of("/characters/1009610/")).isEqualTo(UpstreamRoute.BY_ID);
+        assertThat(UpstreamRoute.of("/comics/1886?fields=title")).isEqualTo(UpstreamRoute.BY_ID);
+        assertThat(UpstreamRoute.of("/characters/1009610/comics")).isEqualTo(UpstreamRoute.RELATION);
+        assertThat(UpstreamRoute.of("/comics/1886/characters?limit=100")).isEqualTo(UpstreamRoute.RELATION);
+    }
+
+    @Test
+    void fullUrlsRouteLikeTheirPaths() {
+        assertThat(UpstreamRoute.of(BASE + "/characters?ts=1&apikey=k&hash=h")).isEqualTo(UpstreamRoute.LIST);
+        assertThat(UpstreamRoute.of(BASE + "/characters/1009610?ts=1&apikey=k&hash=h")).isEqualTo(UpstreamRoute.BY_ID);
+        assertThat(UpstreamRoute.of(BASE + "/comics/1886/characters?ts=1/2")).isEqualTo(UpstreamRoute.RELATION);
+        assertThat(UpstreamRoute.of(BASE + "/series/1")).isEqualTo(UpstreamRoute.LIST);
+    }
+
+    @Test
+    void resourceIsTheFirstCollectionInThePath() {
+        assertThat(UpstreamRoute.resource("/comics/1886/characters")).isEqualTo(IngestionService.COMICS);
+        assertThat(UpstreamRoute.resource("/characters/1009610/comics")).isEqualTo(IngestionService.CHARACTERS);
+        assertThat(UpstreamRoute.resource("/series/1")).isEqualTo(IngestionService.CHARACTERS);
+    }
+
+    @Test
+    void routingAllocatesNothing() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        String url = BASE + "/comics/1886/characters?ts=1&apikey=k&hash=h";
+        int relations = 0;
+        for (int i = 0; i < 100_000; i++) {
+            relations += UpstreamRoute.of(url) == UpstreamRoute.RELATION ? 1 : 0;
+        }
+        long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        for (int i = 0; i < 100_000; i++) {
+            relations += UpstreamRoute.of(url) == UpstreamRoute.RELATION ? 1 : 0;
+        }
+        long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+
+        assertThat(relations).isEqualTo(200_000);
+        // A split per call would be tens of megabytes here; the allowance only covers the measurement itself
+        assertThat(allocated).isLessThan(4096);
+    }
+
+}
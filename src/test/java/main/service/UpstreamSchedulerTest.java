@@ -0,0 +1,133 @@
+package main.service;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import main.entities.UpstreamQuota;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// The shared daily document is stood in for by a template that keeps the count in memory and can hold a write back
+class UpstreamSchedulerTest {
+
+    private MongoClient client;
+    private QuotaStore store;
+    private UpstreamScheduler scheduler;
+
+    @BeforeEach
+    void setUp() {
+        // Never connected: every call the scheduler makes is overridden below
+        client = MongoClients.create("mongodb://127.0.0.1:1");
+        store = new QuotaStore(client);
+        scheduler = new UpstreamScheduler(store, 3000, ZoneOffset.UTC, 0, 0, 1000, 100, 100, new SimpleMeterRegistry());
+    }
+
+    @AfterEach
+    void tearDown() {
+        scheduler.shutdown();
+        client.close();
+    }
+
+    @Test
+    void startsFromTheCountOtherInstancesAlreadySpent() {
+        store.calls = 1200;
+
+        scheduler.load();
+
+        assertThat(scheduler.getStats()).containsEntry("used", 1200L).containsEntry("remaining", 1800L);
+    }
+
+    @Test
+    void callsStayCountedWhileTheirFlushIsInFlight() throws Exception {
+        store.calls = 10;
+        scheduler.load();
+        call(3);
+        store.hold = new CountDownLatch(1);
+
+        CompletableFuture<Void> flush = CompletableFuture.runAsync(scheduler::flush);
+        assertThat(store.writing.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(scheduler.getStats()).containsEntry("used", 13L);
+
+        store.hold.countDown();
+        flush.get(5, TimeUnit.SECONDS);
+        assertThat(scheduler.getStats()).containsEntry("used", 13L);
+        assertThat(store.calls).isEqualTo(13);
+    }
+
+    @Test
+    void failedFlushKeepsTheCallsForTheNextOne() throws Exception {
+        call(2);
+        store.failing = true;
+
+        scheduler.flush();
+        assertThat(scheduler.getStats()).containsEntry("used", 2L);
+
+        store.failing = false;
+        scheduler.flush();
+        assertThat(store.calls).isEqualTo(2);
+        assertThat(scheduler.getStats()).containsEntry("used", 2L);
+    }
+
+    private void call(int count) throws Exception {
+        for (int i = 0; i < count; i++) {
+            scheduler.submit(UpstreamPriority.INTERACTIVE, () -> CompletableFuture.completedFuture("ok")).get(5, TimeUnit.SECONDS);
+        }
+    }
+
+    private static class QuotaStore extends MongoTemplate {
+
+        private volatile long calls;
+        private volatile boolean failing;
+        private volatile CountDownLatch hold;
+        private final CountDownLatch writing = new CountDownLatch(1);
+
+        QuotaStore(MongoClient client) {
+            super(client, "marvel");
+        }
+
+        @Override
+        public <T> T findById(Object id, Class<T> entityClass) {
+            return entityClass.cast(quota());
+        }
+
+        @Override
+        public <T> T findAndModify(Query query, UpdateDefinition update, FindAndModifyOptions options, Class<T> entityClass) {
+            if (failing) {
+                throw new DataAccessResourceFailureException("Mongo unavailable");
+            }
+            writing.countDown();
+            try {
+                if (hold != null && !hold.await(5, TimeUnit.SECONDS)) {
+                    throw new IllegalStateException("Write never released");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            calls += ((Number) update.getUpdateObject().get("$inc", Document.class).get("calls")).longValue();
+            return entityClass.cast(quota());
+        }
+
+        private UpstreamQuota quota() {
+            UpstreamQuota quota = new UpstreamQuota();
+            quota.setId(LocalDate.now(ZoneOffset.UTC).toString());
+            quota.setCalls(calls);
+            return quota;
+        }
+    }
+
+}